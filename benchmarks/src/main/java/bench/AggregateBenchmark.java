@@ -0,0 +1,93 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One grouped aggregation over {@code slots} slots on a fork-join pool of
+ * {@code parallelism} workers; sweep it to see the scan scale with cores. Campaigns
+ * are spread over every zone and several phases, a quarter of the slots are
+ * deactivated and cpc varies, so every accumulator path runs. The 10M case holds
+ * a few gigabytes of engine state: give it {@code -jvmArgsAppend -Xmx8g}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregateBenchmark {
+    @Param({"1000000", "10000000"})
+    int slots;
+
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    @Param({"RECORDS", "COLUMNAR"})
+    addy.SlotStoreKind store;
+
+    private addy engine;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.ManualClock clock = new Fixtures.ManualClock();
+        engine = Fixtures.engine(addy.Options.DEFAULTS.withSlotStore(store)
+                .withKeywordSlotCap(slots).withClock(clock).withCompactionIntervalMillis(0));
+        pool = new ForkJoinPool(parallelism);
+        SplittableRandom random = new SplittableRandom(42);
+        addy.CampaignPhase[] phases = {addy.CampaignPhase.DRAFT, addy.CampaignPhase.LIVE,
+                addy.CampaignPhase.ARCHIVED};
+        int left = slots;
+        int keyword = 0;
+        while (left > 0) {
+            for (long campaign : Fixtures.fillCampaigns(engine)) {
+                int n = Math.min(left, addy.MAX_CAMPAIGN_KEYWORDS);
+                if (n == 0) break;
+                List<addy.KeywordBid> bids = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    bids.add(new addy.KeywordBid("agg-" + keyword++, Fixtures.TIER,
+                            Fixtures.CPC + random.nextLong(1_000_000_000L)));
+                }
+                long[] ids = engine.allocateKeywordSlots(campaign, bids);
+                for (long id : ids) {
+                    if (random.nextInt(4) == 0) engine.deactivateKeywordSlot(id);
+                }
+                addy.CampaignPhase phase = phases[random.nextInt(phases.length)];
+                if (phase != addy.CampaignPhase.DRAFT) engine.transitionCampaignPhase(campaign, phase);
+                left -= n;
+            }
+            clock.advance(addy.THROTTLE_WINDOW_MS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        engine.close();
+    }
+
+    @Benchmark
+    public addy.Aggregate aggregate() {
+        try (addy.Snapshot snapshot = engine.snapshot()) {
+            return snapshot.aggregate(pool);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Slot allocation, single and batched. Each campaign takes one bid event per cooldown,
+ * so every measured call gets its own fresh (engine, campaign) pair from a pool that is
+ * rebuilt before each iteration; iterations are single-shot batches of {@link #CALLS}
+ * calls per thread. Run with several thread counts (see {@link BenchmarkMain}) to see
+ * contention on the shared hash set and slot store.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, batchSize = AllocateSlotBenchmark.CALLS)
+@Measurement(iterations = 20, batchSize = AllocateSlotBenchmark.CALLS)
+@OperationsPerInvocation(AllocateSlotBenchmark.CALLS)
+@Fork(1)
+public class AllocateSlotBenchmark {
+    static final int CALLS = 256;
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+        @Param({"RECORDS", "COLUMNAR"})
+        addy.SlotStoreKind store;
+
+        addy[] engines;
+        long[] campaigns;
+        String[] keywords;
+        final AtomicInteger cursor = new AtomicInteger();
+        int iteration;
+
+        @Setup(Level.Iteration)
+        public void setup(BenchmarkParams params) {
+            int size = params.getThreads() * CALLS;
+            int engineCount = (size + Fixtures.CAMPAIGNS_PER_ENGINE - 1) / Fixtures.CAMPAIGNS_PER_ENGINE;
+            engines = new addy[engineCount];
+            campaigns = new long[engineCount * Fixtures.CAMPAIGNS_PER_ENGINE];
+            for (int e = 0; e < engineCount; e++) {
+                engines[e] = Fixtures.engine(store);
+                long[] ids = Fixtures.fillCampaigns(engines[e]);
+                System.arraycopy(ids, 0, campaigns, e * ids.length, ids.length);
+            }
+            prepare(size);
+            cursor.set(0);
+            iteration++;
+        }
+
+        void prepare(int size) {
+            keywords = new String[size];
+            for (int i = 0; i < size; i++) keywords[i] = "kw-" + iteration + "-" + i;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            for (addy engine : engines) engine.close();
+        }
+
+        addy engineFor(int i) {
+            return engines[i / Fixtures.CAMPAIGNS_PER_ENGINE];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BatchPool extends Pool {
+        @Param({"16", "128"})
+        int batchSize;
+
+        List<List<addy.KeywordBid>> batches;
+
+        @Override
+        void prepare(int size) {
+            batches = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) batches.add(Fixtures.bids("kw-" + iteration + "-" + i + "-", batchSize));
+        }
+    }
+
+    @Benchmark
+    public long allocateKeywordSlot(Pool pool) {
+        int i = pool.cursor.getAndIncrement();
+        return pool.engineFor(i).allocateKeywordSlot(pool.keywords[i], pool.campaigns[i], Fixtures.TIER,
+                Fixtures.CPC);
+    }
+
+    @Benchmark
+    public long[] allocateKeywordSlots(BatchPool pool) {
+        int i = pool.cursor.getAndIncrement();
+        return pool.engineFor(i).allocateKeywordSlots(pool.campaigns[i], pool.batches.get(i));
+    }
+}
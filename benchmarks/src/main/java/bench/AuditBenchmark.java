@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The audit ring through public operations: a phase transition is little more than a
+ * ring append, and {@code getAuditTail} is the reader side.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuditBenchmark {
+    addy engine;
+
+    @State(Scope.Thread)
+    public static class Campaign {
+        long id;
+        boolean live;
+
+        @Setup(Level.Trial)
+        public void setup(AuditBenchmark shared) {
+            synchronized (shared) {
+                for (addy.ThrottleZone zone : addy.ThrottleZone.values()) {
+                    if (shared.engine.canPerformInZone(zone)) {
+                        id = shared.engine.createCampaign("bench", zone);
+                        return;
+                    }
+                }
+            }
+            throw new IllegalStateException("bench: throttle exhausted; too many threads");
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Fixtures.engine(addy.SlotStoreKind.RECORDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void transitionPhase(Campaign campaign) {
+        campaign.live = !campaign.live;
+        engine.transitionCampaignPhase(campaign.id, campaign.live ? addy.CampaignPhase.LIVE : addy.CampaignPhase.PAUSED);
+    }
+
+    @Benchmark
+    public List<addy.AuditEntry> getAuditTail() {
+        return engine.getAuditTail(addy.AUDIT_LOG_ENTRIES);
+    }
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Runs the selected benchmarks once per thread
+ * count with the GC profiler attached, so allocation rate ({@code gc.alloc.rate.norm})
+ * is reported next to every score. Regular JMH options pass through:
+ *
+ * <pre>
+ *   java -jar benchmarks/target/benchmarks.jar                      # everything, 1 and 4 threads
+ *   java -Dbench.threads=1,2,8 -jar benchmarks/target/benchmarks.jar Spend
+ *   java -Dbench.gc=false -jar benchmarks/target/benchmarks.jar KeywordHash -f 3
+ * </pre>
+ *
+ * Results for each thread count go to {@code jmh-result-t<N>.json}.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        boolean gc = !"false".equals(System.getProperty("bench.gc"));
+        for (int threads : threadCounts(System.getProperty("bench.threads", "1,4"))) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(cli)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-t" + threads + ".json");
+            if (gc) options.addProfiler(GCProfiler.class);
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static List<Integer> threadCounts(String spec) {
+        List<Integer> out = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            int threads = Integer.parseInt(part.trim());
+            if (threads <= 0) {
+                throw new IllegalArgumentException("bench: thread count must be positive: " + part);
+            }
+            out.add(threads);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Slot churn: every invocation allocates a batch of {@link #BATCH} slots for the same
+ * keywords, deactivates them all and compacts, on a manual clock stepped past the
+ * bid cooldown. Without reclamation the second batch would already be rejected as
+ * duplicates; with it the engine should hold steady, which each iteration checks
+ * against the slot store's footprint. Time is per slot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ChurnBenchmark.BATCH)
+@Fork(1)
+public class ChurnBenchmark {
+    static final int BATCH = 128;
+
+    @State(Scope.Thread)
+    public static class Engine {
+        @Param({"RECORDS", "COLUMNAR"})
+        addy.SlotStoreKind store;
+
+        final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+        final List<addy.KeywordBid> bids = Fixtures.bids("churn-", BATCH);
+        addy engine;
+        long campaign;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = Fixtures.engine(addy.Options.DEFAULTS.withSlotStore(store).withKeywordSlotCap(4 * BATCH)
+                    .withClock(clock).withCompactionIntervalMillis(0));
+            campaign = engine.createCampaign("bench", addy.ThrottleZone.ALPHA);
+        }
+
+        @TearDown(Level.Iteration)
+        public void checkSteadyState() {
+            int storage = engine.getCompactionStats().getStorageSlots();
+            if (storage > 2 * BATCH) {
+                throw new IllegalStateException("bench: slot storage grew to " + storage);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.close();
+        }
+    }
+
+    @Benchmark
+    public int churn(Engine e) {
+        e.clock.advance(addy.BID_COOLDOWN_MS);
+        long[] ids = e.engine.allocateKeywordSlots(e.campaign, e.bids);
+        for (long id : ids) e.engine.deactivateKeywordSlot(id);
+        return e.engine.compactSlots();
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds engines for the benchmarks. The throttle admits {@link addy#COHORT_BATCH_SIZE}
+ * campaigns per zone per window and the cooldown allows one bid event per campaign,
+ * so anything that allocates draws from a pool of fresh (engine, campaign) pairs.
+ */
+final class Fixtures {
+    static final long CPC = addy.MIN_CPC_NANOS;
+    static final addy.BidTierKind TIER = addy.BidTierKind.ULTRA;
+    static final int CAMPAIGNS_PER_ENGINE = addy.COHORT_BATCH_SIZE * addy.ThrottleZone.values().length;
+
+    private Fixtures() {
+    }
+
+    static addy engine(addy.SlotStoreKind store) {
+        return engine(addy.Options.DEFAULTS.withSlotStore(store).withKeywordSlotCap(1 << 20));
+    }
+
+    static addy engine(addy.Options options) {
+        return new addy(addy.ORACLE_HEX, addy.CONTROLLER_HEX, addy.TREASURY_HEX, addy.MAX_CAMPAIGN_KEYWORDS,
+                addy.MIN_CPC_NANOS, options);
+    }
+
+    /** Creates as many campaigns as the throttle admits right now, spread over every zone. */
+    static long[] fillCampaigns(addy engine) {
+        long[] ids = new long[CAMPAIGNS_PER_ENGINE];
+        int n = 0;
+        for (addy.ThrottleZone zone : addy.ThrottleZone.values()) {
+            for (int i = 0; i < addy.COHORT_BATCH_SIZE; i++) {
+                ids[n++] = engine.createCampaign("bench", zone);
+            }
+        }
+        return ids;
+    }
+
+    static List<addy.KeywordBid> bids(String prefix, int n) {
+        List<addy.KeywordBid> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(new addy.KeywordBid(prefix + i, TIER, CPC));
+        return out;
+    }
+
+    /** A clock that only moves when told to, for benchmarks that step past cooldowns. */
+    static final class ManualClock extends Clock {
+        private volatile long millis = System.currentTimeMillis();
+
+        void advance(long deltaMillis) {
+            millis += deltaMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Keyword hashing and the registered-keyword probe built on it. The probe draws
+ * keywords from a Zipf distribution, like real query traffic, and runs with the hash
+ * cache off and on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeywordHashBenchmark {
+    private static final int KEYWORDS = 1024;
+
+    private int next;
+
+    @State(Scope.Benchmark)
+    public static class Keywords {
+        @Param({"8", "32", "128"})
+        int keywordLength;
+
+        String[] keywords;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            keywords = new String[KEYWORDS];
+            StringBuilder sb = new StringBuilder(keywordLength);
+            for (int i = 0; i < KEYWORDS; i++) {
+                sb.setLength(0);
+                sb.append(i).append('-');
+                while (sb.length() < keywordLength) sb.append((char) ('a' + sb.length() % 26));
+                keywords[i] = sb.toString();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        private static final int DISTINCT = 100_000;
+        private static final int DRAWS = 1 << 16;
+
+        @Param({"0", "8192"})
+        int hashCacheCapacity;
+
+        addy engine;
+        String[] traffic;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = Fixtures.engine(addy.Options.DEFAULTS.withHashCacheCapacity(hashCacheCapacity));
+            long campaign = engine.createCampaign("bench", addy.ThrottleZone.ALPHA);
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("query-", addy.MAX_CAMPAIGN_KEYWORDS));
+            double[] cdf = new double[DISTINCT];
+            double sum = 0.0;
+            for (int i = 0; i < DISTINCT; i++) cdf[i] = sum += 1.0 / (i + 1);
+            SplittableRandom random = new SplittableRandom(42);
+            traffic = new String[DRAWS];
+            for (int i = 0; i < DRAWS; i++) {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+                traffic[i] = "query-" + (rank < 0 ? -rank - 1 : rank);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.close();
+        }
+    }
+
+    private String nextKeyword(Keywords keywords) {
+        return keywords.keywords[next++ & (KEYWORDS - 1)];
+    }
+
+    @Benchmark
+    public String keywordHash(Keywords keywords) {
+        return addy.keywordHash(nextKeyword(keywords));
+    }
+
+    @Benchmark
+    public addy.KeywordHashKey keywordHashKey(Keywords keywords) {
+        return addy.keywordHashKey(nextKeyword(keywords));
+    }
+
+    @Benchmark
+    public boolean isKeywordRegistered(Engine engine) {
+        return engine.engine.isKeywordRegistered(engine.traffic[next++ & (Engine.DRAWS - 1)]);
+    }
+}
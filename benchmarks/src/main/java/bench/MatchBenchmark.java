@@ -0,0 +1,103 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serving-path lookups. {@code mixed} runs three matching threads against one thread
+ * deactivating slots, so reads see writes in flight. Use {@code -bm sample} for
+ * p99/p99.9 instead of the mean.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatchBenchmark {
+    private static final int QUERIES = 4096;
+
+    @Param({"RECORDS", "COLUMNAR"})
+    addy.SlotStoreKind store;
+
+    @Param({"20000"})
+    int slots;
+
+    addy engine;
+    String[] queries;
+    long[] slotIds;
+    List<String> candidates;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Fixtures.engine(store);
+        long[] campaigns = Fixtures.fillCampaigns(engine);
+        int perCampaign = (slots + campaigns.length - 1) / campaigns.length;
+        List<Long> ids = new ArrayList<>(slots);
+        int remaining = slots;
+        for (int c = 0; c < campaigns.length && remaining > 0; c++) {
+            int n = Math.min(perCampaign, remaining);
+            for (long id : engine.allocateKeywordSlots(campaigns[c], Fixtures.bids("kw-" + c + "-", n))) ids.add(id);
+            remaining -= n;
+        }
+        slotIds = ids.stream().mapToLong(Long::longValue).toArray();
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            // One query in four misses.
+            queries[i] = (i & 3) == 0 ? "miss-" + i : "kw-" + (i % campaigns.length) + "-" + (i % perCampaign);
+        }
+        candidates = new ArrayList<>();
+        for (int i = 0; i < 16; i++) candidates.add(queries[i * 7]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public addy.KeywordSlotView match(Cursor cursor) {
+        return engine.match(queries[cursor.next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public List<addy.KeywordSlotView> topK() {
+        return engine.topK(candidates, 5);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public addy.KeywordSlotView mixedMatch(Cursor cursor) {
+        return engine.match(queries[cursor.next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedDeactivate(Cursor cursor) {
+        engine.deactivateKeywordSlot(slotIds[cursor.next++ % slotIds.length]);
+    }
+}
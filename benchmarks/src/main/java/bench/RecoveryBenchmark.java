@@ -0,0 +1,106 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Start-up recovery from a snapshot or from a bare write-ahead log. Every invocation
+ * recovers from a fresh copy of the same directory, since opening an engine appends
+ * to its log. State is per thread, so with several threads each recovers its own
+ * directory and the score shows recovery under a busy disk. Past one engine's worth
+ * of campaigns the fill steps a manual clock through throttle windows, so the 1M
+ * case spreads over a few thousand campaigns.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class RecoveryBenchmark {
+    @Param({"RECORDS", "COLUMNAR"})
+    addy.SlotStoreKind store;
+
+    @Param({"4096", "32768", "1000000"})
+    int slots;
+
+    @Param({"wal", "snapshot"})
+    String source;
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+    private Path pristine;
+    private Path work;
+    private addy recovered;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pristine = Files.createTempDirectory("addy-recovery-bench");
+        addy engine = Fixtures.engine(options(pristine).withSyncCommit(false));
+        int perCampaign = Math.min(addy.MAX_CAMPAIGN_KEYWORDS,
+                (slots + Fixtures.CAMPAIGNS_PER_ENGINE - 1) / Fixtures.CAMPAIGNS_PER_ENGINE);
+        int remaining = slots;
+        int c = 0;
+        while (remaining > 0) {
+            long[] campaigns = Fixtures.fillCampaigns(engine);
+            for (int i = 0; i < campaigns.length && remaining > 0; i++, c++) {
+                int n = Math.min(perCampaign, remaining);
+                engine.allocateKeywordSlots(campaigns[i], Fixtures.bids("kw-" + c + "-", n));
+                remaining -= n;
+            }
+            for (long campaign : campaigns) engine.recordSpend(campaign, 1L);
+            clock.advance(addy.THROTTLE_WINDOW_MS);
+        }
+        if (source.equals("snapshot")) engine.checkpoint();
+        engine.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() throws IOException {
+        work = Files.createTempDirectory("addy-recovery-run");
+        try (Stream<Path> files = Files.list(pristine)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, work.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeRecovered() {
+        recovered.close();
+        SpendBenchmark.deleteTree(work);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SpendBenchmark.deleteTree(pristine);
+    }
+
+    private addy.Options options(Path dir) {
+        return addy.Options.DEFAULTS.withSlotStore(store).withKeywordSlotCap(Math.max(slots, 1 << 20))
+                .withPersistence(dir).withSnapshotIntervalMillis(0L).withClock(clock);
+    }
+
+    @Benchmark
+    public addy.RecoveryStats recover() {
+        recovered = Fixtures.engine(options(work));
+        return recovered.getRecoveryStats();
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loopback throughput of the network front-end. Each benchmark thread owns one
+ * connection and keeps {@code pipeline} requests in flight per invocation; the
+ * score is requests per microsecond. {@code idleConnections} parks extra open
+ * connections on the server to show the cost of holding many of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerBenchmark {
+    static final int PIPELINE = 256;
+
+    @Param({"0", "1000"})
+    int idleConnections;
+
+    addy engine;
+    addy.Server server;
+    long campaign;
+    private final List<addy.Client> idle = new ArrayList<>();
+
+    @State(Scope.Thread)
+    public static class Connection {
+        addy.Client client;
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<?>[] replies = new CompletableFuture<?>[PIPELINE];
+
+        @Setup(Level.Trial)
+        public void setup(ServerBenchmark shared) throws IOException {
+            client = addy.Client.connect(shared.server.getLocalAddress());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            client.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engine = Fixtures.engine(addy.SlotStoreKind.RECORDS);
+        campaign = engine.createCampaign("bench", addy.ThrottleZone.ALPHA);
+        engine.allocateKeywordSlots(campaign, Fixtures.bids("kw-", 64));
+        server = addy.Server.start(engine, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        for (int i = 0; i < idleConnections; i++) idle.add(addy.Client.connect(server.getLocalAddress()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (addy.Client client : idle) client.close();
+        server.close();
+        engine.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void isKeywordRegistered(Connection connection) {
+        for (int i = 0; i < PIPELINE; i++) {
+            connection.replies[i] = connection.client.isKeywordRegisteredAsync("kw-" + (i & 63));
+        }
+        CompletableFuture.allOf(connection.replies).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void recordSpend(Connection connection) {
+        for (int i = 0; i < PIPELINE; i++) {
+            connection.replies[i] = connection.client.recordSpendAsync(campaign, 1L);
+        }
+        CompletableFuture.allOf(connection.replies).join();
+    }
+
+    @Benchmark
+    public boolean isKeywordRegisteredRoundTrip(Connection connection) {
+        return connection.client.isKeywordRegistered("kw-1");
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of the sharded engine. Sweep cores with the runner, e.g.
+ * {@code -Dbench.threads=1,2,4,8,16,32}, against the {@code shards} parameter: writes
+ * should scale with shards until writers outnumber cores, while gathered reads
+ * ({@code slotCount}, {@code auditTail}) pay a little more for every shard.
+ * {@code recordSpendPipelined} keeps {@link #WINDOW} spends in flight per thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedBenchmark {
+    static final int WINDOW = 64;
+    private static final int SLOTS_PER_CAMPAIGN = 64;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    int shards;
+
+    addy.ShardedEngine engine;
+    long[] campaigns;
+    String[] queries;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        final List<CompletableFuture<Void>> inFlight = new ArrayList<>(WINDOW);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = new addy.ShardedEngine(shards, addy.MAX_CAMPAIGN_KEYWORDS, addy.MIN_CPC_NANOS,
+                addy.Options.DEFAULTS.withKeywordSlotCap(1 << 20));
+        campaigns = new long[Fixtures.CAMPAIGNS_PER_ENGINE];
+        int n = 0;
+        for (addy.ThrottleZone zone : addy.ThrottleZone.values()) {
+            for (int i = 0; i < addy.COHORT_BATCH_SIZE; i++) {
+                campaigns[n++] = engine.createCampaign("bench", zone);
+            }
+        }
+        queries = new String[campaigns.length * SLOTS_PER_CAMPAIGN];
+        for (int c = 0; c < campaigns.length; c++) {
+            engine.allocateKeywordSlots(campaigns[c], Fixtures.bids("kw-" + c + "-", SLOTS_PER_CAMPAIGN));
+            for (int k = 0; k < SLOTS_PER_CAMPAIGN; k++) queries[c * SLOTS_PER_CAMPAIGN + k] = "kw-" + c + "-" + k;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void recordSpend(Cursor cursor) {
+        engine.recordSpend(campaigns[cursor.next++ % campaigns.length], 1L);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public void recordSpendPipelined(Cursor cursor) {
+        for (int i = 0; i < WINDOW; i++) {
+            cursor.inFlight.add(engine.recordSpendAsync(campaigns[cursor.next++ % campaigns.length], 1L));
+        }
+        for (CompletableFuture<Void> spend : cursor.inFlight) spend.join();
+        cursor.inFlight.clear();
+    }
+
+    @Benchmark
+    public addy.KeywordSlotView match(Cursor cursor) {
+        return engine.match(queries[cursor.next++ % queries.length]);
+    }
+
+    @Benchmark
+    public int slotCount() {
+        return engine.getKeywordSlotCount();
+    }
+
+    @Benchmark
+    public List<addy.AuditEntry> auditTail() {
+        return engine.getAuditTail(16);
+    }
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-campaign slot queries at different campaign sizes. The engine also holds
+ * {@code backgroundSlots} other slots so the lookups are not served from a tiny store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotQueryBenchmark {
+    @Param({"RECORDS", "COLUMNAR"})
+    addy.SlotStoreKind store;
+
+    @Param({"1", "16", "128", "277"})
+    int slotsPerCampaign;
+
+    @Param({"10000"})
+    int backgroundSlots;
+
+    private addy engine;
+    private long campaign;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Fixtures.engine(store);
+        long[] campaigns = Fixtures.fillCampaigns(engine);
+        campaign = campaigns[0];
+        engine.allocateKeywordSlots(campaign, Fixtures.bids("target-", slotsPerCampaign));
+        int perCampaign = Math.min(addy.MAX_CAMPAIGN_KEYWORDS,
+                (backgroundSlots + campaigns.length - 2) / (campaigns.length - 1));
+        int remaining = backgroundSlots;
+        for (int c = 1; c < campaigns.length && remaining > 0; c++) {
+            int n = Math.min(perCampaign, remaining);
+            engine.allocateKeywordSlots(campaigns[c], Fixtures.bids("bg-" + c + "-", n));
+            remaining -= n;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public List<addy.KeywordSlotView> getSlotsForCampaign() {
+        return engine.getSlotsForCampaign(campaign);
+    }
+
+    @Benchmark
+    public int countActiveSlotsForCampaign() {
+        return engine.countActiveSlotsForCampaign(campaign);
+    }
+}
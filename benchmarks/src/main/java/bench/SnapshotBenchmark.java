@@ -0,0 +1,75 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read snapshots next to live writers. In {@code readWrite} three threads record
+ * spend while a fourth keeps opening a snapshot and totalling spend across every
+ * campaign; compare the spend rate with {@link SpendBenchmark} to see what the
+ * snapshots cost writers. {@code openClose} is the bare price of a snapshot.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SnapshotBenchmark {
+    private addy engine;
+    private long[] ids;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Fixtures.engine(addy.Options.DEFAULTS);
+        ids = Fixtures.fillCampaigns(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void spend(Cursor cursor) {
+        engine.recordSpend(ids[cursor.next++ % ids.length], 1L);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public long snapshotTotal() {
+        try (addy.Snapshot snapshot = engine.snapshot()) {
+            return snapshot.getTotalSpendNanos();
+        }
+    }
+
+    @Benchmark
+    @Group("openClose")
+    public long openClose() {
+        try (addy.Snapshot snapshot = engine.snapshot()) {
+            return snapshot.getEpoch();
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package bench;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end soak: producer threads drive one engine with a weighted mix of
+ * operations, open loop, for a fixed time, and the run ends with a JSON report of
+ * throughput and latency per operation plus heap and GC figures, meant to be diffed
+ * between builds:
+ *
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar bench.Soak
+ *   java -Dsoak.rate=50000 -Dsoak.threads=8 -Dsoak.seconds=600 -cp benchmarks/target/benchmarks.jar bench.Soak
+ * </pre>
+ *
+ * Each producer issues operations on a fixed schedule of {@code rate / threads} per
+ * second and measures latency from the scheduled start, not the actual one, so a
+ * stall is charged to every operation queued behind it (coordinated omission is
+ * corrected); service time from the actual start is reported next to it. Keywords
+ * are drawn from a Zipfian distribution over {@code soak.keywords} names, so
+ * registration checks and duplicate rejections concentrate on a hot set.
+ *
+ * <p>The engine runs on a clock sped up {@code soak.timeScale} times so that the
+ * zone throttle and bid cooldown admit work at a useful rate. Operations the engine
+ * refuses (throttle, cooldown, caps, duplicates) are counted as rejected and still
+ * timed; any other exception is counted as an error. Settings, all system properties:
+ *
+ * <pre>
+ *   soak.seconds    measured run, default 60        soak.warmup     seconds before it, default 10
+ *   soak.threads    producers, default 4            soak.rate       total ops/s, default 20000
+ *   soak.mix        default create=1,allocate=10,spend=60,registered=25,query=4
+ *   soak.keywords   keyword universe, default 1000000
+ *   soak.zipf       skew, default 0.99              soak.store      RECORDS or COLUMNAR, default COLUMNAR
+ *   soak.slotCap    default 4194304                 soak.timeScale  default 100
+ *   soak.out        report file, default soak-report.json
+ * </pre>
+ */
+public final class Soak {
+    enum Op {
+        CREATE("create"),
+        ALLOCATE("allocate"),
+        SPEND("spend"),
+        REGISTERED("registered"),
+        QUERY("query");
+
+        final String key;
+
+        Op(String key) {
+            this.key = key;
+        }
+    }
+
+    static final int CAMPAIGN_POOL = 1 << 16;
+    static final long PARK_SLACK_NANOS = 200_000L;
+
+    private final int seconds = Integer.getInteger("soak.seconds", 60);
+    private final int warmup = Integer.getInteger("soak.warmup", 10);
+    private final int threads = Integer.getInteger("soak.threads", 4);
+    private final long rate = Long.getLong("soak.rate", 20_000L);
+    private final String mixSpec = System.getProperty("soak.mix", "create=1,allocate=10,spend=60,registered=25,query=4");
+    private final int keywords = Integer.getInteger("soak.keywords", 1_000_000);
+    private final double zipf = Double.parseDouble(System.getProperty("soak.zipf", "0.99"));
+    private final addy.SlotStoreKind store = addy.SlotStoreKind.valueOf(System.getProperty("soak.store", "COLUMNAR"));
+    private final int slotCap = Integer.getInteger("soak.slotCap", 1 << 22);
+    private final long timeScale = Long.getLong("soak.timeScale", 100L);
+    private final Path out = Path.of(System.getProperty("soak.out", "soak-report.json"));
+
+    private final int[] mix = parseMix(mixSpec);
+    private final Zipf keywordRanks;
+    private final addy engine;
+
+    /**
+     * Campaigns created so far, in a ring the producers pick from at random. A creator
+     * takes a ticket, stores its id, then publishes the count in ticket order, so
+     * readers never pick a cell that has not been written.
+     */
+    private final AtomicLongArray campaigns = new AtomicLongArray(CAMPAIGN_POOL);
+    private final AtomicInteger campaignTickets = new AtomicInteger();
+    private final AtomicInteger campaignCount = new AtomicInteger();
+
+    private volatile Recorder recorder = new Recorder();
+    private volatile boolean running = true;
+    private final AtomicLong peakHeapUsed = new AtomicLong();
+
+    private Soak() {
+        if (threads <= 0 || rate < threads || seconds <= 0 || warmup < 0 || timeScale <= 0) {
+            throw new IllegalArgumentException("bench: soak.threads, soak.rate, soak.seconds and soak.timeScale must be positive");
+        }
+        keywordRanks = new Zipf(keywords, zipf);
+        engine = Fixtures.engine(addy.Options.DEFAULTS.withSlotStore(store).withKeywordSlotCap(slotCap)
+                .withClock(new ScaledClock(timeScale)));
+        for (long id : Fixtures.fillCampaigns(engine)) addCampaign(id);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Soak soak = new Soak();
+        try {
+            String report = soak.run();
+            Files.writeString(soak.out, report, StandardCharsets.UTF_8);
+            System.out.print(report);
+        } finally {
+            soak.engine.close();
+        }
+    }
+
+    private String run() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        long interval = 1_000_000_000L * threads / rate;
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(42 + t);
+            // Producers start staggered across one interval so their schedules interleave.
+            long first = start + interval * t / threads;
+            Thread producer = new Thread(() -> {
+                try {
+                    produce(random, first, interval);
+                } finally {
+                    done.countDown();
+                }
+            }, "soak-producer-" + t);
+            producer.setDaemon(true);
+            producer.start();
+        }
+        Thread housekeeper = new Thread(this::housekeep, "soak-housekeeper");
+        housekeeper.setDaemon(true);
+        housekeeper.start();
+
+        Thread.sleep(warmup * 1000L);
+        long[] gcBefore = gcTotals();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+        peakHeapUsed.set(0L);
+        Recorder measured = new Recorder();
+        recorder = measured;
+        long measureStart = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        recorder = new Recorder();
+        long elapsed = System.nanoTime() - measureStart;
+        long[] gcAfter = gcTotals();
+        running = false;
+        done.await();
+        housekeeper.join();
+        return report(measured, elapsed, gcBefore, gcAfter);
+    }
+
+    private void produce(SplittableRandom random, long first, long interval) {
+        long intended = first;
+        while (running) {
+            long now = System.nanoTime();
+            long wait = intended - now;
+            if (wait > PARK_SLACK_NANOS) {
+                // Parking overshoots by tens of microseconds; wake early and spin the rest.
+                LockSupport.parkNanos(wait - PARK_SLACK_NANOS);
+                continue;
+            }
+            while (wait > 0) {
+                Thread.onSpinWait();
+                now = System.nanoTime();
+                wait = intended - now;
+            }
+            Op op = pick(random);
+            Recorder r = recorder;
+            Outcome outcome = Outcome.ACCEPTED;
+            try {
+                execute(op, random);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                outcome = Outcome.REJECTED;
+            } catch (RuntimeException e) {
+                outcome = Outcome.ERROR;
+            }
+            long end = System.nanoTime();
+            r.record(op, outcome, end - intended, end - now);
+            intended += interval;
+        }
+    }
+
+    private void execute(Op op, SplittableRandom random) {
+        switch (op) {
+            case CREATE:
+                addy.ThrottleZone[] zones = addy.ThrottleZone.values();
+                addCampaign(engine.createCampaign("soak", zones[random.nextInt(zones.length)]));
+                break;
+            case ALLOCATE:
+                engine.allocateKeywordSlot(keyword(random), campaign(random), Fixtures.TIER,
+                        Fixtures.CPC + random.nextLong(1_000_000_000L));
+                break;
+            case SPEND:
+                engine.recordSpend(campaign(random), 1L + random.nextInt(1_000));
+                break;
+            case REGISTERED:
+                engine.isKeywordRegistered(keyword(random));
+                break;
+            case QUERY:
+                engine.getSlotsForCampaign(campaign(random));
+                break;
+            default:
+                throw new AssertionError(op);
+        }
+    }
+
+    /** Fires engine timers (the scaled clock has no ticker) and samples the heap. */
+    private void housekeep() {
+        while (running) {
+            engine.advanceTimers();
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            peakHeapUsed.accumulateAndGet(used, Math::max);
+            LockSupport.parkNanos(10_000_000L);
+        }
+    }
+
+    private Op pick(SplittableRandom random) {
+        int roll = random.nextInt(mix[mix.length - 1]);
+        for (int i = 0; ; i++) {
+            if (roll < mix[i]) return Op.values()[i];
+        }
+    }
+
+    private String keyword(SplittableRandom random) {
+        return "soak-" + keywordRanks.next(random);
+    }
+
+    private void addCampaign(long id) {
+        int n = campaignTickets.getAndIncrement();
+        campaigns.set(n & (CAMPAIGN_POOL - 1), id);
+        // Creates are throttled to a few per window, so waiting on an earlier ticket is brief.
+        while (!campaignCount.compareAndSet(n, n + 1)) Thread.onSpinWait();
+    }
+
+    private long campaign(SplittableRandom random) {
+        return campaigns.get(random.nextInt(Math.min(campaignCount.get(), CAMPAIGN_POOL)));
+    }
+
+    /** Cumulative weights in {@link Op} order. */
+    private static int[] parseMix(String spec) {
+        int[] weights = new int[Op.values().length];
+        for (String part : spec.split(",")) {
+            String[] kv = part.split("=", 2);
+            Op op = null;
+            for (Op candidate : Op.values()) {
+                if (candidate.key.equals(kv[0].trim())) op = candidate;
+            }
+            if (op == null || kv.length != 2) {
+                throw new IllegalArgumentException("bench: bad soak.mix entry: " + part);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight < 0) throw new IllegalArgumentException("bench: negative soak.mix weight: " + part);
+            weights[op.ordinal()] = weight;
+        }
+        for (int i = 1; i < weights.length; i++) weights[i] += weights[i - 1];
+        if (weights[weights.length - 1] == 0) throw new IllegalArgumentException("bench: soak.mix is empty");
+        return weights;
+    }
+
+    private static long[] gcTotals() {
+        List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        long[] out = new long[beans.size() * 2];
+        for (int i = 0; i < beans.size(); i++) {
+            out[2 * i] = beans.get(i).getCollectionCount();
+            out[2 * i + 1] = beans.get(i).getCollectionTime();
+        }
+        return out;
+    }
+
+    // -------------------------------------------------------------------------
+    // Report
+    // -------------------------------------------------------------------------
+
+    private String report(Recorder r, long elapsedNanos, long[] gcBefore, long[] gcAfter) {
+        double secs = elapsedNanos / 1e9;
+        StringBuilder json = new StringBuilder(2048);
+        json.append("{\n  \"config\": {")
+                .append("\"seconds\": ").append(seconds)
+                .append(", \"warmup\": ").append(warmup)
+                .append(", \"threads\": ").append(threads)
+                .append(", \"rate\": ").append(rate)
+                .append(", \"mix\": \"").append(mixSpec).append('"')
+                .append(", \"keywords\": ").append(keywords)
+                .append(", \"zipf\": ").append(zipf)
+                .append(", \"store\": \"").append(store).append('"')
+                .append(", \"slotCap\": ").append(slotCap)
+                .append(", \"timeScale\": ").append(timeScale)
+                .append(", \"cpus\": ").append(Runtime.getRuntime().availableProcessors())
+                .append(", \"java\": \"").append(System.getProperty("java.version")).append("\"},\n");
+        long total = 0L;
+        for (Op op : Op.values()) {
+            int i = op.ordinal();
+            total += r.accepted[i].sum() + r.rejected[i].sum() + r.errors[i].sum();
+        }
+        json.append("  \"elapsedSeconds\": ").append(String.format("%.3f", secs))
+                .append(",\n  \"throughputPerSecond\": ").append(String.format("%.1f", total / secs))
+                .append(",\n  \"ops\": {\n");
+        Op[] ops = Op.values();
+        for (int i = 0; i < ops.length; i++) {
+            long accepted = r.accepted[i].sum();
+            long rejected = r.rejected[i].sum();
+            long errors = r.errors[i].sum();
+            json.append("    \"").append(ops[i].key).append("\": {")
+                    .append("\"accepted\": ").append(accepted)
+                    .append(", \"rejected\": ").append(rejected)
+                    .append(", \"errors\": ").append(errors)
+                    .append(", \"throughputPerSecond\": ")
+                    .append(String.format("%.1f", (accepted + rejected + errors) / secs))
+                    .append(", \"latency\": ");
+            appendLatency(json, r.latency[i].summarize());
+            json.append(", \"service\": ");
+            appendLatency(json, r.service[i].summarize());
+            json.append(i + 1 < ops.length ? "},\n" : "}\n");
+        }
+        json.append("  },\n  \"heap\": {");
+        long committed = 0L;
+        long poolPeaks = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            committed += pool.getUsage().getCommitted();
+            poolPeaks += pool.getPeakUsage().getUsed();
+        }
+        json.append("\"maxBytes\": ").append(Runtime.getRuntime().maxMemory())
+                .append(", \"committedBytes\": ").append(committed)
+                .append(", \"usedBytes\": ").append(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed())
+                .append(", \"peakUsedBytes\": ").append(peakHeapUsed.get())
+                .append(", \"poolPeakSumBytes\": ").append(poolPeaks)
+                .append("},\n  \"gc\": {");
+        List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        for (int i = 0; i < beans.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append('"').append(beans.get(i).getName()).append("\": {")
+                    .append("\"count\": ").append(gcAfter[2 * i] - gcBefore[2 * i])
+                    .append(", \"timeMillis\": ").append(gcAfter[2 * i + 1] - gcBefore[2 * i + 1])
+                    .append('}');
+        }
+        json.append("},\n  \"engine\": {")
+                .append("\"campaigns\": ").append(engine.getCampaignCount())
+                .append(", \"keywordSlots\": ").append(engine.getKeywordSlotCount())
+                .append("}\n}\n");
+        return json.toString();
+    }
+
+    private static void appendLatency(StringBuilder json, addy.LatencySummary s) {
+        json.append("{\"count\": ").append(s.getCount())
+                .append(", \"p50Nanos\": ").append(s.getP50Nanos())
+                .append(", \"p90Nanos\": ").append(s.getP90Nanos())
+                .append(", \"p99Nanos\": ").append(s.getP99Nanos())
+                .append(", \"p999Nanos\": ").append(s.getP999Nanos())
+                .append(", \"maxNanos\": ").append(s.getMaxNanos())
+                .append('}');
+    }
+
+    // -------------------------------------------------------------------------
+    // Recording, keyword distribution, clock
+    // -------------------------------------------------------------------------
+
+    enum Outcome {
+        ACCEPTED,
+        /** The engine refused the operation with IllegalArgumentException or IllegalStateException. */
+        REJECTED,
+        /** Any other RuntimeException: a bug, not a refusal. */
+        ERROR
+    }
+
+    /** One phase's counts and histograms; warmup and measurement each get their own. */
+    static final class Recorder {
+        final LongAdder[] accepted = adders();
+        final LongAdder[] rejected = adders();
+        final LongAdder[] errors = adders();
+        final addy.LatencyHistogram[] latency = histograms();
+        final addy.LatencyHistogram[] service = histograms();
+
+        void record(Op op, Outcome outcome, long latencyNanos, long serviceNanos) {
+            int i = op.ordinal();
+            switch (outcome) {
+                case ACCEPTED:
+                    accepted[i].increment();
+                    break;
+                case REJECTED:
+                    rejected[i].increment();
+                    break;
+                default:
+                    errors[i].increment();
+                    break;
+            }
+            latency[i].record(latencyNanos);
+            service[i].record(serviceNanos);
+        }
+
+        private static LongAdder[] adders() {
+            LongAdder[] out = new LongAdder[Op.values().length];
+            for (int i = 0; i < out.length; i++) out[i] = new LongAdder();
+            return out;
+        }
+
+        private static addy.LatencyHistogram[] histograms() {
+            addy.LatencyHistogram[] out = new addy.LatencyHistogram[Op.values().length];
+            for (int i = 0; i < out.length; i++) out[i] = new addy.LatencyHistogram();
+            return out;
+        }
+    }
+
+    /**
+     * Zipfian ranks in [0, n) by Gray et al.'s rejection-free method (as in YCSB):
+     * zeta(n) is summed once up front, after which each draw is constant time.
+     */
+    static final class Zipf {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double eta;
+        private final double half;
+        private final double zetaN;
+
+        Zipf(int n, double theta) {
+            if (n <= 1 || theta <= 0.0 || theta >= 1.0) {
+                throw new IllegalArgumentException("bench: zipf needs n > 1 and 0 < theta < 1");
+            }
+            this.n = n;
+            this.theta = theta;
+            zetaN = zeta(n, theta);
+            double zeta2 = zeta(2, theta);
+            alpha = 1.0 / (1.0 - theta);
+            eta = (1.0 - Math.pow(2.0 / n, 1.0 - theta)) / (1.0 - zeta2 / zetaN);
+            half = 1.0 + Math.pow(0.5, theta);
+        }
+
+        int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1.0) return 0;
+            if (uz < half) return 1;
+            return Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1.0, alpha)));
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0.0;
+            for (int i = 1; i <= n; i++) sum += 1.0 / Math.pow(i, theta);
+            return sum;
+        }
+    }
+
+    /** Wall time sped up {@code scale} times from the moment it is created. */
+    static final class ScaledClock extends Clock {
+        private final long originMillis = System.currentTimeMillis();
+        private final long originNanos = System.nanoTime();
+        private final long scale;
+
+        ScaledClock(long scale) {
+            this.scale = scale;
+        }
+
+        @Override
+        public long millis() {
+            return originMillis + (System.nanoTime() - originNanos) / 1_000_000L * scale;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Spend recording under contention. With {@code campaigns=1} every thread hits the
+ * same accumulator; with more, threads spread over campaigns. {@code log=async} adds
+ * the write-ahead log without waiting for fsync, which isolates the logging cost
+ * from disk latency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpendBenchmark {
+    static final int BATCH = 1024;
+
+    @Param({"1", "64"})
+    int campaigns;
+
+    @Param({"none", "async"})
+    String log;
+
+    private addy engine;
+    private long[] ids;
+    private Path dir;
+
+    @State(Scope.Thread)
+    public static class Events {
+        int next;
+        long[] batchIds;
+        long[] batchAmounts;
+
+        @Setup(Level.Trial)
+        public void setup(SpendBenchmark shared) {
+            batchIds = new long[BATCH];
+            batchAmounts = new long[BATCH];
+            for (int i = 0; i < BATCH; i++) {
+                batchIds[i] = shared.ids[(i / 16) % shared.ids.length];
+                batchAmounts[i] = 1L + (i & 7);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        addy.Options options = addy.Options.DEFAULTS;
+        if (log.equals("async")) {
+            dir = Files.createTempDirectory("addy-spend-bench");
+            options = options.withPersistence(dir).withSyncCommit(false).withSnapshotIntervalMillis(0L);
+        }
+        engine = Fixtures.engine(options);
+        long[] all = Fixtures.fillCampaigns(engine);
+        ids = new long[campaigns];
+        System.arraycopy(all, 0, ids, 0, campaigns);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+        if (dir != null) deleteTree(dir);
+    }
+
+    @Benchmark
+    public void recordSpend(Events events) {
+        engine.recordSpend(ids[events.next++ % ids.length], 1L);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void recordSpendBatch(Events events) {
+        engine.recordSpendBatch(events.batchIds, events.batchAmounts);
+    }
+
+    static void deleteTree(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
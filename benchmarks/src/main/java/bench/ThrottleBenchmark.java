@@ -0,0 +1,61 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Zone throttle reads and admissions on one shared engine. Once a window is full,
+ * {@code tryAcquireInZone} measures the rejection path, which is the one that runs
+ * hot under overload.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThrottleBenchmark {
+    private static final addy.ThrottleZone[] ZONES = addy.ThrottleZone.values();
+
+    private addy engine;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        addy.ThrottleZone zone() {
+            return ZONES[next++ & (ZONES.length - 1)];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Fixtures.engine(addy.SlotStoreKind.RECORDS);
+    }
+
+    @Benchmark
+    public boolean canPerformInZone(Cursor cursor) {
+        return engine.canPerformInZone(cursor.zone());
+    }
+
+    @Benchmark
+    public boolean tryAcquireInZone(Cursor cursor) {
+        return engine.tryAcquireInZone(cursor.zone(), 1);
+    }
+
+    @Benchmark
+    public addy.ThrottleState getThrottleState(Cursor cursor) {
+        return engine.getThrottleState(cursor.zone());
+    }
+}
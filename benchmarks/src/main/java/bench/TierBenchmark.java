@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Tier classification and bid validation over a price array, one call per bid
+ * against the bulk methods. Prices are uniform over every tier so the per-bid
+ * branches are unpredictable, as they are in the pricing pipeline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TierBenchmark {
+    private static final addy.BidTierKind[] TIERS = addy.BidTierKind.values();
+
+    @Param({"10000", "100000"})
+    int bids;
+
+    addy engine;
+    long[] cpcs;
+    byte[] tiers;
+    byte[] outTiers;
+    boolean[] valid;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Fixtures.engine(addy.Options.DEFAULTS);
+        SplittableRandom random = new SplittableRandom(42);
+        cpcs = new long[bids];
+        tiers = new byte[bids];
+        for (int i = 0; i < bids; i++) {
+            cpcs[i] = random.nextLong(-1_000L, 2_500_000_000L);
+            tiers[i] = (byte) random.nextInt(TIERS.length);
+        }
+        outTiers = new byte[bids];
+        valid = new boolean[bids];
+    }
+
+    @Benchmark
+    public void classifyPerBid(Blackhole bh) {
+        for (long cpc : cpcs) bh.consume(addy.tierFromCpc(cpc));
+    }
+
+    @Benchmark
+    public byte[] classifyBulk() {
+        addy.classifyTiers(cpcs, outTiers);
+        return outTiers;
+    }
+
+    @Benchmark
+    public void validatePerBid(Blackhole bh) {
+        for (int i = 0; i < cpcs.length; i++) bh.consume(engine.isCpcWithinTier(cpcs[i], TIERS[tiers[i]]));
+    }
+
+    @Benchmark
+    public boolean[] validateBulk() {
+        engine.validateBids(cpcs, tiers, valid);
+        return valid;
+    }
+}
@@ -0,0 +1,159 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/** The fork-join aggregate gives the same cells as a sequential fold over the same snapshot. */
+class AggregateTest {
+    /** Comfortably past the slot scan's split grain, so both stores' splits are exercised. */
+    private static final int CAMPAIGNS = 150;
+
+    private static final addy.ThrottleZone[] ZONES = addy.ThrottleZone.values();
+    private static final addy.CampaignPhase[] PHASES = addy.CampaignPhase.values();
+    private static final addy.BidTierKind[] TIERS = addy.BidTierKind.values();
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private addy engine(addy.SlotStoreKind store) {
+        return Fixtures.engine(Fixtures.options(clock).withSlotStore(store).withKeywordSlotCap(1 << 16));
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void smallEngineAgreesWithSnapshot(addy.SlotStoreKind store) {
+        try (addy engine = engine(store)) {
+            for (addy.ThrottleZone zone : ZONES) {
+                long campaign = engine.createCampaign("owner", zone);
+                long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids(zone + "-", 6));
+                engine.deactivateKeywordSlot(slots[0]);
+                engine.recordSpend(campaign, 10L);
+                engine.transitionCampaignPhase(campaign, addy.CampaignPhase.LIVE);
+            }
+            try (addy.Snapshot snapshot = engine.snapshot()) {
+                addy.Aggregate aggregate = snapshot.aggregate(ForkJoinPool.commonPool());
+                assertEquals(snapshot.getCampaignCount(), aggregate.getCampaignCount(null, null));
+                assertEquals(4, aggregate.getCampaignCount(null, addy.CampaignPhase.LIVE));
+                assertEquals(snapshot.getTotalSpendNanos(), aggregate.getSpendNanos(null, null));
+                assertEquals(snapshot.getActiveSlotCount(), aggregate.getActiveSlotCount(null, null, null));
+                assertEquals(24L, aggregate.getSlotCount(null, null, null));
+                assertEquals(6L, aggregate.getSlotCount(addy.ThrottleZone.BETA, addy.CampaignPhase.LIVE, null));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void parallelAggregateMatchesSequentialFold(addy.SlotStoreKind store) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (addy engine = engine(store)) {
+            SplittableRandom random = new SplittableRandom(21);
+            // Slots deactivated before the snapshot, per campaign; the snapshot only lists active ones.
+            Map<Long, Integer> deactivated = new HashMap<>();
+            List<Long> campaigns = new ArrayList<>();
+            for (int c = 0; c < CAMPAIGNS; c++) {
+                addy.ThrottleZone zone = ZONES[c % ZONES.length];
+                long campaign = engine.createCampaign("owner-" + c, zone);
+                campaigns.add(campaign);
+                List<addy.KeywordBid> bids = new ArrayList<>(addy.MAX_CAMPAIGN_KEYWORDS);
+                for (int k = 0; k < addy.MAX_CAMPAIGN_KEYWORDS; k++) {
+                    bids.add(new addy.KeywordBid("agg-" + c + "-" + k, Fixtures.TIER,
+                            random.nextLong(addy.MIN_CPC_NANOS, 2_000_000_001L)));
+                }
+                long[] slots = engine.allocateKeywordSlots(campaign, bids);
+                for (int k = c % 7; k < slots.length; k += 7) engine.deactivateKeywordSlot(slots[k]);
+                deactivated.put(campaign, (slots.length - c % 7 + 6) / 7);
+                engine.recordSpend(campaign, random.nextLong(1L, 1_000_000L));
+                addy.CampaignPhase phase = PHASES[c / ZONES.length % PHASES.length];
+                if (phase != addy.CampaignPhase.DRAFT && engine.isPhaseAllowedInZone(phase, zone)) {
+                    engine.transitionCampaignPhase(campaign, phase);
+                }
+            }
+
+            try (addy.Snapshot snapshot = engine.snapshot()) {
+                // Later writes must show in neither side.
+                engine.recordSpend(campaigns.get(0), 5L);
+                engine.deactivateKeywordSlot(engine.getSlotsForCampaign(campaigns.get(1)).get(1).getSlotId());
+                engine.transitionCampaignPhase(campaigns.get(2), addy.CampaignPhase.ARCHIVED);
+
+                addy.Aggregate aggregate = snapshot.aggregate(pool);
+                long[][] campaignCells = new long[ZONES.length * PHASES.length][2];
+                Map<Long, Integer> groupOf = new HashMap<>();
+                for (addy.CampaignState state : snapshot.getCampaigns()) {
+                    int group = state.getZone().ordinal() * PHASES.length + state.getPhase().ordinal();
+                    groupOf.put(state.getCampaignId(), group);
+                    campaignCells[group][0]++;
+                    campaignCells[group][1] += state.getTotalSpendNanos();
+                }
+                long[][] slotCounts = new long[ZONES.length * PHASES.length * TIERS.length][2];
+                List<List<Long>> cpcs = new ArrayList<>();
+                for (int i = 0; i < slotCounts.length; i++) cpcs.add(new ArrayList<>());
+                snapshot.forEachSlot(slot -> {
+                    int cell = groupOf.get(slot.getCampaignId()) * TIERS.length + slot.getTier().ordinal();
+                    slotCounts[cell][0]++;
+                    slotCounts[cell][1]++;
+                    cpcs.get(cell).add(slot.getCpcNanos());
+                });
+                for (Map.Entry<Long, Integer> e : deactivated.entrySet()) {
+                    slotCounts[groupOf.get(e.getKey()) * TIERS.length + Fixtures.TIER.ordinal()][0] += e.getValue();
+                }
+
+                for (addy.ThrottleZone zone : ZONES) {
+                    for (addy.CampaignPhase phase : PHASES) {
+                        int group = zone.ordinal() * PHASES.length + phase.ordinal();
+                        String where = zone + "/" + phase;
+                        assertEquals(campaignCells[group][0], aggregate.getCampaignCount(zone, phase), where);
+                        assertEquals(campaignCells[group][1], aggregate.getSpendNanos(zone, phase), where);
+                        for (addy.BidTierKind tier : TIERS) {
+                            int cell = group * TIERS.length + tier.ordinal();
+                            assertEquals(slotCounts[cell][0], aggregate.getSlotCount(zone, phase, tier), where);
+                            assertEquals(slotCounts[cell][1], aggregate.getActiveSlotCount(zone, phase, tier), where);
+                            assertSameDistribution(fold(cpcs.get(cell)),
+                                    aggregate.getCpcDistribution(zone, phase, tier), where + "/" + tier);
+                        }
+                    }
+                }
+                assertEquals(CAMPAIGNS, aggregate.getCampaignCount(null, null));
+                assertEquals(snapshot.getTotalSpendNanos(), aggregate.getSpendNanos(null, null));
+                assertEquals(snapshot.getActiveSlotCount(), aggregate.getActiveSlotCount(null, null, null));
+                assertEquals((long) CAMPAIGNS * addy.MAX_CAMPAIGN_KEYWORDS, aggregate.getSlotCount(null, null, null));
+                List<Long> all = new ArrayList<>();
+                for (List<Long> cell : cpcs) all.addAll(cell);
+                assertSameDistribution(fold(all), aggregate.getCpcDistribution(null, null, null), "all");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static addy.CpcDistribution fold(List<Long> cpcs) {
+        long sum = 0L;
+        long min = Long.MAX_VALUE;
+        long max = 0L;
+        long[] buckets = new long[addy.Aggregate.CPC_BUCKET_COUNT];
+        for (long cpc : cpcs) {
+            sum += cpc;
+            min = Math.min(min, cpc);
+            max = Math.max(max, cpc);
+            buckets[addy.Aggregate.cpcBucket(cpc)]++;
+        }
+        return new addy.CpcDistribution(cpcs.size(), sum, cpcs.isEmpty() ? 0L : min, max, buckets);
+    }
+
+    private static void assertSameDistribution(addy.CpcDistribution expected, addy.CpcDistribution actual,
+                                               String where) {
+        assertEquals(expected.getCount(), actual.getCount(), where);
+        assertEquals(expected.getSumNanos(), actual.getSumNanos(), where);
+        assertEquals(expected.getMinNanos(), actual.getMinNanos(), where);
+        assertEquals(expected.getMaxNanos(), actual.getMaxNanos(), where);
+        for (double q : new double[] {0.0, 0.1, 0.5, 0.9, 0.99, 1.0}) {
+            assertEquals(expected.getPercentileNanos(q), actual.getPercentileNanos(q), where + " q" + q);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/** A rejected batch leaves no hashes, slots, cap usage, cooldown or audit record behind. */
+class BatchAllocationTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private static void assertNothingLeft(addy engine, long campaign, int slots, long sequence, String... keywords) {
+        assertNothingLeft(engine, campaign, slots, slots, sequence, keywords);
+    }
+
+    private static void assertNothingLeft(addy engine, long campaign, int slots, int totalSlots, long sequence,
+                                          String... keywords) {
+        for (String keyword : keywords) assertFalse(engine.isKeywordRegistered(keyword), keyword);
+        assertEquals(totalSlots, engine.getKeywordSlotCount());
+        assertEquals(slots, engine.getCampaign(campaign).getKeywordCount());
+        assertEquals(slots, engine.getSlotsForCampaign(campaign).size());
+        assertEquals(sequence, engine.getChangeSequence());
+    }
+
+    @Test
+    void keywordRepeatedInBatch() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long sequence = engine.getChangeSequence();
+            List<addy.KeywordBid> bids = new ArrayList<>(Fixtures.bids("dup-", 5));
+            bids.add(new addy.KeywordBid(" dup-2 ", Fixtures.TIER, Fixtures.CPC));
+            assertThrows(IllegalArgumentException.class, () -> engine.allocateKeywordSlots(campaign, bids));
+            assertNothingLeft(engine, campaign, 0, sequence, "dup-0", "dup-2", "dup-4");
+            // The rejected batch did not start the cooldown either.
+            assertEquals(5, engine.allocateKeywordSlots(campaign, Fixtures.bids("dup-", 5)).length);
+        }
+    }
+
+    @Test
+    void keywordAlreadyRegistered() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            long owner = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            engine.allocateKeywordSlot("taken", owner, Fixtures.TIER, Fixtures.CPC);
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long sequence = engine.getChangeSequence();
+            List<addy.KeywordBid> bids = new ArrayList<>(Fixtures.bids("fresh-", 3));
+            bids.add(new addy.KeywordBid("taken", Fixtures.TIER, Fixtures.CPC));
+            assertThrows(IllegalStateException.class, () -> engine.allocateKeywordSlots(campaign, bids));
+            assertFalse(engine.isKeywordRegistered("fresh-0"));
+            assertEquals(1, engine.getKeywordSlotCount());
+            assertEquals(0, engine.getCampaign(campaign).getKeywordCount());
+            assertEquals(sequence, engine.getChangeSequence());
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("fresh-", 3));
+        }
+    }
+
+    @Test
+    void invalidBidAnywhereRejectsAll() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.GAMMA);
+            long sequence = engine.getChangeSequence();
+            List<addy.KeywordBid> bids = new ArrayList<>(Fixtures.bids("cheap-", 4));
+            bids.add(2, new addy.KeywordBid("cheap-x", Fixtures.TIER, Fixtures.CPC - 1));
+            assertThrows(IllegalArgumentException.class, () -> engine.allocateKeywordSlots(campaign, bids));
+            assertNothingLeft(engine, campaign, 0, sequence, "cheap-0", "cheap-3", "cheap-x");
+        }
+    }
+
+    @Test
+    void campaignCapRejectsWholeBatch() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.BETA);
+            int room = addy.MAX_CAMPAIGN_KEYWORDS - 5;
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("fill-", room));
+            clock.advance(addy.BID_COOLDOWN_MS);
+            long sequence = engine.getChangeSequence();
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlots(campaign, Fixtures.bids("over-", 6)));
+            assertNothingLeft(engine, campaign, room, sequence, "over-0", "over-5");
+            assertEquals(5, engine.allocateKeywordSlots(campaign, Fixtures.bids("over-", 5)).length);
+        }
+    }
+
+    @Test
+    void globalCapRejectsWholeBatchAndKeepsNoReservation() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock).withKeywordSlotCap(10))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.DELTA);
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("global-", 4));
+            clock.advance(addy.BID_COOLDOWN_MS);
+            long other = engine.createCampaign("owner", addy.ThrottleZone.DELTA);
+            long sequence = engine.getChangeSequence();
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlots(other, Fixtures.bids("spill-", 7)));
+            assertNothingLeft(engine, other, 0, 4, sequence, "spill-0", "spill-6");
+            // All six remaining slots are still free, so the full remainder fits.
+            assertEquals(6, engine.allocateKeywordSlots(other, Fixtures.bids("spill-", 6)).length);
+            assertTrue(engine.isKeywordRegistered("spill-5"));
+            assertEquals(10, engine.getKeywordSlotCount());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/** Every audited mutation reaches the change feed, in order, under its own kind. */
+class ChangeFeedTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    @Test
+    void labelsEachMutationWithItsKind() throws InterruptedException {
+        List<addy.ChangeEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch seen = new CountDownLatch(7);
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            engine.changeFeed().subscribe(new Flow.Subscriber<List<addy.ChangeEvent>>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(List<addy.ChangeEvent> batch) {
+                    events.addAll(batch);
+                    batch.forEach(e -> seen.countDown());
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable failure) {
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            engine.transitionCampaignPhase(campaign, addy.CampaignPhase.LIVE);
+            long slot = engine.allocateKeywordSlot("feed-0", campaign, Fixtures.TIER, Fixtures.CPC);
+            engine.deactivateKeywordSlot(slot);
+            engine.recordSpend(campaign, 9L);
+            clock.advance(addy.BID_COOLDOWN_MS);
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("feed-batch-", 2));
+            engine.recordSpendBatch(new long[] {campaign, campaign}, new long[] {1L, 2L});
+            assertTrue(seen.await(5, TimeUnit.SECONDS));
+        }
+        List<addy.ChangeKind> kinds = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i, events.get(i).getSequence());
+            kinds.add(events.get(i).getKind());
+        }
+        assertEquals(List.of(addy.ChangeKind.CAMPAIGN_CREATE, addy.ChangeKind.PHASE_CHANGE,
+                addy.ChangeKind.SLOT_ALLOC, addy.ChangeKind.SLOT_DEACT, addy.ChangeKind.SPEND,
+                addy.ChangeKind.SLOT_BATCH, addy.ChangeKind.SPEND_BATCH), kinds);
+        assertEquals(addy.CampaignPhase.LIVE, events.get(1).getToPhase());
+        assertEquals(Fixtures.TIER, events.get(2).getTier());
+        assertTrue(events.get(1).toString().endsWith("DRAFT->LIVE"), events.get(1).toString());
+        assertTrue(events.get(6).toString().endsWith("events=2,total=3"), events.get(6).toString());
+    }
+}
@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/** Throttle windows, bid cooldowns and slot TTL expiry, all on the injected clock. */
+class ClockTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    @Test
+    void throttleReopensAfterWindow() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            for (int i = 0; i < 43; i++) engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            assertThrows(IllegalStateException.class, () -> engine.createCampaign("owner", addy.ThrottleZone.ALPHA));
+            engine.createCampaign("owner", addy.ThrottleZone.BETA);
+
+            clock.advance(addy.THROTTLE_WINDOW_MS - 1);
+            assertThrows(IllegalStateException.class, () -> engine.createCampaign("owner", addy.ThrottleZone.ALPHA));
+            clock.advance(1L);
+            engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            assertEquals(45, engine.getCampaignCount());
+        }
+    }
+
+    @Test
+    void takesSeveralPermitsAllOrNothing() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            assertTrue(engine.tryAcquireInZone(addy.ThrottleZone.BETA, 40));
+            assertEquals(40, engine.getThrottleState(addy.ThrottleZone.BETA).getActionsInWindow());
+            assertFalse(engine.tryAcquireInZone(addy.ThrottleZone.BETA, 4));
+            assertEquals(40, engine.getThrottleState(addy.ThrottleZone.BETA).getActionsInWindow());
+            assertTrue(engine.tryAcquireInZone(addy.ThrottleZone.BETA, 3));
+            assertFalse(engine.canPerformInZone(addy.ThrottleZone.BETA));
+            assertThrows(IllegalStateException.class, () -> engine.createCampaign("owner", addy.ThrottleZone.BETA));
+            assertTrue(engine.canPerformInZone(addy.ThrottleZone.GAMMA));
+
+            assertFalse(engine.tryAcquireInZone(addy.ThrottleZone.DELTA, 44));
+            assertThrows(IllegalArgumentException.class, () -> engine.tryAcquireInZone(addy.ThrottleZone.DELTA, 0));
+
+            clock.advance(addy.THROTTLE_WINDOW_MS);
+            assertEquals(0, engine.getThrottleState(addy.ThrottleZone.BETA).getActionsInWindow());
+            assertTrue(engine.tryAcquireInZone(addy.ThrottleZone.BETA, 43));
+        }
+    }
+
+    /**
+     * A caller that read the clock before an admitted one must not stamp its admission
+     * earlier: here that would let two permits through at 2099 while the one from
+     * 2000 is still inside the window.
+     */
+    @Test
+    void staleCallerTimeCannotReopenWindowEarly() {
+        addy.ZoneThrottle throttle = new addy.ZoneThrottle(0L, 100L, 2);
+        assertTrue(throttle.tryAcquire(addy.ThrottleZone.ALPHA, 1, 2_000L));
+        assertTrue(throttle.tryAcquire(addy.ThrottleZone.ALPHA, 1, 1_999L));
+        assertFalse(throttle.tryAcquire(addy.ThrottleZone.ALPHA, 2, 2_099L));
+        assertTrue(throttle.tryAcquire(addy.ThrottleZone.ALPHA, 2, 2_100L));
+    }
+
+    @Test
+    void bidCooldownHoldsUntilElapsed() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("first-", 1));
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlots(campaign, Fixtures.bids("second-", 1)));
+            long other = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            engine.allocateKeywordSlots(other, Fixtures.bids("other-", 1));
+
+            clock.advance(addy.BID_COOLDOWN_MS - 1);
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlots(campaign, Fixtures.bids("second-", 1)));
+            clock.advance(1L);
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("second-", 1));
+            assertEquals(2, engine.getCampaign(campaign).getKeywordCount());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void expiresSlotsWhenTtlIsUp(addy.SlotStoreKind store) {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock).withSlotStore(store).withSlotTtlMillis(10_000L))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.GAMMA);
+            long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("ttl-", 3));
+            // One expiry for the batch, one to clear the bid cooldown.
+            assertEquals(2, engine.getPendingTimerCount());
+
+            clock.advance(9_999L);
+            engine.advanceTimers();
+            assertTrue(engine.getKeywordSlot(slots[0]).isActive());
+
+            clock.advance(1L);
+            engine.advanceTimers();
+            for (long slot : slots) assertFalse(engine.getKeywordSlot(slot).isActive());
+            assertEquals(1, engine.getPendingTimerCount());
+            assertEquals(3, engine.compactSlots());
+            assertFalse(engine.isKeywordRegistered("ttl-0"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void expiryLeavesDeactivatedSlotsAlone(addy.SlotStoreKind store) {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock).withSlotStore(store).withSlotTtlMillis(1_000L))) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.GAMMA);
+            long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("early-", 2));
+            engine.deactivateKeywordSlot(slots[0]);
+            assertEquals(1, engine.compactSlots());
+            clock.advance(1_000L);
+            engine.advanceTimers();
+            assertNull(engine.getKeywordSlot(slots[0]));
+            assertFalse(engine.getKeywordSlot(slots[1]).isActive());
+        }
+    }
+
+    @Test
+    void shardedSlotsExpireOnTheirWriters() {
+        addy.Options options = Fixtures.options(clock).withSlotTtlMillis(5_000L);
+        try (addy.ShardedEngine engine = new addy.ShardedEngine(4, addy.MAX_CAMPAIGN_KEYWORDS,
+                addy.MIN_CPC_NANOS, options)) {
+            long[] slots = new long[8];
+            for (int i = 0; i < slots.length; i++) {
+                long campaign = engine.createCampaign("owner", addy.ThrottleZone.values()[i % 4]);
+                slots[i] = engine.allocateKeywordSlots(campaign, Fixtures.bids("shard-" + i + "-", 1))[0];
+            }
+            clock.advance(4_999L);
+            engine.advanceTimers();
+            for (long slot : slots) assertTrue(engine.getKeywordSlot(slot).isActive());
+
+            clock.advance(1L);
+            engine.advanceTimers();
+            for (long slot : slots) assertFalse(engine.getKeywordSlot(slot).isActive());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/** Reclaiming deactivated slots, and deferring it while an older snapshot is open. */
+class CompactionTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private addy engine(addy.SlotStoreKind store) {
+        return Fixtures.engine(Fixtures.options(clock).withSlotStore(store));
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void reclaimsDeactivatedSlotsAndReleasesKeywords(addy.SlotStoreKind store) {
+        try (addy engine = engine(store)) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("kw-", 10));
+            for (int i = 0; i < 4; i++) engine.deactivateKeywordSlot(slots[i]);
+            assertEquals(4, engine.getCompactionStats().getPendingSlots());
+
+            assertEquals(4, engine.compactSlots());
+            assertEquals(0, engine.getCompactionStats().getPendingSlots());
+            assertEquals(4L, engine.getCompactionStats().getReclaimedSlots());
+            assertEquals(6, engine.getKeywordSlotCount());
+            assertEquals(6, engine.getCampaign(campaign).getKeywordCount());
+            assertNull(engine.getKeywordSlot(slots[0]));
+            assertFalse(engine.isKeywordRegistered("kw-0"));
+            assertNotNull(engine.getKeywordSlot(slots[4]));
+
+            clock.advance(addy.BID_COOLDOWN_MS);
+            engine.allocateKeywordSlots(campaign, Fixtures.bids("kw-", 4));
+            assertTrue(engine.isKeywordRegistered("kw-0"));
+            assertEquals(10, engine.getKeywordSlotCount());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void storageFollowsLiveSlotsUnderChurn(addy.SlotStoreKind store) {
+        try (addy engine = engine(store)) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            for (int round = 0; round < 20; round++) {
+                long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("churn-", 100));
+                for (long slot : slots) engine.deactivateKeywordSlot(slot);
+                engine.compactSlots();
+                clock.advance(addy.BID_COOLDOWN_MS);
+            }
+            engine.compactSlots();
+            assertEquals(0, engine.getKeywordSlotCount());
+            assertTrue(engine.getCompactionStats().getStorageSlots() <= 200);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void defersReclaimWhileOlderSnapshotIsOpen(addy.SlotStoreKind store) {
+        try (addy engine = engine(store)) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.BETA);
+            long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("pin-", 3));
+            try (addy.Snapshot snapshot = engine.snapshot()) {
+                engine.deactivateKeywordSlot(slots[0]);
+                assertEquals(0, engine.compactSlots());
+                assertEquals(1, engine.getCompactionStats().getPendingSlots());
+                assertTrue(snapshot.getKeywordSlot(slots[0]).isActive());
+                assertEquals(3, snapshot.getActiveSlotCount());
+            }
+            assertEquals(1, engine.compactSlots());
+            assertNull(engine.getKeywordSlot(slots[0]));
+        }
+    }
+}
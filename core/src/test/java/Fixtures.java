@@ -0,0 +1,68 @@
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Engines for the tests, on a {@link ManualClock} so throttle windows, cooldowns
+ * and slot TTLs move only when a test says so. Background compaction is off;
+ * tests compact with {@link addy#compactSlots()} when they mean to.
+ */
+final class Fixtures {
+    static final long CPC = addy.MIN_CPC_NANOS;
+    static final addy.BidTierKind TIER = addy.BidTierKind.ULTRA;
+
+    private Fixtures() {
+    }
+
+    static addy.Options options(ManualClock clock) {
+        return addy.Options.DEFAULTS.withClock(clock).withCompactionIntervalMillis(0);
+    }
+
+    static addy.Options persistent(ManualClock clock, Path dir) {
+        return options(clock).withPersistence(dir).withSnapshotIntervalMillis(0L);
+    }
+
+    static addy engine(addy.Options options) {
+        return new addy(addy.ORACLE_HEX, addy.CONTROLLER_HEX, addy.TREASURY_HEX, addy.MAX_CAMPAIGN_KEYWORDS,
+                addy.MIN_CPC_NANOS, options);
+    }
+
+    static List<addy.KeywordBid> bids(String prefix, int n) {
+        List<addy.KeywordBid> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(new addy.KeywordBid(prefix + i, TIER, CPC + i));
+        return out;
+    }
+
+    /** A clock that only moves when told to. */
+    static final class ManualClock extends Clock {
+        private volatile long millis = 1_700_000_000_000L;
+
+        void advance(long deltaMillis) {
+            millis += deltaMillis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/** Whether a keyword's hash comes from the cache, a fresh admission or a rejected probe, it is the direct hash. */
+class HashCacheTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    @Test
+    void everyPathReturnsTheDirectHash() {
+        addy.KeywordHashCache cache = new addy.KeywordHashCache(64);
+        SplittableRandom random = new SplittableRandom(12);
+        for (int i = 0; i < 20_000; i++) {
+            // A small hot set among many rarer keywords, so hits, evictions and rejections all happen.
+            String keyword = random.nextInt(4) == 0 ? "hot-" + random.nextInt(16) : "cold-" + random.nextInt(3_000);
+            addy.KeywordHashKey direct = addy.keywordHashKey(keyword);
+            addy.KeywordHashKey cached = cache.get(keyword);
+            assertEquals(direct, cached, keyword);
+            assertEquals(addy.keywordHash(keyword), cached.toHex(), keyword);
+        }
+        addy.HashCacheStats stats = cache.stats();
+        assertTrue(stats.getHits() > 0);
+        assertTrue(stats.getEvictions() > 0);
+        assertTrue(stats.getRejections() > 0);
+    }
+
+    @Test
+    void hotKeywordsSurviveABurstOfOneOffs() {
+        addy.KeywordHashCache cache = new addy.KeywordHashCache(64);
+        for (int round = 0; round < 8; round++) {
+            for (int k = 0; k < 8; k++) cache.get("hot-" + k);
+        }
+        for (int i = 0; i < 500; i++) {
+            String keyword = "burst-" + i;
+            assertEquals(addy.keywordHashKey(keyword), cache.get(keyword), keyword);
+        }
+        long hits = cache.stats().getHits();
+        for (int k = 0; k < 8; k++) assertEquals(addy.keywordHashKey("hot-" + k), cache.get("hot-" + k));
+        assertEquals(hits + 8, cache.stats().getHits());
+    }
+
+    /** Slots stored through the cache, including rejected newcomers, carry the same hash as with no cache. */
+    @Test
+    void engineStoresTheSameHashWithAndWithoutCache() {
+        addy.Options options = Fixtures.options(clock).withKeywordSlotCap(4_096);
+        try (addy cached = Fixtures.engine(options.withHashCacheCapacity(16));
+             addy direct = Fixtures.engine(options.withHashCacheCapacity(0))) {
+            long a = cached.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long b = direct.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            for (int i = 0; i < 200; i++) {
+                // Look the hot keyword up between allocations so it outranks the newcomers.
+                cached.isKeywordRegistered("hot");
+                direct.isKeywordRegistered("hot");
+                String keyword = " kw-" + i + " ";
+                long slotA = cached.allocateKeywordSlot(keyword, a, Fixtures.TIER, Fixtures.CPC);
+                long slotB = direct.allocateKeywordSlot(keyword, b, Fixtures.TIER, Fixtures.CPC);
+                clock.advance(addy.BID_COOLDOWN_MS);
+                assertEquals(direct.getKeywordSlot(slotB).getKeywordHash(), cached.getKeywordSlot(slotA).getKeywordHash());
+                assertEquals(addy.keywordHash(keyword), cached.getKeywordSlot(slotA).getKeywordHash());
+            }
+            assertTrue(cached.getHashCacheStats().getRejections() > 0);
+            for (int i = 0; i < 200; i++) {
+                String keyword = "kw-" + i;
+                assertTrue(cached.isKeywordRegistered(keyword), keyword);
+                assertEquals(direct.match(keyword).getKeywordHash(), cached.match(keyword).getKeywordHash());
+                assertThrows(IllegalStateException.class,
+                        () -> cached.allocateKeywordSlot(keyword, a, Fixtures.TIER, Fixtures.CPC));
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Keyword hashes must stay byte-for-byte what the original String.format("%02x")
+ * SHA-256 produced, since they are stored and compared as text.
+ */
+class KeywordHashTest {
+    /** Keyword, then its hash as computed by the original implementation. */
+    private static final String[][] VECTORS = {
+            {"shoes", "1d823d35c63275a4eae8e42587fa4d1f9d735bb6ff50e25f95af548dad0bd6a9"},
+            {"  running shoes  ", "8f9b0b4a701d73e96803c7190f3c1cfbbe223f94e793b0b68de7f194be1b9447"},
+            {"café", "451ecd0fd647d83380e99cf0784b1ba953274c954d4626240ab4967c33919464"},
+            {"日本語", "817ef3b5d0ef4ca6dcc54c1b31e856204bf6fd2fb50d96f1882cb3435a7bf01f"},
+            {"a", "0a7fb07381fb30c8061f208f39c71c82b8240d324397bf547a86acdbe5f493df"},
+            {"emoji 🚀", "ae6d2aca3d7d4694c9d7586cd0d14e7fa22d314bc34d689d2fb6fb5baccc5e1b"},
+    };
+
+    @Test
+    void matchesKnownVectors() {
+        for (String[] v : VECTORS) {
+            assertEquals(v[1], addy.keywordHash(v[0]), v[0]);
+            assertEquals(v[1], addy.keywordHashKey(v[0]).toHex(), v[0]);
+        }
+    }
+
+    @Test
+    void binaryKeyRendersAsTheTextHash() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 2_000; i++) {
+            StringBuilder keyword = new StringBuilder("k");
+            int length = random.nextInt(1, 200);
+            for (int c = 0; c < length; c++) keyword.append((char) random.nextInt(0x20, 0x3000));
+            String k = keyword.toString();
+            assertEquals(addy.keywordHash(k), addy.keywordHashKey(k).toHex(), k);
+        }
+        assertEquals(addy.keywordHash("shoes"), addy.keywordHash(" shoes\t"));
+    }
+
+    @Test
+    void rejectsBlankKeywords() {
+        assertThrows(IllegalArgumentException.class, () -> addy.keywordHash("   "));
+        assertThrows(IllegalArgumentException.class, () -> addy.keywordHashKey(null));
+    }
+}
@@ -0,0 +1,24 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/** Counting campaigns by (zone, phase) agrees with listing them. */
+class PhaseIndexTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    @Test
+    void countsAgreeWithListing() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            long[] ids = new long[6];
+            for (int i = 0; i < ids.length; i++) ids[i] = engine.createCampaign("owner", addy.ThrottleZone.GAMMA);
+            for (int i = 0; i < 4; i++) engine.transitionCampaignPhase(ids[i], addy.CampaignPhase.LIVE);
+            engine.transitionCampaignPhase(ids[0], addy.CampaignPhase.ARCHIVED);
+            for (addy.CampaignPhase phase : addy.CampaignPhase.values()) {
+                assertEquals(engine.getCampaignsInPhase(addy.ThrottleZone.GAMMA, phase).size(),
+                        engine.countCampaignsInPhase(addy.ThrottleZone.GAMMA, phase));
+            }
+            assertEquals(3, engine.countCampaignsInPhase(addy.ThrottleZone.GAMMA, addy.CampaignPhase.LIVE));
+            assertEquals(2, engine.countCampaignsInPhase(addy.ThrottleZone.GAMMA, addy.CampaignPhase.DRAFT));
+        }
+    }
+}
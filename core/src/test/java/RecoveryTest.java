@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/** Recovery from the write-ahead log alone and from a checkpoint plus the log after it. */
+class RecoveryTest {
+    @TempDir
+    Path dir;
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private addy open(addy.SlotStoreKind store) {
+        return Fixtures.engine(Fixtures.persistent(clock, dir).withSlotStore(store));
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void replaysLogWithoutCheckpoint(addy.SlotStoreKind store) {
+        long campaign;
+        long[] slots;
+        try (addy engine = open(store)) {
+            campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("wal-", 5));
+            engine.recordSpend(campaign, 700L);
+            engine.recordSpend(campaign, 42L);
+            engine.deactivateKeywordSlot(slots[1]);
+            engine.transitionCampaignPhase(campaign, addy.CampaignPhase.LIVE);
+        }
+        try (addy engine = open(store)) {
+            addy.RecoveryStats stats = engine.getRecoveryStats();
+            assertEquals(0L, stats.getSnapshotLsn());
+            assertTrue(stats.getRecordsReplayed() > 0);
+            addy.CampaignRecord rec = engine.getCampaign(campaign);
+            assertEquals(742L, rec.getTotalSpendNanos());
+            assertEquals(addy.CampaignPhase.LIVE, rec.getPhase());
+            assertEquals(5, rec.getKeywordCount());
+            assertEquals(5, engine.getKeywordSlotCount());
+            assertFalse(engine.getKeywordSlot(slots[1]).isActive());
+            assertTrue(engine.getKeywordSlot(slots[0]).isActive());
+            assertEquals(Fixtures.CPC + 4, engine.getKeywordSlot(slots[4]).getCpcNanos());
+            assertTrue(engine.isKeywordRegistered("wal-1"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void replaysTailAfterCheckpoint(addy.SlotStoreKind store) {
+        long first;
+        long second;
+        try (addy engine = open(store)) {
+            first = engine.createCampaign("owner", addy.ThrottleZone.BETA);
+            engine.allocateKeywordSlots(first, Fixtures.bids("before-", 3));
+            engine.recordSpend(first, 10L);
+            engine.checkpoint();
+            second = engine.createCampaign("owner", addy.ThrottleZone.BETA);
+            engine.allocateKeywordSlots(second, Fixtures.bids("after-", 2));
+            engine.recordSpend(first, 5L);
+        }
+        try (addy engine = open(store)) {
+            addy.RecoveryStats stats = engine.getRecoveryStats();
+            assertTrue(stats.getSnapshotLsn() > 0);
+            assertEquals(1, stats.getCampaignsLoaded());
+            assertEquals(3, stats.getSlotsLoaded());
+            assertTrue(stats.getRecordsReplayed() > 0);
+            assertEquals(2, engine.getCampaignCount());
+            assertEquals(5, engine.getKeywordSlotCount());
+            assertEquals(15L, engine.getCampaign(first).getTotalSpendNanos());
+            assertEquals(2, engine.getCampaign(second).getKeywordCount());
+            assertTrue(engine.isKeywordRegistered("after-1"));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void reclaimedSlotStaysGoneAfterReplay(addy.SlotStoreKind store) {
+        long campaign;
+        long[] slots;
+        try (addy engine = open(store)) {
+            campaign = engine.createCampaign("owner", addy.ThrottleZone.GAMMA);
+            slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("gone-", 4));
+            engine.deactivateKeywordSlot(slots[2]);
+            assertEquals(1, engine.compactSlots());
+        }
+        try (addy engine = open(store)) {
+            assertNull(engine.getKeywordSlot(slots[2]));
+            assertFalse(engine.isKeywordRegistered("gone-2"));
+            assertEquals(3, engine.getKeywordSlotCount());
+            assertEquals(3, engine.getCampaign(campaign).getKeywordCount());
+            clock.advance(addy.BID_COOLDOWN_MS);
+            long again = engine.allocateKeywordSlot("gone-2", campaign, Fixtures.TIER, Fixtures.CPC);
+            assertTrue(again > slots[3]);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void reclaimBeforeCheckpointSurvivesRestart(addy.SlotStoreKind store) {
+        long campaign;
+        long[] slots;
+        try (addy engine = open(store)) {
+            campaign = engine.createCampaign("owner", addy.ThrottleZone.DELTA);
+            slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("ckpt-", 4));
+            engine.deactivateKeywordSlot(slots[0]);
+            engine.compactSlots();
+            engine.checkpoint();
+            engine.deactivateKeywordSlot(slots[1]);
+        }
+        try (addy engine = open(store)) {
+            assertNull(engine.getKeywordSlot(slots[0]));
+            assertFalse(engine.getKeywordSlot(slots[1]).isActive());
+            // Recovered dead slots are queued for compaction again.
+            assertEquals(1, engine.compactSlots());
+            assertNull(engine.getKeywordSlot(slots[1]));
+        }
+        try (addy engine = open(store)) {
+            assertEquals(2, engine.getKeywordSlotCount());
+            assertNotNull(engine.getKeywordSlot(slots[3]));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void phaseTransitionsReplayInOrder(addy.SlotStoreKind store) {
+        long campaign;
+        try (addy engine = open(store)) {
+            campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            engine.transitionCampaignPhase(campaign, addy.CampaignPhase.PENDING_REVIEW);
+            engine.transitionCampaignPhase(campaign, addy.CampaignPhase.LIVE);
+            engine.transitionCampaignPhase(campaign, addy.CampaignPhase.PAUSED);
+            engine.transitionCampaignPhase(campaign, addy.CampaignPhase.LIVE);
+        }
+        try (addy engine = open(store)) {
+            assertEquals(addy.CampaignPhase.LIVE, engine.getCampaign(campaign).getPhase());
+            assertEquals(1, engine.countCampaignsInPhase(addy.ThrottleZone.ALPHA, addy.CampaignPhase.LIVE));
+            assertEquals(0, engine.countCampaignsInPhase(addy.ThrottleZone.ALPHA, addy.CampaignPhase.PAUSED));
+            assertEquals(campaign,
+                    engine.getCampaignsInPhase(addy.ThrottleZone.ALPHA, addy.CampaignPhase.LIVE).get(0).getCampaignId());
+            assertEquals(2, engine.getTotalCampaignsActivated());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** The server and client over loopback: pipelining, error round trips and malformed input. */
+class ServerTest {
+    @TempDir
+    Path dir;
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    /** With a synced log, writes run on their own tasks while reads answer inline, so replies interleave. */
+    @Test
+    void pipelinedRepliesMatchTheirRequests() throws IOException {
+        try (addy engine = Fixtures.engine(Fixtures.persistent(clock, dir));
+             addy.Server server = addy.Server.start(engine, loopback());
+             addy.Client client = addy.Client.connect(server.getLocalAddress())) {
+            long campaign = client.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            client.allocateKeywordSlot("known", campaign, Fixtures.TIER, Fixtures.CPC);
+            List<CompletableFuture<Void>> spends = new ArrayList<>();
+            List<CompletableFuture<Boolean>> reads = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                spends.add(client.recordSpendAsync(campaign, 1L));
+                reads.add(client.isKeywordRegisteredAsync((i & 1) == 0 ? "known" : "unknown-" + i));
+            }
+            CompletableFuture<List<addy.KeywordSlotView>> slots = client.getSlotsForCampaignAsync(campaign);
+            for (CompletableFuture<Void> spend : spends) spend.join();
+            for (int i = 0; i < reads.size(); i++) assertEquals((i & 1) == 0, reads.get(i).join());
+            assertEquals(1, slots.join().size());
+            assertEquals(200L, engine.getCampaign(campaign).getTotalSpendNanos());
+            assertEquals(0, client.getOutstandingCount());
+        }
+    }
+
+    /** A stand-in server answers two requests in reverse order; each call still gets its own reply. */
+    @Test
+    void clientMatchesRepliesThatArriveOutOfOrder() throws IOException {
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(loopback());
+             addy.Client client = addy.Client.connect((InetSocketAddress) listener.getLocalAddress());
+             SocketChannel peer = listener.accept()) {
+            CompletableFuture<Long> first = client.createCampaignAsync("a", addy.ThrottleZone.ALPHA);
+            CompletableFuture<Long> second = client.createCampaignAsync("b", addy.ThrottleZone.BETA);
+            int firstId = readFrame(peer).getInt(4);
+            int secondId = readFrame(peer).getInt(4);
+            writeFrame(peer, secondId, addy.Wire.STATUS_OK, ByteBuffer.allocate(8).putLong(0, 22L));
+            assertEquals(22L, second.join());
+            assertFalse(first.isDone());
+            writeFrame(peer, firstId, addy.Wire.STATUS_OK, ByteBuffer.allocate(8).putLong(0, 11L));
+            assertEquals(11L, first.join());
+        }
+    }
+
+    @Test
+    void exceptionsKeepTheirTypeAndMessage() throws IOException {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock));
+             addy.Server server = addy.Server.start(engine, loopback());
+             addy.Client client = addy.Client.connect(server.getLocalAddress())) {
+            IllegalArgumentException local = assertThrows(IllegalArgumentException.class,
+                    () -> engine.recordSpend(424242L, 1L));
+            IllegalArgumentException remote = assertThrows(IllegalArgumentException.class,
+                    () -> client.recordSpend(424242L, 1L));
+            assertEquals(local.getMessage(), remote.getMessage());
+
+            for (int i = 0; i < 43; i++) client.createCampaign("owner", addy.ThrottleZone.DELTA);
+            IllegalStateException throttled = assertThrows(IllegalStateException.class,
+                    () -> client.createCampaign("owner", addy.ThrottleZone.DELTA));
+            IllegalStateException direct = assertThrows(IllegalStateException.class,
+                    () -> engine.createCampaign("owner", addy.ThrottleZone.DELTA));
+            assertEquals(direct.getMessage(), throttled.getMessage());
+
+            CompletionException async = assertThrows(CompletionException.class,
+                    () -> client.recordSpendAsync(424242L, 1L).join());
+            assertTrue(async.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    void malformedRequestsAreIllegalArguments() throws IOException {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock));
+             addy.Server server = addy.Server.start(engine, loopback());
+             SocketChannel raw = SocketChannel.open(server.getLocalAddress())) {
+            byte[] owner = "owner".getBytes(StandardCharsets.UTF_8);
+            for (byte zone : new byte[] {4, -1, Byte.MIN_VALUE}) {
+                ByteBuffer body = ByteBuffer.allocate(2 + owner.length + 1);
+                body.putShort((short) owner.length).put(owner).put(zone).flip();
+                writeFrame(raw, 1, addy.Wire.OP_CREATE_CAMPAIGN, body);
+                assertError(readFrame(raw), 1, "addy: unknown zone " + zone);
+            }
+
+            ByteBuffer allocate = ByteBuffer.allocate(2 + 1 + 8 + 1 + 8);
+            allocate.putShort((short) 1).put((byte) 'k').putLong(1L).put((byte) 6).putLong(Fixtures.CPC).flip();
+            writeFrame(raw, 2, addy.Wire.OP_ALLOCATE_SLOT, allocate);
+            assertError(readFrame(raw), 2, "addy: unknown tier 6");
+
+            writeFrame(raw, 3, addy.Wire.OP_RECORD_SPEND, ByteBuffer.allocate(3));
+            assertError(readFrame(raw), 3, "addy: request body too short");
+
+            writeFrame(raw, 4, (byte) 99, ByteBuffer.allocate(0));
+            assertError(readFrame(raw), 4, "addy: unknown operation 99");
+            assertEquals(0, engine.getCampaignCount());
+
+            // A length shorter than the header cannot be framed; the server hangs up.
+            raw.write(ByteBuffer.allocate(4).putInt(0, 1));
+            assertEquals(-1, raw.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    private static void assertError(ByteBuffer frame, int requestId, String message) {
+        assertEquals(requestId, frame.getInt(4));
+        assertEquals(addy.Wire.STATUS_ILLEGAL_ARGUMENT, frame.get(8));
+        frame.position(addy.Wire.HEADER_BYTES);
+        assertEquals(message, addy.Wire.getString(frame));
+    }
+
+    private static void writeFrame(SocketChannel channel, int requestId, byte code, ByteBuffer body)
+            throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(addy.Wire.HEADER_BYTES + body.remaining());
+        out.putInt(out.capacity() - 4).putInt(requestId).put(code).put(body).flip();
+        while (out.hasRemaining()) channel.write(out);
+    }
+
+    /** One whole frame, length prefix included. */
+    private static ByteBuffer readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(channel, length);
+        ByteBuffer frame = ByteBuffer.allocate(4 + length.getInt(0));
+        frame.put(length.flip());
+        readFully(channel, frame);
+        return frame.flip();
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer into) throws IOException {
+        while (into.hasRemaining()) {
+            if (channel.read(into) < 0) throw new IOException("closed");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/** The invariants the coordinator keeps across shards: throttle, duplicate keywords, slot cap, gathered reads. */
+class ShardedTest {
+    private static final int SHARDS = 4;
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private static addy.ShardedEngine sharded(addy.Options options) {
+        return new addy.ShardedEngine(SHARDS, addy.MAX_CAMPAIGN_KEYWORDS, addy.MIN_CPC_NANOS, options);
+    }
+
+    /** One permit per creation, wherever it lands: the zone admits exactly its capacity per window. */
+    @Test
+    void throttleTakesOnePermitPerCreation() {
+        try (addy.ShardedEngine engine = sharded(Fixtures.options(clock))) {
+            for (int i = 0; i < 43; i++) engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            assertThrows(IllegalStateException.class, () -> engine.createCampaign("owner", addy.ThrottleZone.ALPHA));
+            assertEquals(43, engine.getCampaignCount());
+            // Other zones are untouched.
+            engine.createCampaign("owner", addy.ThrottleZone.BETA);
+
+            clock.advance(addy.THROTTLE_WINDOW_MS);
+            for (int i = 0; i < 43; i++) engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            assertThrows(IllegalStateException.class, () -> engine.createCampaign("owner", addy.ThrottleZone.ALPHA));
+            assertEquals(87, engine.getCampaignCount());
+            assertThrows(IllegalArgumentException.class, () -> engine.createCampaign("owner", null));
+        }
+    }
+
+    @Test
+    void keywordRegisteredOnAnotherShardIsRejected() {
+        try (addy.ShardedEngine engine = sharded(Fixtures.options(clock))) {
+            long first = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long second = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            // Round-robin puts consecutive campaigns on different shards.
+            assertTrue(first >>> addy.ShardedEngine.SHARD_ID_SHIFT != second >>> addy.ShardedEngine.SHARD_ID_SHIFT);
+            long slot = engine.allocateKeywordSlot("shared", first, Fixtures.TIER, Fixtures.CPC);
+
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlot(" shared ", second, Fixtures.TIER, Fixtures.CPC));
+            List<addy.KeywordBid> bids = new ArrayList<>(Fixtures.bids("fresh-", 3));
+            bids.add(new addy.KeywordBid("shared", Fixtures.TIER, Fixtures.CPC));
+            assertThrows(IllegalStateException.class, () -> engine.allocateKeywordSlots(second, bids));
+            assertFalse(engine.isKeywordRegistered("fresh-0"));
+            assertEquals(0, engine.getSlotsForCampaign(second).size());
+            assertEquals(1, engine.getKeywordSlotCount());
+            assertEquals(slot, engine.match("shared").getSlotId());
+
+            // The released claims leave the fresh keywords free for the other shard.
+            assertEquals(3, engine.allocateKeywordSlots(second, Fixtures.bids("fresh-", 3)).length);
+            assertEquals(4, engine.getKeywordSlotCount());
+        }
+    }
+
+    @Test
+    void globalSlotCapSpansShards() {
+        try (addy.ShardedEngine engine = sharded(Fixtures.options(clock).withKeywordSlotCap(10))) {
+            long[] campaigns = new long[SHARDS];
+            for (int i = 0; i < SHARDS; i++) campaigns[i] = engine.createCampaign("owner", addy.ThrottleZone.GAMMA);
+            List<Long> slots = new ArrayList<>();
+            for (int i = 0; i < SHARDS; i++) {
+                for (long slot : engine.allocateKeywordSlots(campaigns[i], Fixtures.bids("cap-" + i + "-", 2))) {
+                    slots.add(slot);
+                }
+            }
+            assertEquals(8, engine.getKeywordSlotCount());
+
+            // Three more would overflow the cap although every shard is well under it.
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlots(campaigns[0], Fixtures.bids("over-", 3)));
+            assertFalse(engine.isKeywordRegistered("over-0"));
+            clock.advance(addy.BID_COOLDOWN_MS);
+            assertEquals(2, engine.allocateKeywordSlots(campaigns[1], Fixtures.bids("last-", 2)).length);
+            assertThrows(IllegalStateException.class,
+                    () -> engine.allocateKeywordSlot("over", campaigns[2], Fixtures.TIER, Fixtures.CPC));
+
+            engine.deactivateKeywordSlot(slots.get(0));
+            assertTrue(engine.compactSlots() > 0);
+            clock.advance(addy.BID_COOLDOWN_MS);
+            engine.allocateKeywordSlot("over", campaigns[2], Fixtures.TIER, Fixtures.CPC);
+            assertEquals(10, engine.getKeywordSlotCount());
+        }
+    }
+
+    @Test
+    void countsAndAuditTailGatherEveryShard() {
+        try (addy.ShardedEngine engine = sharded(Fixtures.options(clock))) {
+            long[] campaigns = new long[8];
+            for (int i = 0; i < campaigns.length; i++) {
+                clock.advance(1L);
+                campaigns[i] = engine.createCampaign("owner", addy.ThrottleZone.DELTA);
+                engine.allocateKeywordSlots(campaigns[i], Fixtures.bids("gather-" + i + "-", i + 1));
+            }
+            engine.transitionCampaignPhase(campaigns[1], addy.CampaignPhase.LIVE);
+            engine.transitionCampaignPhase(campaigns[6], addy.CampaignPhase.LIVE);
+
+            assertEquals(8, engine.getCampaignCount());
+            assertEquals(36, engine.getKeywordSlotCount());
+            assertEquals(36, engine.getTotalBidsPlaced());
+            assertEquals(2, engine.countCampaignsInPhase(addy.ThrottleZone.DELTA, addy.CampaignPhase.LIVE));
+            assertEquals(2, engine.getCampaignsInPhase(addy.ThrottleZone.DELTA, addy.CampaignPhase.LIVE).size());
+            assertEquals(2, engine.getTotalCampaignsActivated());
+
+            List<addy.AuditEntry> tail = engine.getAuditTail(1_000);
+            Set<Long> subjects = new HashSet<>();
+            for (int i = 1; i < tail.size(); i++) {
+                assertTrue(tail.get(i - 1).getTimestamp() <= tail.get(i).getTimestamp());
+            }
+            for (addy.AuditEntry entry : tail) subjects.add(entry.getSubjectId());
+            for (long campaign : campaigns) assertTrue(subjects.contains(campaign), "campaign " + campaign);
+            assertEquals(3, engine.getAuditTail(3).size());
+            assertEquals(tail.get(tail.size() - 1).getSubjectId(),
+                    engine.getAuditTail(1).get(0).getSubjectId());
+        }
+    }
+}
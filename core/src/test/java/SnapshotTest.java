@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/** Read snapshots see exactly the mutations made before they opened. */
+class SnapshotTest {
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private addy engine(addy.SlotStoreKind store) {
+        return Fixtures.engine(Fixtures.options(clock).withSlotStore(store));
+    }
+
+    @ParameterizedTest
+    @EnumSource(addy.SlotStoreKind.class)
+    void ignoresMutationsAfterOpening(addy.SlotStoreKind store) {
+        try (addy engine = engine(store)) {
+            long campaign = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long[] slots = engine.allocateKeywordSlots(campaign, Fixtures.bids("snap-", 4));
+            engine.recordSpend(campaign, 100L);
+            try (addy.Snapshot snapshot = engine.snapshot()) {
+                long later = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+                engine.allocateKeywordSlots(later, Fixtures.bids("late-", 2));
+                engine.recordSpend(campaign, 50L);
+                engine.deactivateKeywordSlot(slots[0]);
+                engine.transitionCampaignPhase(campaign, addy.CampaignPhase.LIVE);
+
+                assertEquals(1, snapshot.getCampaignCount());
+                assertNull(snapshot.getCampaign(later));
+                addy.CampaignState state = snapshot.getCampaign(campaign);
+                assertEquals(100L, state.getTotalSpendNanos());
+                assertEquals(addy.CampaignPhase.DRAFT, state.getPhase());
+                assertEquals(4, state.getKeywordCount());
+                assertEquals(4, snapshot.getActiveSlotCount());
+                assertEquals(4, snapshot.getSlotsForCampaign(campaign).size());
+                assertTrue(snapshot.getKeywordSlot(slots[0]).isActive());
+                assertEquals(100L, snapshot.getTotalSpendNanos());
+
+                assertEquals(150L, engine.getCampaign(campaign).getTotalSpendNanos());
+                assertFalse(engine.getKeywordSlot(slots[0]).isActive());
+            }
+            try (addy.Snapshot snapshot = engine.snapshot()) {
+                assertEquals(2, snapshot.getCampaignCount());
+                assertEquals(5, snapshot.getActiveSlotCount());
+                assertEquals(addy.CampaignPhase.LIVE, snapshot.getCampaign(campaign).getPhase());
+            }
+        }
+    }
+
+    @Test
+    void rejectsReadsOnceClosed() {
+        try (addy engine = engine(addy.SlotStoreKind.RECORDS)) {
+            addy.Snapshot snapshot = engine.snapshot();
+            snapshot.close();
+            assertThrows(IllegalStateException.class, snapshot::getCampaignCount);
+        }
+    }
+
+    /** Spend always lands on two campaigns in equal amounts; every snapshot must see the pair agree. */
+    @Test
+    void totalsAddUpUnderConcurrentWriters() throws InterruptedException {
+        try (addy engine = engine(addy.SlotStoreKind.RECORDS)) {
+            long a = engine.createCampaign("owner", addy.ThrottleZone.ALPHA);
+            long b = engine.createCampaign("owner", addy.ThrottleZone.BETA);
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                while (!stop.get()) engine.recordSpendBatch(new long[] {a, b}, new long[] {3L, 3L});
+            });
+            writer.start();
+            try {
+                for (int i = 0; i < 2_000; i++) {
+                    try (addy.Snapshot snapshot = engine.snapshot()) {
+                        long spendA = snapshot.getCampaign(a).getTotalSpendNanos();
+                        long spendB = snapshot.getCampaign(b).getTotalSpendNanos();
+                        assertEquals(spendA + spendB, snapshot.getTotalSpendNanos());
+                        assertEquals(spendA, spendB);
+                    }
+                }
+            } finally {
+                stop.set(true);
+                writer.join();
+            }
+        }
+    }
+}
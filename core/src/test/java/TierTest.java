@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/** The bulk tier paths give the same answer as the per-bid ones for every element. */
+class TierTest {
+    private static final long[] BOUNDARIES = {1L, 20_000_000L, 100_000_000L, 400_000_000L, 1_500_000_000L,
+            10_000_000L, 50_000_000L, 200_000_000L, 800_000_000L, 2_000_000_000L, addy.MIN_CPC_NANOS};
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+
+    private static long[] edgeCases() {
+        List<Long> values = new ArrayList<>(List.of(0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE));
+        for (long b : BOUNDARIES) {
+            values.add(b - 1);
+            values.add(b);
+            values.add(b + 1);
+        }
+        long[] out = new long[values.size()];
+        for (int i = 0; i < out.length; i++) out[i] = values.get(i);
+        return out;
+    }
+
+    private static long[] random(long seed, int n) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] out = new long[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = switch (random.nextInt(3)) {
+                case 0 -> random.nextLong(-1_000L, 3_000_000_000L);
+                case 1 -> BOUNDARIES[random.nextInt(BOUNDARIES.length)] + random.nextInt(-2, 3);
+                default -> random.nextLong();
+            };
+        }
+        return out;
+    }
+
+    private static void assertClassifiesLikeTierFromCpc(long[] cpcs) {
+        byte[] tiers = new byte[cpcs.length];
+        addy.classifyTiers(cpcs, tiers);
+        for (int i = 0; i < cpcs.length; i++) {
+            assertEquals(addy.tierFromCpc(cpcs[i]).ordinal(), tiers[i], "cpc " + cpcs[i]);
+        }
+    }
+
+    private static void assertValidatesLikeIsCpcWithinTier(addy engine, long[] cpcs) {
+        int kinds = addy.BidTierKind.values().length;
+        byte[] tiers = new byte[cpcs.length * kinds];
+        long[] repeated = new long[tiers.length];
+        for (int i = 0; i < cpcs.length; i++) {
+            for (int t = 0; t < kinds; t++) {
+                repeated[i * kinds + t] = cpcs[i];
+                tiers[i * kinds + t] = (byte) t;
+            }
+        }
+        boolean[] ok = new boolean[repeated.length];
+        engine.validateBids(repeated, tiers, ok);
+        for (int i = 0; i < repeated.length; i++) {
+            assertEquals(engine.isCpcWithinTier(repeated[i], addy.BidTierKind.values()[tiers[i]]), ok[i],
+                    "cpc " + repeated[i] + " tier " + tiers[i]);
+        }
+    }
+
+    @Test
+    void classifiesBoundariesLikeTierFromCpc() {
+        assertClassifiesLikeTierFromCpc(edgeCases());
+        assertEquals(addy.BidTierKind.ZERO, addy.tierFromCpc(0L));
+        assertEquals(addy.BidTierKind.ZERO, addy.tierFromCpc(-5L));
+        assertEquals(addy.BidTierKind.LOW, addy.tierFromCpc(19_999_999L));
+        assertEquals(addy.BidTierKind.MID, addy.tierFromCpc(20_000_000L));
+        assertEquals(addy.BidTierKind.ULTRA, addy.tierFromCpc(Long.MAX_VALUE));
+    }
+
+    @Test
+    void classifiesRandomArraysLikeTierFromCpc() {
+        for (long seed = 0; seed < 8; seed++) assertClassifiesLikeTierFromCpc(random(seed, 10_000));
+    }
+
+    @Test
+    void validatesLikeIsCpcWithinTier() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            assertValidatesLikeIsCpcWithinTier(engine, edgeCases());
+            for (long seed = 0; seed < 4; seed++) assertValidatesLikeIsCpcWithinTier(engine, random(seed, 5_000));
+        }
+    }
+
+    @Test
+    void rejectsUnknownTierOrdinals() {
+        try (addy engine = Fixtures.engine(Fixtures.options(clock))) {
+            boolean[] out = new boolean[1];
+            assertThrows(IllegalArgumentException.class,
+                    () -> engine.validateBids(new long[] {Fixtures.CPC}, new byte[] {6}, out));
+            assertThrows(IllegalArgumentException.class,
+                    () -> engine.validateBids(new long[] {Fixtures.CPC}, new byte[] {-1}, out));
+        }
+    }
+}
@@ -3,27 +3,82 @@
  * Zonal throttle 0x52, cohort K7. Do not mirror to legacy ingest.
  */
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
 
 /**
  * addy — Ad word agent contract. Manages keyword slots, bid tiers, and campaign
  * cohorts with zonal throttling and cohort-specific caps. All authority and
  * config addresses are fixed at construction; no runtime derivation.
  */
-public final class addy {
+public final class addy implements AutoCloseable {
 
     // -------------------------------------------------------------------------
     // Constants (unique to this contract; not shared with other projects)
@@ -45,6 +100,24 @@ public final class addy {
     public static final int MAX_CAMPAIGN_KEYWORDS = 277;
     public static final long BID_COOLDOWN_MS = 33_847L;
     public static final int AUDIT_LOG_ENTRIES = 89;
+    private static final int AUDIT_RING_CAPACITY = 1024;
+    /** Most events a change feed puts in one {@code onNext} unless told otherwise. */
+    public static final int CHANGE_FEED_BATCH = 256;
+    private static final int PARALLEL_HASH_THRESHOLD = 64;
+    private static final Long CLAIMED = 0L;
+    /** Default pause between background compaction passes. */
+    public static final long COMPACTION_INTERVAL_MS = 100L;
+    /** Most dead slots one compaction pass reclaims. */
+    public static final int COMPACTION_BATCH = 1024;
+    /** Slots (or columnar rows) one aggregation task scans without splitting further. */
+    private static final int AGGREGATE_SLOT_GRAIN = 1 << 15;
+    private static final int AGGREGATE_CAMPAIGN_GRAIN = 1 << 12;
+
+    /**
+     * Instrumentation switch, read once at class load. With
+     * {@code -Daddy.metrics.disabled=true} every guarded call site folds away in the JIT.
+     */
+    public static final boolean METRICS_ENABLED = !Boolean.getBoolean("addy.metrics.disabled");
 
     // -------------------------------------------------------------------------
     // Enums (unique naming)
@@ -74,6 +147,52 @@ public final class addy {
         DELTA
     }
 
+    public enum MetricOp {
+        CAMPAIGN_CREATE,
+        PHASE_TRANSITION,
+        SLOT_ALLOC,
+        SLOT_BATCH,
+        SLOT_DEACT,
+        SPEND,
+        SPEND_BATCH,
+        KEYWORD_LOOKUP,
+        MATCH
+    }
+
+    public enum RejectReason {
+        THROTTLE_EXCEEDED,
+        CPC_BELOW_FLOOR,
+        ABOVE_TIER_CAP,
+        DUPLICATE_KEYWORD,
+        CAMPAIGN_CAP_REACHED,
+        GLOBAL_CAP_REACHED,
+        BID_COOLDOWN
+    }
+
+    public enum LatencyOp {
+        ALLOCATE_SLOT,
+        KEYWORD_HASH,
+        CREATE_CAMPAIGN,
+        RECORD_SPEND,
+        MATCH
+    }
+
+    /** Kinds of {@link ChangeEvent}, one per audited mutation. */
+    public enum ChangeKind {
+        CAMPAIGN_CREATE,
+        PHASE_CHANGE,
+        SLOT_ALLOC,
+        SLOT_DEACT,
+        SPEND,
+        SLOT_BATCH,
+        SPEND_BATCH
+    }
+
+    public enum SlotStoreKind {
+        RECORDS,
+        COLUMNAR
+    }
+
     // -------------------------------------------------------------------------
     // Immutable config (set once in constructor)
     // -------------------------------------------------------------------------
@@ -84,38 +203,117 @@ public final class addy {
     private final long genesisTimestamp;
     private final int maxKeywordsPerCampaign;
     private final long bidFloorNanos;
+    private final int keywordSlotCap;
+    /** Campaign and slot ids start just above this; see {@link Options#withIdBase}. */
+    private final long idBase;
+    /** Null for the system clock, read through {@link Ticker}. */
+    private final Clock clock;
+    private final long slotTtlMillis;
 
     // -------------------------------------------------------------------------
     // State
     // -------------------------------------------------------------------------
 
-    private final Map<Long, KeywordSlotRecord> keywordSlots = new ConcurrentHashMap<>();
+    private final SlotStore keywordSlots;
+    private final KeywordHashCache hashCache;
+    private final CampaignSlotIndex slotsByCampaign = new CampaignSlotIndex();
+    private final CampaignPhaseIndex campaignsByZonePhase = new CampaignPhaseIndex();
     private final Map<Long, CampaignRecord> campaigns = new ConcurrentHashMap<>();
-    private final Map<Integer, ThrottleState> throttleByZone = new ConcurrentHashMap<>();
+    private final ZoneThrottle throttle;
+    /** False for a shard, whose coordinator throttles campaign creation instead. */
+    private final boolean zoneThrottled;
+    private final TimerWheel timers;
+    /** Runs due timer tasks for a system-clock engine; null when another executor or the caller does. */
+    private final ExecutorService timerThread;
     private final Map<BidTierKind, Long> tierCaps = new ConcurrentHashMap<>();
-    private final List<AuditEntry> auditLog = Collections.synchronizedList(new ArrayList<>());
-    private final Set<String> registeredKeywordHashes = ConcurrentHashMap.newKeySet();
+    private final AuditRing auditLog;
+    private volatile AuditSpill auditSpill;
+    private final Set<FeedSubscription> feedSubscriptions = ConcurrentHashMap.newKeySet();
+    private ExecutorService feedExecutor;
+    private boolean feedClosed;
+    private final Persistence persistence;
+    private RecoveryStats recoveryStats = RecoveryStats.NONE;
+    /**
+     * Every registered keyword hash. The value is {@link #CLAIMED} while its allocation
+     * is in flight, the slot id once the slot is published, and the negated slot id
+     * after deactivation; the keyword stays registered either way.
+     */
+    private final Map<KeywordHashKey, Long> slotIdByHash = new ConcurrentHashMap<>();
     private final Map<Long, Long> lastBidTimeByCampaign = new ConcurrentHashMap<>();
+    private final AtomicInteger reservedSlotCount = new AtomicInteger();
     private final AtomicLong nextKeywordId = new AtomicLong(1L);
     private final AtomicLong nextCampaignId = new AtomicLong(1L);
-    private int totalBidsPlaced;
-    private int totalCampaignsActivated;
+    private final EpochGate epochs = new EpochGate();
+    private final EpochCounter totalBidsPlaced = new EpochCounter(0L);
+    private final EpochCounter totalCampaignsActivated = new EpochCounter(0L);
+    private final EpochCounter campaignCount = new EpochCounter(0L);
+    private final EpochCounter activeSlotCount = new EpochCounter(0L);
+    private final Metrics metrics = METRICS_ENABLED ? new Metrics() : null;
+    private final long compactionIntervalMillis;
+    /** Deactivated slots not yet reclaimed; {@link #deadSlotCount} sizes it without a walk. */
+    private final ConcurrentLinkedQueue<Long> deadSlots = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deadSlotCount = new AtomicInteger();
+    private final ReentrantLock compacting = new ReentrantLock();
+    // Compaction counters; written under compacting, read racily for stats.
+    private volatile long slotsReclaimed;
+    private volatile long slotsRecycled;
+    private volatile long compactionPasses;
+    private volatile long compactionNanos;
+    private volatile long maxCompactionNanos;
+    private volatile boolean closed;
 
     // -------------------------------------------------------------------------
     // Inner records (unique naming)
     // -------------------------------------------------------------------------
 
-    public static final class KeywordSlotRecord {
+    /**
+     * Read-only view of a keyword slot. {@link KeywordSlotRecord} is the object-per-slot
+     * form; the columnar store hands out flyweights that read its columns directly.
+     */
+    public interface KeywordSlotView {
+        long getSlotId();
+        String getKeywordHash();
+        KeywordHashKey getKeywordHashKey();
+        long getCampaignId();
+        BidTierKind getTier();
+        long getCpcNanos();
+        Instant getCreatedAt();
+        boolean isActive();
+    }
+
+    public static final class KeywordSlotRecord implements KeywordSlotView {
+        private static final VarHandle ACTIVE;
+
+        static {
+            try {
+                ACTIVE = MethodHandles.lookup().findVarHandle(KeywordSlotRecord.class, "active", boolean.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
         private final long slotId;
-        private final String keywordHash;
+        private final KeywordHashKey keywordHash;
         private final long campaignId;
         private final BidTierKind tier;
         private final long cpcNanos;
         private final Instant createdAt;
-        private boolean active;
+        private volatile boolean active;
+        private final long createdEpoch;
+        private volatile long deactivatedEpoch = Long.MAX_VALUE;
 
         public KeywordSlotRecord(long slotId, String keywordHash, long campaignId,
                                  BidTierKind tier, long cpcNanos, Instant createdAt, boolean active) {
+            this(slotId, KeywordHashKey.fromHex(keywordHash), campaignId, tier, cpcNanos, createdAt, active);
+        }
+
+        public KeywordSlotRecord(long slotId, KeywordHashKey keywordHash, long campaignId,
+                                 BidTierKind tier, long cpcNanos, Instant createdAt, boolean active) {
+            this(slotId, keywordHash, campaignId, tier, cpcNanos, createdAt, active, 0L);
+        }
+
+        KeywordSlotRecord(long slotId, KeywordHashKey keywordHash, long campaignId, BidTierKind tier,
+                          long cpcNanos, Instant createdAt, boolean active, long createdEpoch) {
             this.slotId = slotId;
             this.keywordHash = keywordHash;
             this.campaignId = campaignId;
@@ -123,47 +321,211 @@ public final class addy {
             this.cpcNanos = cpcNanos;
             this.createdAt = createdAt;
             this.active = active;
+            this.createdEpoch = createdEpoch;
         }
 
         public long getSlotId() { return slotId; }
-        public String getKeywordHash() { return keywordHash; }
+        public String getKeywordHash() { return keywordHash.toHex(); }
+        public KeywordHashKey getKeywordHashKey() { return keywordHash; }
         public long getCampaignId() { return campaignId; }
         public BidTierKind getTier() { return tier; }
         public long getCpcNanos() { return cpcNanos; }
         public Instant getCreatedAt() { return createdAt; }
         public boolean isActive() { return active; }
         public void setActive(boolean active) { this.active = active; }
+
+        boolean deactivate(long epoch) {
+            if (!ACTIVE.compareAndSet(this, true, false)) return false;
+            deactivatedEpoch = epoch;
+            return true;
+        }
+
+        long createdEpoch() {
+            return createdEpoch;
+        }
+
+        long deactivatedEpoch() {
+            return deactivatedEpoch;
+        }
     }
 
     public static final class CampaignRecord {
+        private static final VarHandle KEYWORD_COUNT;
+        private static final VarHandle PHASES;
+        private static final CampaignPhase[] PHASE_VALUES = CampaignPhase.values();
+        private static final int PHASE_BITS = 8;
+        private static final long PHASE_MASK = (1L << PHASE_BITS) - 1;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                KEYWORD_COUNT = lookup.findVarHandle(CampaignRecord.class, "keywordCount", int.class);
+                PHASES = lookup.findVarHandle(CampaignRecord.class, "phases", PhaseCell.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
         private final long campaignId;
         private final String ownerRef;
-        private final CampaignPhase phase;
+        /**
+         * Phase history, newest first. Each entry holds a state word (phase ordinal in
+         * the low byte, count of transitions applied above it) and the epoch that
+         * applied it; the head is the current state. Only ever replaced by
+         * compare-and-set, so racing transitions cannot both win.
+         */
+        private volatile PhaseCell phases;
         private final ThrottleZone zone;
         private final Instant createdAt;
-        private int keywordCount;
-        private long totalSpendNanos;
+        private final long createdEpoch;
+        private volatile int keywordCount;
+        /** Slots committed to the campaign; {@link #keywordCount} also counts reservations in flight. */
+        private final EpochCounter keywords;
+        /** Striped so concurrent spend never contends on one word; summed on read. */
+        private final EpochCounter spend;
 
         public CampaignRecord(long campaignId, String ownerRef, CampaignPhase phase,
                              ThrottleZone zone, Instant createdAt, int keywordCount, long totalSpendNanos) {
+            this(campaignId, ownerRef, phase, zone, createdAt, keywordCount, totalSpendNanos, 0L);
+        }
+
+        CampaignRecord(long campaignId, String ownerRef, CampaignPhase phase, ThrottleZone zone,
+                       Instant createdAt, int keywordCount, long totalSpendNanos, long createdEpoch) {
             this.campaignId = campaignId;
             this.ownerRef = ownerRef;
-            this.phase = phase;
+            this.phases = new PhaseCell(createdEpoch, phase.ordinal(), null);
             this.zone = zone;
             this.createdAt = createdAt;
+            this.createdEpoch = createdEpoch;
             this.keywordCount = keywordCount;
-            this.totalSpendNanos = totalSpendNanos;
+            this.keywords = new EpochCounter(keywordCount);
+            this.spend = new EpochCounter(totalSpendNanos);
         }
 
         public long getCampaignId() { return campaignId; }
         public String getOwnerRef() { return ownerRef; }
-        public CampaignPhase getPhase() { return phase; }
+        public CampaignPhase getPhase() { return phaseOf(phases.state); }
         public ThrottleZone getZone() { return zone; }
         public Instant getCreatedAt() { return createdAt; }
         public int getKeywordCount() { return keywordCount; }
-        public void setKeywordCount(int keywordCount) { this.keywordCount = keywordCount; }
-        public long getTotalSpendNanos() { return totalSpendNanos; }
-        public void setTotalSpendNanos(long totalSpendNanos) { this.totalSpendNanos = totalSpendNanos; }
+        public long getTotalSpendNanos() { return spend.sum(); }
+
+        /** Replaces the count; not atomic with respect to concurrent allocations. */
+        public void setKeywordCount(int keywordCount) {
+            this.keywordCount = keywordCount;
+            keywords.reset(keywordCount);
+        }
+
+        /** Replaces the total; not atomic with respect to concurrent spend. */
+        public void setTotalSpendNanos(long totalSpendNanos) {
+            spend.reset(totalSpendNanos);
+        }
+
+        void addSpend(EpochGate epochs, long epoch, long amountNanos) {
+            spend.add(epochs, epoch, amountNanos);
+        }
+
+        /** Counts slots committed ({@code n > 0}) or reclaimed ({@code n < 0}) in {@code epoch}. */
+        void addKeywords(EpochGate epochs, long epoch, int n) {
+            keywords.add(epochs, epoch, n);
+        }
+
+        boolean tryReserveKeywords(int n, int max) {
+            for (;;) {
+                int current = keywordCount;
+                if (current + n > max) return false;
+                if (KEYWORD_COUNT.compareAndSet(this, current, current + n)) return true;
+            }
+        }
+
+        void releaseKeywords(int n) {
+            KEYWORD_COUNT.getAndAdd(this, -n);
+        }
+
+        long createdEpoch() {
+            return createdEpoch;
+        }
+
+        PhaseCell phases() {
+            return phases;
+        }
+
+        long state() {
+            return phases.state;
+        }
+
+        /**
+         * Installs {@code next} on top of {@code expected}, stamped with {@code epoch},
+         * which must be no older than the epoch of {@code expected}. History no open
+         * snapshot can reach is trimmed on the way.
+         */
+        boolean casState(PhaseCell expected, long next, EpochGate epochs, long epoch) {
+            return PHASES.compareAndSet(this, expected, new PhaseCell(epoch, next, trim(expected, epochs.floor())));
+        }
+
+        /** The campaign as of {@code epoch}, which must not predate its creation. */
+        CampaignState stateAt(long epoch) {
+            return new CampaignState(campaignId, ownerRef, phaseOf(stateWordAt(epoch)), zone, createdAt,
+                    (int) keywords.sumAt(epoch), spend.sumAt(epoch));
+        }
+
+        long stateWordAt(long epoch) {
+            PhaseCell c = phases;
+            while (c.epoch > epoch && c.prev != null) c = c.prev;
+            return c.state;
+        }
+
+        long spendAt(long epoch) {
+            return spend.sumAt(epoch);
+        }
+
+        /** Keeps every entry above {@code floor} and the newest at or below it, which is all any reader can ask for. */
+        private static PhaseCell trim(PhaseCell c, long floor) {
+            if (c.epoch <= floor) return c.prev == null ? c : new PhaseCell(c.epoch, c.state, null);
+            if (c.prev == null) return c;
+            PhaseCell rest = trim(c.prev, floor);
+            return rest == c.prev ? c : new PhaseCell(c.epoch, c.state, rest);
+        }
+
+        static CampaignPhase phaseOf(long state) {
+            return PHASE_VALUES[(int) (state & PHASE_MASK)];
+        }
+
+        static long versionOf(long state) {
+            return state >>> PHASE_BITS;
+        }
+
+        static long packState(long version, CampaignPhase phase) {
+            return version << PHASE_BITS | phase.ordinal();
+        }
+
+        static final class PhaseCell {
+            final long epoch;
+            final long state;
+            final PhaseCell prev;
+
+            PhaseCell(long epoch, long state, PhaseCell prev) {
+                this.epoch = epoch;
+                this.state = state;
+                this.prev = prev;
+            }
+        }
+    }
+
+    public static final class KeywordBid {
+        private final String keyword;
+        private final BidTierKind tier;
+        private final long cpcNanos;
+
+        public KeywordBid(String keyword, BidTierKind tier, long cpcNanos) {
+            this.keyword = keyword;
+            this.tier = tier;
+            this.cpcNanos = cpcNanos;
+        }
+
+        public String getKeyword() { return keyword; }
+        public BidTierKind getTier() { return tier; }
+        public long getCpcNanos() { return cpcNanos; }
     }
 
     public static final class ThrottleState {
@@ -203,12 +565,297 @@ public final class addy {
         public String getDetail() { return detail; }
     }
 
+    /**
+     * 256-bit keyword hash as four big-endian words. Keys held by the registry are
+     * never mutated; the per-thread probe handed out by {@link KeywordHasher} is
+     * reused on every call and must be {@link #copy() copied} before it is stored.
+     */
+    public static final class KeywordHashKey {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private long h0;
+        private long h1;
+        private long h2;
+        private long h3;
+
+        KeywordHashKey() {
+        }
+
+        public KeywordHashKey(long h0, long h1, long h2, long h3) {
+            this.h0 = h0;
+            this.h1 = h1;
+            this.h2 = h2;
+            this.h3 = h3;
+        }
+
+        public static KeywordHashKey fromHex(String hex) {
+            if (hex == null || hex.length() != 64) {
+                throw new IllegalArgumentException("addy: keyword hash must be 64 hex chars");
+            }
+            try {
+                return new KeywordHashKey(Long.parseUnsignedLong(hex, 0, 16, 16),
+                        Long.parseUnsignedLong(hex, 16, 32, 16),
+                        Long.parseUnsignedLong(hex, 32, 48, 16),
+                        Long.parseUnsignedLong(hex, 48, 64, 16));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("addy: keyword hash must be 64 hex chars", e);
+            }
+        }
+
+        public long word(int index) {
+            return switch (index) {
+                case 0 -> h0;
+                case 1 -> h1;
+                case 2 -> h2;
+                case 3 -> h3;
+                default -> throw new IndexOutOfBoundsException(index);
+            };
+        }
+
+        public KeywordHashKey copy() {
+            return new KeywordHashKey(h0, h1, h2, h3);
+        }
+
+        public String toHex() {
+            char[] out = new char[64];
+            appendHex(out, 0, h0);
+            appendHex(out, 16, h1);
+            appendHex(out, 32, h2);
+            appendHex(out, 48, h3);
+            return new String(out);
+        }
+
+        private static void appendHex(char[] out, int at, long word) {
+            for (int i = 15; i >= 0; i--) {
+                out[at + i] = HEX[(int) word & 0xf];
+                word >>>= 4;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof KeywordHashKey)) return false;
+            KeywordHashKey k = (KeywordHashKey) o;
+            return h0 == k.h0 && h1 == k.h1 && h2 == k.h2 && h3 == k.h3;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) h0;
+        }
+
+        @Override
+        public String toString() {
+            return toHex();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Construction options (storage layout and sizing; fixed for the instance)
+    // -------------------------------------------------------------------------
+
+    public static final class Options {
+        public static final Options DEFAULTS = new Options();
+
+        private SlotStoreKind slotStore = SlotStoreKind.RECORDS;
+        private int keywordSlotCap = KEYWORD_SLOT_CAP;
+        private Path persistenceDir;
+        private boolean syncCommit = true;
+        private long snapshotIntervalMillis = 60_000L;
+        private int hashCacheCapacity = 8192;
+        private long idBase;
+        private int auditRingCapacity = AUDIT_RING_CAPACITY;
+        private Clock clock;
+        private long slotTtlMillis;
+        private long compactionIntervalMillis = COMPACTION_INTERVAL_MS;
+        private Executor timerExecutor;
+        private boolean zoneThrottled = true;
+
+        private Options() {
+        }
+
+        private Options copy() {
+            Options o = new Options();
+            o.slotStore = slotStore;
+            o.keywordSlotCap = keywordSlotCap;
+            o.persistenceDir = persistenceDir;
+            o.syncCommit = syncCommit;
+            o.snapshotIntervalMillis = snapshotIntervalMillis;
+            o.hashCacheCapacity = hashCacheCapacity;
+            o.idBase = idBase;
+            o.auditRingCapacity = auditRingCapacity;
+            o.clock = clock;
+            o.slotTtlMillis = slotTtlMillis;
+            o.compactionIntervalMillis = compactionIntervalMillis;
+            o.timerExecutor = timerExecutor;
+            o.zoneThrottled = zoneThrottled;
+            return o;
+        }
+
+        public Options withSlotStore(SlotStoreKind slotStore) {
+            if (slotStore == null) {
+                throw new IllegalArgumentException("addy: slot store kind required");
+            }
+            Options o = copy();
+            o.slotStore = slotStore;
+            return o;
+        }
+
+        /** Global slot cap; defaults to {@link #KEYWORD_SLOT_CAP}. */
+        public Options withKeywordSlotCap(int keywordSlotCap) {
+            if (keywordSlotCap <= 0) {
+                throw new IllegalArgumentException("addy: keyword slot cap must be positive");
+            }
+            Options o = copy();
+            o.keywordSlotCap = keywordSlotCap;
+            return o;
+        }
+
+        /**
+         * Keeps a write-ahead log and periodic snapshots in {@code dir}; state found
+         * there is recovered at construction.
+         */
+        public Options withPersistence(Path dir) {
+            Options o = copy();
+            o.persistenceDir = dir;
+            return o;
+        }
+
+        /** When true (the default) mutations return only once their log group is forced to disk. */
+        public Options withSyncCommit(boolean syncCommit) {
+            Options o = copy();
+            o.syncCommit = syncCommit;
+            return o;
+        }
+
+        /** Interval between automatic snapshots; zero leaves snapshots to {@link addy#checkpoint()}. */
+        public Options withSnapshotIntervalMillis(long snapshotIntervalMillis) {
+            if (snapshotIntervalMillis < 0) {
+                throw new IllegalArgumentException("addy: snapshot interval must not be negative");
+            }
+            Options o = copy();
+            o.snapshotIntervalMillis = snapshotIntervalMillis;
+            return o;
+        }
+
+        /** Entries kept by the keyword hash cache; zero turns the cache off. */
+        public Options withHashCacheCapacity(int hashCacheCapacity) {
+            if (hashCacheCapacity < 0) {
+                throw new IllegalArgumentException("addy: hash cache capacity must not be negative");
+            }
+            Options o = copy();
+            o.hashCacheCapacity = hashCacheCapacity;
+            return o;
+        }
+
+        /**
+         * Audit records kept in memory, a power of two. Bounds how far a change feed
+         * subscriber may fall behind before it loses events.
+         */
+        public Options withAuditRingCapacity(int auditRingCapacity) {
+            if (auditRingCapacity <= 0 || Integer.bitCount(auditRingCapacity) != 1) {
+                throw new IllegalArgumentException("addy: audit ring capacity must be a power of two");
+            }
+            Options o = copy();
+            o.auditRingCapacity = auditRingCapacity;
+            return o;
+        }
+
+        /**
+         * Runs the engine on {@code clock} instead of the system clock. Timers then fire
+         * only from {@link addy#advanceTimers()}, which makes time-based behaviour
+         * deterministic under test.
+         */
+        public Options withClock(Clock clock) {
+            if (clock == null) {
+                throw new IllegalArgumentException("addy: clock required");
+            }
+            Options o = copy();
+            o.clock = clock;
+            return o;
+        }
+
+        /** Deactivates every slot this long after its creation; zero (the default) keeps slots forever. */
+        public Options withSlotTtlMillis(long slotTtlMillis) {
+            if (slotTtlMillis < 0) {
+                throw new IllegalArgumentException("addy: slot ttl must not be negative");
+            }
+            Options o = copy();
+            o.slotTtlMillis = slotTtlMillis;
+            return o;
+        }
+
+        /**
+         * Pause between background compaction passes; zero leaves compaction to
+         * {@link addy#compactSlots()}. Defaults to {@link #COMPACTION_INTERVAL_MS}.
+         */
+        public Options withCompactionIntervalMillis(long compactionIntervalMillis) {
+            if (compactionIntervalMillis < 0) {
+                throw new IllegalArgumentException("addy: compaction interval must not be negative");
+            }
+            Options o = copy();
+            o.compactionIntervalMillis = compactionIntervalMillis;
+            return o;
+        }
+
+        /**
+         * Campaign and slot ids start at {@code idBase + 1}. Lets the shards of a
+         * {@link ShardedEngine} hand out disjoint ids without translation.
+         */
+        Options withIdBase(long idBase) {
+            Options o = copy();
+            o.idBase = idBase;
+            return o;
+        }
+
+        /**
+         * Where due timer tasks run, in place of the engine's own {@code addy-timers}
+         * thread. Lets a {@link ShardedEngine} run each shard's timers on its writer.
+         */
+        Options withTimerExecutor(Executor timerExecutor) {
+            Options o = copy();
+            o.timerExecutor = timerExecutor;
+            return o;
+        }
+
+        /**
+         * Creates campaigns without taking a zone throttle permit. For {@link ShardedEngine}
+         * shards, whose coordinator has already taken the one permit the creation costs.
+         */
+        Options withoutZoneThrottle() {
+            Options o = copy();
+            o.zoneThrottled = false;
+            return o;
+        }
+
+        public SlotStoreKind getSlotStore() { return slotStore; }
+        public int getKeywordSlotCap() { return keywordSlotCap; }
+        public Path getPersistenceDir() { return persistenceDir; }
+        public boolean isSyncCommit() { return syncCommit; }
+        public long getSnapshotIntervalMillis() { return snapshotIntervalMillis; }
+        public int getHashCacheCapacity() { return hashCacheCapacity; }
+        public int getAuditRingCapacity() { return auditRingCapacity; }
+        public Clock getClock() { return clock; }
+        public long getSlotTtlMillis() { return slotTtlMillis; }
+        public long getCompactionIntervalMillis() { return compactionIntervalMillis; }
+    }
+
     // -------------------------------------------------------------------------
     // Constructor — authority addresses and caps passed in; no derivation
     // -------------------------------------------------------------------------
 
     public addy(String oracleAddress, String controllerAddress, String treasuryAddress,
                 int maxKeywordsPerCampaign, long bidFloorNanos) {
+        this(oracleAddress, controllerAddress, treasuryAddress, maxKeywordsPerCampaign, bidFloorNanos,
+                Options.DEFAULTS);
+    }
+
+    public addy(String oracleAddress, String controllerAddress, String treasuryAddress,
+                int maxKeywordsPerCampaign, long bidFloorNanos, Options options) {
+        if (options == null) {
+            throw new IllegalArgumentException("addy: options required");
+        }
         if (oracleAddress == null || oracleAddress.length() < 10) {
             throw new IllegalArgumentException("addy: invalid oracle address");
         }
@@ -227,11 +874,39 @@ public final class addy {
         this.oracleAddress = oracleAddress;
         this.controllerAddress = controllerAddress;
         this.treasuryAddress = treasuryAddress;
-        this.genesisTimestamp = System.currentTimeMillis();
+        this.clock = options.getClock();
+        this.slotTtlMillis = options.getSlotTtlMillis();
+        this.compactionIntervalMillis = options.getCompactionIntervalMillis();
+        this.genesisTimestamp = clock == null ? System.currentTimeMillis() : clock.millis();
+        this.timerThread = clock == null && options.timerExecutor == null ? newTimerThread() : null;
+        this.timers = new TimerWheel(genesisTimestamp, timerThread != null ? timerThread : options.timerExecutor);
         this.maxKeywordsPerCampaign = maxKeywordsPerCampaign;
         this.bidFloorNanos = bidFloorNanos;
-        initThrottleZones();
+        this.keywordSlotCap = options.getKeywordSlotCap();
+        this.idBase = options.idBase;
+        this.keywordSlots = options.getSlotStore() == SlotStoreKind.COLUMNAR
+                ? new ColumnarSlotStore(keywordSlotCap, idBase)
+                : new RecordSlotStore();
+        this.hashCache = options.getHashCacheCapacity() == 0 ? null
+                : new KeywordHashCache(options.getHashCacheCapacity());
+        this.throttle = new ZoneThrottle(genesisTimestamp, THROTTLE_WINDOW_MS, COHORT_BATCH_SIZE);
+        this.zoneThrottled = options.zoneThrottled;
+        this.auditLog = new AuditRing(options.getAuditRingCapacity());
         initTierCaps();
+        nextCampaignId.set(idBase + 1);
+        nextKeywordId.set(idBase + 1);
+        this.persistence = options.getPersistenceDir() == null ? null : openPersistence(options);
+        if (persistence != null) {
+            keywordSlots.forEach((slotId, hash, campaignId, tier, cpcNanos, createdAtMillis, active) -> {
+                if (!active) {
+                    enqueueDead(slotId);
+                } else if (slotTtlMillis > 0) {
+                    scheduleExpiry(slotId, 1, createdAtMillis);
+                }
+            });
+        }
+        if (compactionIntervalMillis > 0) scheduleCompaction(genesisTimestamp + compactionIntervalMillis);
+        if (clock == null) Ticker.register(timers);
     }
 
     /**
@@ -242,19 +917,8 @@ public final class addy {
         this(ORACLE_HEX, CONTROLLER_HEX, TREASURY_HEX, 127, 1_847_293_651L);
     }
 
-    private void initThrottleZones() {
-        for (ThrottleZone z : ThrottleZone.values()) {
-            throttleByZone.put(z.ordinal(), new ThrottleState(z, 0L, 0));
-        }
-    }
-
     private void initTierCaps() {
-        tierCaps.put(BidTierKind.ZERO, 0L);
-        tierCaps.put(BidTierKind.LOW, 10_000_000L);
-        tierCaps.put(BidTierKind.MID, 50_000_000L);
-        tierCaps.put(BidTierKind.HIGH, 200_000_000L);
-        tierCaps.put(BidTierKind.PREMIUM, 800_000_000L);
-        tierCaps.put(BidTierKind.ULTRA, 2_000_000_000L);
+        for (BidTierKind tier : TIERS) tierCaps.put(tier, TIER_CAPS[tier.ordinal()]);
     }
 
     // -------------------------------------------------------------------------
@@ -267,173 +931,5816 @@ public final class addy {
     public long getGenesisTimestamp() { return genesisTimestamp; }
     public int getMaxKeywordsPerCampaign() { return maxKeywordsPerCampaign; }
     public long getBidFloorNanos() { return bidFloorNanos; }
+    public int getKeywordSlotCap() { return keywordSlotCap; }
 
     // -------------------------------------------------------------------------
     // Keyword hash (deterministic; no external input beyond keyword text)
     // -------------------------------------------------------------------------
 
     public static String keywordHash(String keyword) {
+        return probeKeywordHash(keyword).toHex();
+    }
+
+    public static KeywordHashKey keywordHashKey(String keyword) {
+        return probeKeywordHash(keyword).copy();
+    }
+
+    /** Hashes into the calling thread's reusable probe; copy before it escapes. */
+    private static KeywordHashKey probeKeywordHash(String keyword) {
         if (keyword == null || keyword.isBlank()) {
             throw new IllegalArgumentException("addy: keyword blank");
         }
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] input = (DOMAIN_BINDING + ":" + keyword.trim()).getBytes(StandardCharsets.UTF_8);
-            byte[] digest = md.digest(input);
-            StringBuilder sb = new StringBuilder(64);
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b & 0xff));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("addy: SHA-256 unavailable", e);
-        }
+        return KeywordHasher.LOCAL.get().hash(keyword);
     }
 
-    // -------------------------------------------------------------------------
-    // Throttle check (zone-based rate limit)
-    // -------------------------------------------------------------------------
+    /**
+     * Hash for the instance paths: served from the cache when there is one, otherwise
+     * the calling thread's probe. Either way the result is read-only and must be
+     * copied before it is stored.
+     */
+    private KeywordHashKey timedProbeKeywordHash(String keyword) {
+        if (!METRICS_ENABLED) return lookupKeywordHash(keyword);
+        long start = System.nanoTime();
+        KeywordHashKey probe = lookupKeywordHash(keyword);
+        metrics.record(LatencyOp.KEYWORD_HASH, System.nanoTime() - start);
+        return probe;
+    }
 
-    public boolean canPerformInZone(ThrottleZone zone) {
-        ThrottleState state = throttleByZone.get(zone.ordinal());
-        if (state == null) return false;
-        long now = System.currentTimeMillis();
-        if (now - state.getLastActionAt() >= THROTTLE_WINDOW_MS) {
-            return true;
+    private KeywordHashKey lookupKeywordHash(String keyword) {
+        KeywordHashCache cache = hashCache;
+        if (cache == null) return probeKeywordHash(keyword);
+        if (keyword == null || keyword.isBlank()) {
+            throw new IllegalArgumentException("addy: keyword blank");
         }
-        return state.getActionsInWindow() < COHORT_BATCH_SIZE;
+        return cache.get(keyword.trim());
     }
 
-    private void consumeThrottle(ThrottleZone zone) {
-        ThrottleState state = throttleByZone.get(zone.ordinal());
-        if (state == null) return;
-        long now = System.currentTimeMillis();
-        if (now - state.getLastActionAt() >= THROTTLE_WINDOW_MS) {
-            state.setActionsInWindow(0);
-            state.setLastActionAt(now);
-        }
-        state.setActionsInWindow(state.getActionsInWindow() + 1);
+    public HashCacheStats getHashCacheStats() {
+        KeywordHashCache cache = hashCache;
+        return cache == null ? HashCacheStats.DISABLED : cache.stats();
     }
 
-    // -------------------------------------------------------------------------
-    // Campaign lifecycle
-    // -------------------------------------------------------------------------
+    public static final class HashCacheStats {
+        static final HashCacheStats DISABLED = new HashCacheStats(0, 0L, 0L, 0L, 0L);
 
-    public long createCampaign(String ownerRef, ThrottleZone zone) {
-        if (ownerRef == null || ownerRef.isBlank()) {
-            throw new IllegalArgumentException("addy: owner ref blank");
+        private final int capacity;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long rejections;
+
+        HashCacheStats(int capacity, long hits, long misses, long evictions, long rejections) {
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.rejections = rejections;
         }
-        if (!canPerformInZone(zone)) {
-            throw new IllegalStateException("addy: throttle limit exceeded for zone " + zone);
+
+        public int getCapacity() { return capacity; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        /** Entries displaced by a more frequent newcomer. */
+        public long getEvictions() { return evictions; }
+        /** Misses left uncached because the newcomer was rarer than everything in its bucket. */
+        public long getRejections() { return rejections; }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
         }
-        long id = nextCampaignId.getAndIncrement();
-        CampaignRecord rec = new CampaignRecord(id, ownerRef, CampaignPhase.DRAFT, zone,
-                Instant.now(), 0, 0L);
-        campaigns.put(id, rec);
-        consumeThrottle(zone);
-        appendAudit("CAMPAIGN_CREATE", id, "owner=" + ownerRef + ",zone=" + zone);
-        return id;
     }
 
-    public void transitionCampaignPhase(long campaignId, CampaignPhase toPhase) {
-        CampaignRecord rec = campaigns.get(campaignId);
-        if (rec == null) {
-            throw new IllegalArgumentException("addy: campaign not found " + campaignId);
+    /**
+     * Bounded keyword-to-hash cache with TinyLFU admission. Entries live in a
+     * set-associative table of {@code WAYS}-entry buckets keyed by the trimmed keyword;
+     * a lookup reads at most one bucket and never locks. A count-min sketch of 4-bit
+     * counters estimates how often each keyword has been asked for lately; a keyword's
+     * four counters share one long, one in each quarter, so recording an access is a
+     * single read and at most one CAS. On a miss the newcomer takes a free way if there
+     * is one, and otherwise replaces the bucket's least frequent entry only if it is
+     * itself more frequent, so a burst of one-off keywords cannot flush the hot set. A
+     * rejected newcomer is never copied out of the hashing probe. Counters halve every
+     * {@code 10 * capacity} increments so that frequencies follow current traffic.
+     */
+    static final class KeywordHashCache {
+        static final int WAY_BITS = 2;
+        static final int WAYS = 1 << WAY_BITS;
+        private static final long HALVE_MASK = 0x7777_7777_7777_7777L;
+
+        private final AtomicReferenceArray<Entry> table;
+        private final int bucketMask;
+        private final AtomicLongArray sketch;
+        private final int sketchShift;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder rejections = new LongAdder();
+
+        KeywordHashCache(int capacity) {
+            int slots = Math.max(WAYS, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+            this.table = new AtomicReferenceArray<>(slots);
+            this.bucketMask = (slots >>> WAY_BITS) - 1;
+            this.sketch = new AtomicLongArray(slots);
+            this.sketchShift = Integer.numberOfLeadingZeros(slots) + 1;
+            this.sampleSize = 10 * slots;
         }
-        CampaignPhase from = rec.getPhase();
-        if (from == CampaignPhase.ARCHIVED) {
-            throw new IllegalStateException("addy: cannot transition archived campaign");
+
+        /** {@code text} must already be trimmed. */
+        KeywordHashKey get(String text) {
+            int h = spread(text.hashCode());
+            int base = (h & bucketMask) << WAY_BITS;
+            for (int w = 0; w < WAYS; w++) {
+                Entry e = table.get(base + w);
+                if (e != null && e.spread == h && e.text.equals(text)) {
+                    hits.increment();
+                    recordAccess(h);
+                    return e.key;
+                }
+            }
+            misses.increment();
+            recordAccess(h);
+            KeywordHashKey probe = probeKeywordHash(text);
+            return admit(base, text, h, probe);
         }
-        if (toPhase == CampaignPhase.LIVE) {
-            totalCampaignsActivated++;
+
+        /** Returns the cached copy when the newcomer is admitted, else the probe itself. */
+        private KeywordHashKey admit(int base, String text, int h, KeywordHashKey probe) {
+            int free = -1;
+            Entry victim = null;
+            int victimFreq = Integer.MAX_VALUE;
+            for (int w = 0; w < WAYS; w++) {
+                Entry e = table.get(base + w);
+                if (e == null) {
+                    free = base + w;
+                    break;
+                }
+                int freq = frequency(e.spread);
+                if (freq < victimFreq) {
+                    victim = e;
+                    victimFreq = freq;
+                }
+            }
+            if (free < 0 && frequency(h) <= victimFreq) {
+                rejections.increment();
+                return probe;
+            }
+            Entry fresh = new Entry(text, h, probe.copy());
+            if (free >= 0) {
+                table.compareAndSet(free, null, fresh);
+            } else {
+                for (int w = 0; w < WAYS; w++) {
+                    if (table.compareAndSet(base + w, victim, fresh)) {
+                        evictions.increment();
+                        break;
+                    }
+                }
+            }
+            return fresh.key;
         }
-        appendAudit("CAMPAIGN_PHASE", campaignId, from + "->" + toPhase);
-    }
 
-    // -------------------------------------------------------------------------
-    // Keyword slot allocation
-    // -------------------------------------------------------------------------
+        private void recordAccess(int h) {
+            int slot = sketchSlot(h);
+            for (;;) {
+                long v = sketch.get(slot);
+                long next = v;
+                for (int row = 0; row < 4; row++) {
+                    int shift = nibble(h, row);
+                    if (((v >>> shift) & 15) != 15) next += 1L << shift;
+                }
+                if (next == v) return;
+                if (sketch.compareAndSet(slot, v, next)) break;
+            }
+            if (additions.incrementAndGet() >= sampleSize) reset();
+        }
 
-    public long allocateKeywordSlot(String keyword, long campaignId, BidTierKind tier, long cpcNanos) {
-        if (keyword == null || keyword.isBlank()) {
-            throw new IllegalArgumentException("addy: keyword blank");
+        private int frequency(int h) {
+            long v = sketch.get(sketchSlot(h));
+            int min = 15;
+            for (int row = 0; row < 4; row++) min = Math.min(min, (int) (v >>> nibble(h, row)) & 15);
+            return min;
         }
-        CampaignRecord camp = campaigns.get(campaignId);
-        if (camp == null) {
-            throw new IllegalArgumentException("addy: campaign not found " + campaignId);
+
+        /**
+         * The top log2(slots) bits of a Fibonacci hash, which are its best mixed; masking
+         * bits 16 and up instead left only 16 bits and capped the sketch at 65536 slots.
+         */
+        private int sketchSlot(int h) {
+            return (h * 0x9E3779B9) >>> sketchShift;
         }
-        if (camp.getKeywordCount() >= maxKeywordsPerCampaign) {
-            throw new IllegalStateException("addy: campaign keyword cap reached");
+
+        /** Bit offset of row {@code row}'s counter: one of the four nibbles in that row's quarter. */
+        private static int nibble(int h, int row) {
+            return ((row << 2) + ((h >>> (row << 3)) & 3)) << 2;
         }
-        if (keywordSlots.size() >= KEYWORD_SLOT_CAP) {
-            throw new IllegalStateException("addy: global slot cap reached");
+
+        private void reset() {
+            if (additions.getAndSet(0) < sampleSize) return;
+            for (int i = 0; i < sketch.length(); i++) {
+                long v;
+                do {
+                    v = sketch.get(i);
+                } while (!sketch.compareAndSet(i, v, (v >>> 1) & HALVE_MASK));
+            }
         }
-        if (cpcNanos < bidFloorNanos) {
-            throw new IllegalArgumentException("addy: cpc below floor");
+
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x45D9F3B;
+            return h ^ (h >>> 16);
         }
-        Long tierCap = tierCaps.get(tier);
-        if (tierCap != null && cpcNanos > tierCap) {
-            throw new IllegalArgumentException("addy: cpc above tier cap");
-        }
-        String hash = keywordHash(keyword);
-        if (registeredKeywordHashes.contains(hash)) {
-            throw new IllegalStateException("addy: keyword already registered");
-        }
-        long slotId = nextKeywordId.getAndIncrement();
-        KeywordSlotRecord slot = new KeywordSlotRecord(slotId, hash, campaignId, tier, cpcNanos,
-                Instant.now(), true);
-        keywordSlots.put(slotId, slot);
-        registeredKeywordHashes.add(hash);
-        camp.setKeywordCount(camp.getKeywordCount() + 1);
-        totalBidsPlaced++;
-        appendAudit("SLOT_ALLOC", slotId, "camp=" + campaignId + ",tier=" + tier);
-        return slotId;
-    }
 
-    public void deactivateKeywordSlot(long slotId) {
-        KeywordSlotRecord slot = keywordSlots.get(slotId);
-        if (slot == null) {
-            throw new IllegalArgumentException("addy: slot not found " + slotId);
+        HashCacheStats stats() {
+            return new HashCacheStats(table.length(), hits.sum(), misses.sum(), evictions.sum(), rejections.sum());
         }
-        slot.setActive(false);
-        appendAudit("SLOT_DEACT", slotId, "");
-    }
 
-    // -------------------------------------------------------------------------
-    // Spend recording (simulated; real EVM would move funds)
-    // -------------------------------------------------------------------------
+        static final class Entry {
+            final String text;
+            final int spread;
+            final KeywordHashKey key;
 
-    public void recordSpend(long campaignId, long amountNanos) {
-        if (amountNanos <= 0) {
-            throw new IllegalArgumentException("addy: spend amount must be positive");
+            Entry(String text, int spread, KeywordHashKey key) {
+                this.text = text;
+                this.spread = spread;
+                this.key = key;
+            }
         }
-        CampaignRecord camp = campaigns.get(campaignId);
-        if (camp == null) {
+    }
+
+    /**
+     * Per-thread SHA-256 over {@code DOMAIN_BINDING + ":" + keyword.trim()}. The digest,
+     * the UTF-8 input buffer and the result probe are reused, so hashing a keyword
+     * allocates nothing once the buffer has grown to the longest keyword seen.
+     * Encoding matches {@code String.getBytes(UTF_8)}, including '?' for lone surrogates.
+     */
+    static final class KeywordHasher {
+        static final ThreadLocal<KeywordHasher> LOCAL = ThreadLocal.withInitial(KeywordHasher::new);
+        private static final byte[] PREFIX = (DOMAIN_BINDING + ":").getBytes(StandardCharsets.UTF_8);
+        private static final VarHandle LONGS =
+                MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+        private final MessageDigest md;
+        private final byte[] digest = new byte[32];
+        private final KeywordHashKey probe = new KeywordHashKey();
+        private byte[] input = new byte[256];
+
+        private KeywordHasher() {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("addy: SHA-256 unavailable", e);
+            }
+            System.arraycopy(PREFIX, 0, input, 0, PREFIX.length);
+        }
+
+        KeywordHashKey hash(String keyword) {
+            int start = 0;
+            int end = keyword.length();
+            while (start < end && keyword.charAt(start) <= ' ') start++;
+            while (end > start && keyword.charAt(end - 1) <= ' ') end--;
+            int len = encode(keyword, start, end);
+            md.update(input, 0, len);
+            try {
+                md.digest(digest, 0, digest.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException("addy: SHA-256 digest failed", e);
+            }
+            probe.h0 = (long) LONGS.get(digest, 0);
+            probe.h1 = (long) LONGS.get(digest, 8);
+            probe.h2 = (long) LONGS.get(digest, 16);
+            probe.h3 = (long) LONGS.get(digest, 24);
+            return probe;
+        }
+
+        private int encode(String s, int start, int end) {
+            int need = PREFIX.length + (end - start) * 3;
+            if (need > input.length) {
+                byte[] grown = new byte[Math.max(need, input.length * 2)];
+                System.arraycopy(PREFIX, 0, grown, 0, PREFIX.length);
+                input = grown;
+            }
+            byte[] b = input;
+            int n = PREFIX.length;
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    b[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[n++] = (byte) (0xc0 | (c >> 6));
+                    b[n++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < end
+                            && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        b[n++] = (byte) (0xf0 | (cp >> 18));
+                        b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        b[n++] = (byte) (0x80 | (cp & 0x3f));
+                    } else {
+                        b[n++] = (byte) '?';
+                    }
+                } else {
+                    b[n++] = (byte) (0xe0 | (c >> 12));
+                    b[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    b[n++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return n;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Throttle check (zone-based rate limit)
+    // -------------------------------------------------------------------------
+
+    public boolean canPerformInZone(ThrottleZone zone) {
+        return throttle.available(zone, now()) > 0;
+    }
+
+    /**
+     * Atomically takes {@code permits} admissions from the zone's sliding window.
+     * Either all permits are granted or none are.
+     */
+    public boolean tryAcquireInZone(ThrottleZone zone, int permits) {
+        return throttle.tryAcquire(zone, permits, now());
+    }
+
+    public ThrottleState getThrottleState(ThrottleZone zone) {
+        return throttle.state(zone, now());
+    }
+
+    /**
+     * Lock-free sliding-window limiter, one window per zone. A window remembers the
+     * timestamps of its last {@code capacity} admissions in a ring; a permit is granted
+     * when the admission it would displace has aged out of the window. Each cell also
+     * carries the lap of the admission it holds, so a cell whose writer has claimed it
+     * but not yet stored it reads as busy rather than as expired.
+     *
+     * <p>Callers read the clock before they get here, so a slow caller can arrive with
+     * an older time than one that has already been admitted. Each admission is
+     * therefore stamped with the latest time any caller has brought, published before
+     * its claim. Stamps never decrease along the ring, and checking only the displaced
+     * cell is enough: every admission before it is at least as old.
+     */
+    static final class ZoneThrottle {
+        private static final int LAP_SHIFT = 40;
+        private static final long TIME_MASK = (1L << LAP_SHIFT) - 1;
+        private static final long LAP_MASK = (1L << (Long.SIZE - LAP_SHIFT)) - 1;
+
+        private final long epochMillis;
+        private final long windowMillis;
+        private final int capacity;
+        private final Window[] windows;
+
+        ZoneThrottle(long epochMillis, long windowMillis, int capacity) {
+            this.epochMillis = epochMillis;
+            this.windowMillis = windowMillis;
+            this.capacity = capacity;
+            this.windows = new Window[ThrottleZone.values().length];
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = new Window(capacity);
+            }
+        }
+
+        boolean tryAcquire(ThrottleZone zone, int permits, long nowMillis) {
+            if (permits <= 0) {
+                throw new IllegalArgumentException("addy: permits must be positive");
+            }
+            if (permits > capacity) return false;
+            Window w = windows[zone.ordinal()];
+            long now = relative(nowMillis);
+            for (;;) {
+                long head = w.admitted.get();
+                // Read after head: every claim up to head published its stamp first.
+                now = w.advance(now);
+                long displaced = head + permits - 1 - capacity;
+                if (displaced >= 0) {
+                    long cell = w.cells.get(index(displaced));
+                    if ((cell >>> LAP_SHIFT) != lap(displaced)) {
+                        if (w.admitted.get() != head) continue;
+                        return false;
+                    }
+                    if (now - (cell & TIME_MASK) < windowMillis) return false;
+                }
+                if (w.admitted.compareAndSet(head, head + permits)) {
+                    for (long n = head; n < head + permits; n++) {
+                        w.cells.set(index(n), (lap(n) << LAP_SHIFT) | now);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        int available(ThrottleZone zone, long nowMillis) {
+            return capacity - inWindow(windows[zone.ordinal()], relative(nowMillis));
+        }
+
+        ThrottleState state(ThrottleZone zone, long nowMillis) {
+            Window w = windows[zone.ordinal()];
+            long head = w.admitted.get();
+            long last = 0L;
+            if (head > 0) {
+                long cell = w.cells.get(index(head - 1));
+                if ((cell >>> LAP_SHIFT) == lap(head - 1)) last = epochMillis + (cell & TIME_MASK);
+            }
+            return new ThrottleState(zone, last, inWindow(w, relative(nowMillis)));
+        }
+
+        private int inWindow(Window w, long now) {
+            long head = w.admitted.get();
+            int n = 0;
+            for (long seq = head - 1; seq >= 0 && seq >= head - capacity; seq--) {
+                long cell = w.cells.get(index(seq));
+                if ((cell >>> LAP_SHIFT) == lap(seq) && now - (cell & TIME_MASK) >= windowMillis) break;
+                n++;
+            }
+            return n;
+        }
+
+        private int index(long seq) {
+            return (int) (seq % capacity);
+        }
+
+        /** Lap tag stored in a cell; offset by one so an untouched cell never matches. */
+        private long lap(long seq) {
+            return ((seq / capacity) + 1) & LAP_MASK;
+        }
+
+        private long relative(long nowMillis) {
+            return Math.max(0L, nowMillis - epochMillis) & TIME_MASK;
+        }
+
+        private static final class Window {
+            final AtomicLong admitted = new AtomicLong();
+            final AtomicLongArray cells;
+            /** Latest relative time any acquire has brought. */
+            final AtomicLong latest = new AtomicLong();
+
+            Window(int capacity) {
+                this.cells = new AtomicLongArray(capacity);
+            }
+
+            /** Raises {@link #latest} to {@code now} if it is behind and returns the result. */
+            long advance(long now) {
+                for (;;) {
+                    long seen = latest.get();
+                    if (seen >= now || latest.compareAndSet(seen, now)) return Math.max(seen, now);
+                }
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Timers (engine clock, hierarchical timing wheel, slot expiry)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Engine time in epoch millis. Under the system clock this is a field the shared
+     * {@link Ticker} refreshes every millisecond, so hot paths never call the OS
+     * clock; an injected clock is read directly.
+     */
+    long now() {
+        return clock == null ? Ticker.millis() : clock.millis();
+    }
+
+    /**
+     * Fires every timer that is due by the engine clock. The shared ticker does this
+     * each millisecond under the system clock, handing the due tasks to the engine's
+     * {@code addy-timers} thread; with {@link Options#withClock} it is left to the
+     * caller and the tasks run on the calling thread, so a test can move its clock,
+     * call this and then check the outcome.
+     */
+    public void advanceTimers() {
+        timers.advanceTo(now());
+    }
+
+    public int getPendingTimerCount() {
+        return timers.size();
+    }
+
+    /** Deactivates whichever of slots {@code first .. first+n-1} are still active once their TTL is up. */
+    private void expireSlots(long first, int n) {
+        for (long slotId = first; slotId < first + n && !closed; slotId++) {
+            KeywordSlotView slot = keywordSlots.get(slotId);
+            if (slot != null && slot.isActive()) deactivate(slotId, false);
+        }
+    }
+
+    private void scheduleExpiry(long first, int n, long createdAtMillis) {
+        if (slotTtlMillis > 0) timers.schedule(createdAtMillis + slotTtlMillis, () -> expireSlots(first, n));
+    }
+
+    /**
+     * One daemon thread that runs this engine's due timers in order, so a task that
+     * blocks (on the persistence gate, log backpressure, a full audit spill) holds
+     * up only this engine's timers, never the shared clock. It exits when idle.
+     */
+    private static ExecutorService newTimerThread() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "addy-timers");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Hierarchical timing wheel with one-millisecond ticks: four levels of 256
+     * buckets cover 256 ms, 65 s, 4.6 h and 49 days, and a timer further out parks in
+     * the last level until it comes into range. Buckets are intrusive doubly linked
+     * lists, so placing a timer and unlinking a cancelled one are both O(1) however
+     * many are pending; a bucket on a higher level is redistributed downwards once,
+     * when the level below wraps.
+     *
+     * <p>Any thread may schedule or cancel. Both only touch a lock-free inbox or the
+     * timer's own state; buckets belong to whichever thread is advancing the wheel
+     * (one at a time), which drains the inboxes first. Due tasks go to the wheel's
+     * executor, or run on the advancing thread when it has none.
+     */
+    static final class TimerWheel {
+        private static final int LEVELS = 4;
+        private static final int BUCKET_BITS = 8;
+        private static final int BUCKETS = 1 << BUCKET_BITS;
+        private static final int BUCKET_MASK = BUCKETS - 1;
+        private static final long MAX_SPAN = (1L << (LEVELS * BUCKET_BITS)) - 1;
+
+        private final Timer[][] buckets = new Timer[LEVELS][BUCKETS];
+        private final int[] levelCounts = new int[LEVELS];
+        private final ConcurrentLinkedQueue<Timer> scheduled = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final ReentrantLock advancing = new ReentrantLock();
+        private final Executor executor;
+        /** Last tick processed; only read and written while advancing. */
+        private long tick;
+
+        TimerWheel(long startMillis, Executor executor) {
+            this.tick = startMillis;
+            this.executor = executor;
+        }
+
+        Timer schedule(long deadlineMillis, Runnable task) {
+            Timer timer = new Timer(this, deadlineMillis, task);
+            pending.incrementAndGet();
+            scheduled.add(timer);
+            return timer;
+        }
+
+        int size() {
+            return pending.get();
+        }
+
+        /** Processes every tick up to {@code nowMillis}, handing due timers to the executor. */
+        void advanceTo(long nowMillis) {
+            if (!advancing.tryLock()) return;
+            try {
+                drainInboxes();
+                while (tick < nowMillis) {
+                    if (levelCounts[0] == 0) {
+                        // Nothing on the lowest level: jump to the next wrap, where a cascade may refill it.
+                        long wrap = (tick | BUCKET_MASK) + 1;
+                        if (wrap > nowMillis) {
+                            tick = nowMillis;
+                            break;
+                        }
+                        tick = wrap;
+                    } else {
+                        tick++;
+                    }
+                    if ((tick & BUCKET_MASK) == 0) cascade(1);
+                    fire(buckets[0], (int) tick & BUCKET_MASK);
+                    drainInboxes();
+                }
+            } finally {
+                advancing.unlock();
+            }
+        }
+
+        /** Moves the level's current bucket one level down, after the level above it if that wrapped too. */
+        private void cascade(int level) {
+            if (level >= LEVELS) return;
+            int index = (int) (tick >>> (level * BUCKET_BITS)) & BUCKET_MASK;
+            if (index == 0) cascade(level + 1);
+            Timer t = buckets[level][index];
+            buckets[level][index] = null;
+            while (t != null) {
+                Timer next = t.next;
+                levelCounts[level]--;
+                t.prev = t.next = null;
+                t.level = -1;
+                place(t, tick);
+                t = next;
+            }
+        }
+
+        private void fire(Timer[] level0, int index) {
+            Timer t = level0[index];
+            level0[index] = null;
+            while (t != null) {
+                Timer next = t.next;
+                levelCounts[0]--;
+                t.prev = t.next = null;
+                t.level = -1;
+                if (t.deadline > tick) {
+                    place(t, tick + 1);
+                } else if (t.fire()) {
+                    pending.decrementAndGet();
+                    dispatch(t.task);
+                }
+                t = next;
+            }
+        }
+
+        private void dispatch(Runnable task) {
+            try {
+                if (executor != null) {
+                    executor.execute(task);
+                } else {
+                    task.run();
+                }
+            } catch (RejectedExecutionException e) {
+                // The engine is closing; its timers no longer matter.
+            } catch (RuntimeException e) {
+                // A failing task must not stop the wheel for everyone else.
+            }
+        }
+
+        private void drainInboxes() {
+            Timer t;
+            while ((t = scheduled.poll()) != null) {
+                if (t.state == Timer.CANCELLED) continue;
+                place(t, tick + 1);
+            }
+            while ((t = cancelled.poll()) != null) {
+                if (t.level >= 0) unlink(t);
+            }
+        }
+
+        /** Files {@code t} under its deadline, but no earlier than tick {@code earliest}. */
+        private void place(Timer t, long earliest) {
+            long due = Math.max(t.deadline, earliest);
+            long delta = Math.min(due - tick, MAX_SPAN);
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * BUCKET_BITS)) level++;
+            int index = (int) ((tick + delta) >>> (level * BUCKET_BITS)) & BUCKET_MASK;
+            Timer head = buckets[level][index];
+            t.next = head;
+            if (head != null) head.prev = t;
+            buckets[level][index] = t;
+            t.level = level;
+            t.index = index;
+            levelCounts[level]++;
+        }
+
+        private void unlink(Timer t) {
+            if (t.prev != null) {
+                t.prev.next = t.next;
+            } else {
+                buckets[t.level][t.index] = t.next;
+            }
+            if (t.next != null) t.next.prev = t.prev;
+            t.prev = t.next = null;
+            levelCounts[t.level]--;
+            t.level = -1;
+        }
+    }
+
+    /** A scheduled task. {@link #cancel()} is O(1) and safe from any thread. */
+    static final class Timer {
+        static final int WAITING = 0;
+        static final int CANCELLED = 1;
+        static final int FIRED = 2;
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Timer.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final TimerWheel wheel;
+        final long deadline;
+        final Runnable task;
+        volatile int state;
+        // Bucket links; owned by the thread advancing the wheel.
+        Timer prev;
+        Timer next;
+        int level = -1;
+        int index;
+
+        Timer(TimerWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /** True if this call stopped the timer before it fired. */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, WAITING, CANCELLED)) return false;
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        boolean fire() {
+            return STATE.compareAndSet(this, WAITING, FIRED);
+        }
+    }
+
+    /**
+     * The one thread that keeps time for every engine on the system clock. Each
+     * millisecond it refreshes {@link #millis()} and advances the registered wheels,
+     * which only files due tasks with each engine's executor: nothing an engine does
+     * can stop the clock. Wheels are held weakly so an engine that is dropped without
+     * being closed does not stay registered forever.
+     */
+    static final class Ticker implements Runnable {
+        private static volatile long millis = System.currentTimeMillis();
+        private static final List<WeakReference<TimerWheel>> WHEELS = new CopyOnWriteArrayList<>();
+        private static Thread thread;
+
+        static long millis() {
+            return millis;
+        }
+
+        static synchronized void register(TimerWheel wheel) {
+            WHEELS.add(new WeakReference<>(wheel));
+            if (thread == null) {
+                millis = System.currentTimeMillis();
+                thread = new Thread(new Ticker(), "addy-ticker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        static void unregister(TimerWheel wheel) {
+            WHEELS.removeIf(ref -> ref.get() == null || ref.get() == wheel);
+        }
+
+        /** Lets the thread go once no wheel is left; the next registration starts another. */
+        private static synchronized boolean retire() {
+            if (!WHEELS.isEmpty()) return false;
+            thread = null;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (!(WHEELS.isEmpty() && retire())) {
+                LockSupport.parkNanos(1_000_000L);
+                long now = System.currentTimeMillis();
+                millis = now;
+                boolean stale = false;
+                for (WeakReference<TimerWheel> ref : WHEELS) {
+                    TimerWheel wheel = ref.get();
+                    if (wheel == null) {
+                        stale = true;
+                    } else {
+                        wheel.advanceTo(now);
+                    }
+                }
+                if (stale) WHEELS.removeIf(ref -> ref.get() == null);
+            }
+        }
+    }
+
+
+    // -------------------------------------------------------------------------
+    // Campaign lifecycle
+    // -------------------------------------------------------------------------
+
+    public long createCampaign(String ownerRef, ThrottleZone zone) {
+        if (!METRICS_ENABLED) return doCreateCampaign(ownerRef, zone);
+        long start = System.nanoTime();
+        try {
+            return doCreateCampaign(ownerRef, zone);
+        } finally {
+            metrics.record(LatencyOp.CREATE_CAMPAIGN, System.nanoTime() - start);
+        }
+    }
+
+    private long doCreateCampaign(String ownerRef, ThrottleZone zone) {
+        if (ownerRef == null || ownerRef.isBlank()) {
+            throw new IllegalArgumentException("addy: owner ref blank");
+        }
+        if (zone == null) {
+            throw new IllegalArgumentException("addy: zone required");
+        }
+        if (zoneThrottled && !throttle.tryAcquire(zone, 1, now())) {
+            throw reject(RejectReason.THROTTLE_EXCEEDED,
+                    new IllegalStateException("addy: throttle limit exceeded for zone " + zone));
+        }
+        Persistence p = persistence;
+        long lsn = 0L;
+        long id;
+        if (p != null) p.enter();
+        long epoch = epochs.enter();
+        try {
+            id = nextCampaignId.getAndIncrement();
+            CampaignRecord rec = new CampaignRecord(id, ownerRef, CampaignPhase.DRAFT, zone,
+                    Instant.ofEpochMilli(now()), 0, 0L, epoch);
+            if (p != null) lsn = p.wal.logCampaignCreate(id, zone, rec.getCreatedAt().toEpochMilli(), ownerRef);
+            campaigns.put(id, rec);
+            campaignsByZonePhase.add(rec);
+            campaignCount.add(epochs, epoch, 1);
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        appendAudit(AuditAction.CAMPAIGN_CREATE, id, zone.ordinal(), 0L, ownerRef);
+        if (METRICS_ENABLED) metrics.count(MetricOp.CAMPAIGN_CREATE, 1);
+        if (p != null) p.awaitDurable(lsn);
+        return id;
+    }
+
+    /**
+     * Moves the campaign to {@code toPhase}. The target must be allowed in the
+     * campaign's zone and reachable from its current phase (anything but itself,
+     * nothing out of ARCHIVED); the change is a single compare-and-set on the
+     * record's state word, so of two racing transitions from the same phase exactly
+     * one applies and the other re-validates against the winner's phase.
+     */
+    public void transitionCampaignPhase(long campaignId, CampaignPhase toPhase) {
+        if (toPhase == null) {
+            throw new IllegalArgumentException("addy: phase required");
+        }
+        CampaignRecord rec = campaigns.get(campaignId);
+        if (rec == null) {
+            throw new IllegalArgumentException("addy: campaign not found " + campaignId);
+        }
+        if (!isPhaseAllowedInZone(toPhase, rec.getZone())) {
+            throw new IllegalStateException("addy: phase " + toPhase + " not allowed in zone " + rec.getZone());
+        }
+        Persistence p = persistence;
+        long lsn = 0L;
+        CampaignPhase from;
+        if (p != null) p.enter();
+        long epoch = epochs.enter();
+        try {
+            CampaignRecord.PhaseCell current;
+            long next;
+            do {
+                current = rec.phases();
+                epoch = epochs.catchUp(epoch, current.epoch);
+                long state = current.state;
+                from = CampaignRecord.phaseOf(state);
+                if ((PHASE_TRANSITIONS[from.ordinal()] & 1 << toPhase.ordinal()) == 0) {
+                    throw new IllegalStateException(from == CampaignPhase.ARCHIVED
+                            ? "addy: cannot transition archived campaign"
+                            : "addy: campaign already " + toPhase);
+                }
+                next = CampaignRecord.packState(CampaignRecord.versionOf(state) + 1, toPhase);
+            } while (!rec.casState(current, next, epochs, epoch));
+            if (p != null) lsn = p.wal.logPhase(campaignId, toPhase, CampaignRecord.versionOf(next));
+            if (toPhase == CampaignPhase.LIVE) {
+                totalCampaignsActivated.add(epochs, epoch, 1);
+            }
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        campaignsByZonePhase.moved(rec, from);
+        appendAudit(AuditAction.CAMPAIGN_PHASE, campaignId, from.ordinal(), toPhase.ordinal(), null);
+        if (METRICS_ENABLED) metrics.count(MetricOp.PHASE_TRANSITION, 1);
+        if (p != null) p.awaitDurable(lsn);
+    }
+
+    /** Campaigns in {@code zone} currently in {@code phase}; costs the size of the answer, not a scan. */
+    public List<CampaignRecord> getCampaignsInPhase(ThrottleZone zone, CampaignPhase phase) {
+        Set<Long> ids = campaignsByZonePhase.get(zone, phase);
+        List<CampaignRecord> out = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            CampaignRecord rec = campaigns.get(id);
+            // An id can sit in its old set for the moment between a transition and the index move.
+            if (rec != null && rec.getPhase() == phase) out.add(rec);
+        }
+        return out;
+    }
+
+    /** Same filter as {@link #getCampaignsInPhase}, so the two agree; costs the size of the set. */
+    public int countCampaignsInPhase(ThrottleZone zone, CampaignPhase phase) {
+        int count = 0;
+        for (Long id : campaignsByZonePhase.get(zone, phase)) {
+            CampaignRecord rec = campaigns.get(id);
+            if (rec != null && rec.getPhase() == phase) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Secondary index (zone, phase) -> campaign ids. The phase itself changes by CAS;
+     * moving the id between sets happens afterwards under the record's monitor, and
+     * each move files the id under the phase the record holds at that moment, so
+     * moves that finish out of order still leave it in exactly its current set.
+     */
+    static final class CampaignPhaseIndex {
+        private static final int PHASES = CampaignPhase.values().length;
+
+        private final List<Set<Long>> sets;
+
+        CampaignPhaseIndex() {
+            int n = ThrottleZone.values().length * PHASES;
+            sets = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) sets.add(ConcurrentHashMap.newKeySet());
+        }
+
+        Set<Long> get(ThrottleZone zone, CampaignPhase phase) {
+            return sets.get(zone.ordinal() * PHASES + phase.ordinal());
+        }
+
+        void add(CampaignRecord rec) {
+            get(rec.getZone(), rec.getPhase()).add(rec.getCampaignId());
+        }
+
+        void moved(CampaignRecord rec, CampaignPhase from) {
+            synchronized (rec) {
+                get(rec.getZone(), from).remove(rec.getCampaignId());
+                add(rec);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Keyword slot allocation
+    // -------------------------------------------------------------------------
+
+    public long allocateKeywordSlot(String keyword, long campaignId, BidTierKind tier, long cpcNanos) {
+        if (!METRICS_ENABLED) return doAllocateKeywordSlot(keyword, campaignId, tier, cpcNanos);
+        long start = System.nanoTime();
+        try {
+            return doAllocateKeywordSlot(keyword, campaignId, tier, cpcNanos);
+        } finally {
+            metrics.record(LatencyOp.ALLOCATE_SLOT, System.nanoTime() - start);
+        }
+    }
+
+    private long doAllocateKeywordSlot(String keyword, long campaignId, BidTierKind tier, long cpcNanos) {
+        if (keyword == null || keyword.isBlank()) {
+            throw new IllegalArgumentException("addy: keyword blank");
+        }
+        CampaignRecord camp = campaigns.get(campaignId);
+        if (camp == null) {
+            throw new IllegalArgumentException("addy: campaign not found " + campaignId);
+        }
+        if (camp.getKeywordCount() >= maxKeywordsPerCampaign) {
+            throw reject(RejectReason.CAMPAIGN_CAP_REACHED,
+                    new IllegalStateException("addy: campaign keyword cap reached"));
+        }
+        if (reservedSlotCount.get() >= keywordSlotCap) {
+            throw reject(RejectReason.GLOBAL_CAP_REACHED,
+                    new IllegalStateException("addy: global slot cap reached"));
+        }
+        if (cpcNanos < bidFloorNanos) {
+            throw reject(RejectReason.CPC_BELOW_FLOOR, new IllegalArgumentException("addy: cpc below floor"));
+        }
+        Long tierCap = tierCaps.get(tier);
+        if (tierCap != null && cpcNanos > tierCap) {
+            throw reject(RejectReason.ABOVE_TIER_CAP, new IllegalArgumentException("addy: cpc above tier cap"));
+        }
+        KeywordHashKey probe = timedProbeKeywordHash(keyword);
+        if (slotIdByHash.containsKey(probe)) {
+            throw reject(RejectReason.DUPLICATE_KEYWORD,
+                    new IllegalStateException("addy: keyword already registered"));
+        }
+        KeywordHashKey[] hashes = {probe.copy()};
+        Persistence p = persistence;
+        long lsn = 0L;
+        long slotId;
+        if (p != null) p.enter();
+        long epoch = epochs.catchUp(epochs.enter(), camp.createdEpoch());
+        try {
+            reserveAndClaim(camp, hashes);
+            slotId = nextKeywordId.getAndIncrement();
+            long now = now();
+            if (p != null) lsn = p.wal.logSlotAlloc(slotId, hashes[0], campaignId, tier, cpcNanos, now);
+            slotsByCampaign.add(campaignId, slotId);
+            keywordSlots.put(slotId, hashes[0], campaignId, tier, cpcNanos, now, epoch);
+            slotIdByHash.put(hashes[0], slotId);
+            scheduleExpiry(slotId, 1, now);
+            camp.addKeywords(epochs, epoch, 1);
+            activeSlotCount.add(epochs, epoch, 1);
+            totalBidsPlaced.add(epochs, epoch, 1);
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        appendAudit(AuditAction.SLOT_ALLOC, slotId, campaignId, tier.ordinal(), null);
+        if (METRICS_ENABLED) metrics.count(MetricOp.SLOT_ALLOC, 1);
+        if (p != null) p.awaitDurable(lsn);
+        return slotId;
+    }
+
+    /**
+     * Allocates a whole onboarding batch for one campaign, all or nothing. Every bid
+     * is validated and every keyword hashed (in parallel for large batches) before
+     * anything is reserved; the campaign keyword count, the global slot count and a
+     * contiguous run of slot ids are each reserved in one atomic step, and the batch
+     * counts as a single bid against the campaign cooldown and a single audit record.
+     *
+     * @return slot ids in the order of {@code bids}
+     */
+    public long[] allocateKeywordSlots(long campaignId, List<KeywordBid> bids) {
+        if (bids == null || bids.isEmpty()) {
+            throw new IllegalArgumentException("addy: keyword batch empty");
+        }
+        CampaignRecord camp = campaigns.get(campaignId);
+        if (camp == null) {
             throw new IllegalArgumentException("addy: campaign not found " + campaignId);
         }
-        camp.setTotalSpendNanos(camp.getTotalSpendNanos() + amountNanos);
-        appendAudit("SPEND", campaignId, "amount=" + amountNanos);
+        int n = bids.size();
+        if (camp.getKeywordCount() + n > maxKeywordsPerCampaign) {
+            throw reject(RejectReason.CAMPAIGN_CAP_REACHED,
+                    new IllegalStateException("addy: campaign keyword cap reached"));
+        }
+        if (reservedSlotCount.get() + n > keywordSlotCap) {
+            throw reject(RejectReason.GLOBAL_CAP_REACHED,
+                    new IllegalStateException("addy: global slot cap reached"));
+        }
+        for (KeywordBid bid : bids) {
+            if (bid == null || bid.getKeyword() == null || bid.getKeyword().isBlank()) {
+                throw new IllegalArgumentException("addy: keyword blank");
+            }
+            if (bid.getCpcNanos() < bidFloorNanos) {
+                throw reject(RejectReason.CPC_BELOW_FLOOR, new IllegalArgumentException("addy: cpc below floor"));
+            }
+            Long tierCap = tierCaps.get(bid.getTier());
+            if (tierCap != null && bid.getCpcNanos() > tierCap) {
+                throw reject(RejectReason.ABOVE_TIER_CAP, new IllegalArgumentException("addy: cpc above tier cap"));
+            }
+        }
+        KeywordHashKey[] hashes = new KeywordHashKey[n];
+        IntStream indices = IntStream.range(0, n);
+        if (n >= PARALLEL_HASH_THRESHOLD) indices = indices.parallel();
+        indices.forEach(i -> hashes[i] = timedProbeKeywordHash(bids.get(i).getKeyword()).copy());
+        Set<KeywordHashKey> distinct = new HashSet<>(n * 2);
+        for (KeywordHashKey hash : hashes) {
+            if (!distinct.add(hash)) {
+                throw reject(RejectReason.DUPLICATE_KEYWORD,
+                        new IllegalArgumentException("addy: keyword repeated in batch"));
+            }
+            if (slotIdByHash.containsKey(hash)) {
+                throw reject(RejectReason.DUPLICATE_KEYWORD,
+                        new IllegalStateException("addy: keyword already registered"));
+            }
+        }
+        Persistence p = persistence;
+        long lsn = 0L;
+        long firstSlotId;
+        long[] slotIds = new long[n];
+        if (p != null) p.enter();
+        long epoch = epochs.catchUp(epochs.enter(), camp.createdEpoch());
+        try {
+            reserveAndClaim(camp, hashes);
+            firstSlotId = nextKeywordId.getAndAdd(n);
+            long now = now();
+            if (p != null) lsn = p.wal.logSlotBatch(campaignId, firstSlotId, now, bids, hashes);
+            for (int i = 0; i < n; i++) {
+                KeywordBid bid = bids.get(i);
+                long slotId = firstSlotId + i;
+                slotIds[i] = slotId;
+                slotsByCampaign.add(campaignId, slotId);
+                keywordSlots.put(slotId, hashes[i], campaignId, bid.getTier(), bid.getCpcNanos(), now, epoch);
+                slotIdByHash.put(hashes[i], slotId);
+            }
+            scheduleExpiry(firstSlotId, n, now);
+            camp.addKeywords(epochs, epoch, n);
+            activeSlotCount.add(epochs, epoch, n);
+            totalBidsPlaced.add(epochs, epoch, n);
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        appendAudit(AuditAction.SLOT_BATCH, campaignId, firstSlotId, n, null);
+        if (METRICS_ENABLED) metrics.count(MetricOp.SLOT_BATCH, n);
+        if (p != null) p.awaitDurable(lsn);
+        return slotIds;
+    }
+
+    /**
+     * Reserves room for {@code hashes.length} slots against the campaign and global
+     * caps, registers the hashes and starts the campaign's bid cooldown. Any failure
+     * rolls back what was taken so far and throws.
+     */
+    private void reserveAndClaim(CampaignRecord camp, KeywordHashKey[] hashes) {
+        int n = hashes.length;
+        if (!camp.tryReserveKeywords(n, maxKeywordsPerCampaign)) {
+            throw reject(RejectReason.CAMPAIGN_CAP_REACHED,
+                    new IllegalStateException("addy: campaign keyword cap reached"));
+        }
+        if (!tryReserveSlots(n)) {
+            camp.releaseKeywords(n);
+            throw reject(RejectReason.GLOBAL_CAP_REACHED,
+                    new IllegalStateException("addy: global slot cap reached"));
+        }
+        int claimed = 0;
+        while (claimed < n && slotIdByHash.putIfAbsent(hashes[claimed], CLAIMED) == null) claimed++;
+        if (claimed < n || !tryStartBidCooldown(camp.getCampaignId(), now())) {
+            for (int i = 0; i < claimed; i++) slotIdByHash.remove(hashes[i]);
+            reservedSlotCount.addAndGet(-n);
+            camp.releaseKeywords(n);
+            if (claimed < n) {
+                throw reject(RejectReason.DUPLICATE_KEYWORD,
+                        new IllegalStateException("addy: keyword already registered"));
+            }
+            throw reject(RejectReason.BID_COOLDOWN,
+                    new IllegalStateException("addy: bid cooldown active for campaign " + camp.getCampaignId()));
+        }
+    }
+
+    private boolean tryReserveSlots(int n) {
+        for (;;) {
+            int current = reservedSlotCount.get();
+            if (current + n > keywordSlotCap) return false;
+            if (reservedSlotCount.compareAndSet(current, current + n)) return true;
+        }
+    }
+
+    /**
+     * Claims the campaign's bid cooldown. Uses the map's per-key compare-and-set so
+     * concurrent bids for one campaign race on that entry only. A timer drops the
+     * entry once the cooldown is over, unless a later bid has replaced it, so the map
+     * only holds campaigns that bid recently.
+     */
+    private boolean tryStartBidCooldown(long campaignId, long nowMillis) {
+        for (;;) {
+            Long last = lastBidTimeByCampaign.get(campaignId);
+            if (last == null) {
+                if (lastBidTimeByCampaign.putIfAbsent(campaignId, nowMillis) == null) break;
+            } else if (nowMillis - last < BID_COOLDOWN_MS) {
+                return false;
+            } else if (lastBidTimeByCampaign.replace(campaignId, last, nowMillis)) {
+                break;
+            }
+        }
+        timers.schedule(nowMillis + BID_COOLDOWN_MS, () -> lastBidTimeByCampaign.remove(campaignId, nowMillis));
+        return true;
+    }
+
+    public void deactivateKeywordSlot(long slotId) {
+        deactivate(slotId, true);
+    }
+
+    /** Expiry passes {@code awaitDurable = false}: the ticker thread must not wait on an fsync. */
+    private void deactivate(long slotId, boolean awaitDurable) {
+        KeywordSlotView slot = keywordSlots.get(slotId);
+        if (slot == null) {
+            throw new IllegalArgumentException("addy: slot not found " + slotId);
+        }
+        Persistence p = persistence;
+        long lsn = 0L;
+        if (p != null) p.enter();
+        long epoch = epochs.catchUp(epochs.enter(), keywordSlots.createdEpoch(slotId));
+        try {
+            if (keywordSlots.deactivate(slotId, epoch)) {
+                if (p != null) lsn = p.wal.logSlotDeact(slotId);
+                slotsByCampaign.deactivate(slot.getCampaignId(), slotId);
+                slotIdByHash.replace(slot.getKeywordHashKey(), slotId, -slotId);
+                activeSlotCount.add(epochs, epoch, -1);
+                enqueueDead(slotId);
+            }
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        appendAudit(AuditAction.SLOT_DEACT, slotId, 0L, 0L, null);
+        if (METRICS_ENABLED) metrics.count(MetricOp.SLOT_DEACT, 1);
+        if (p != null && awaitDurable) p.awaitDurable(lsn);
+    }
+
+    // -------------------------------------------------------------------------
+    // Slot compaction (reclaiming deactivated slots)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Reclaims every deactivated slot now, one bounded pass at a time, and returns how
+     * many were reclaimed. A reclaimed slot is gone: its keyword can be registered
+     * again, and it no longer counts against its campaign's keyword cap or, once its
+     * storage is recycled at the start of the following pass, the global slot cap.
+     * Background compaction ({@link Options#withCompactionIntervalMillis}) does the
+     * same without being asked.
+     */
+    public int compactSlots() {
+        int total = 0;
+        int n;
+        do {
+            n = compactPass(COMPACTION_BATCH, null);
+            total += n;
+        } while (n > 0);
+        return total;
+    }
+
+    public CompactionStats getCompactionStats() {
+        return new CompactionStats(deadSlotCount.get(), slotsReclaimed, slotsRecycled, compactionPasses,
+                compactionNanos, maxCompactionNanos, keywordSlots.footprint());
+    }
+
+    /** Told about each slot a pass reclaims and each batch of storage it recycles; used by the sharded engine. */
+    interface ReclaimListener {
+        void reclaimed(long slotId, KeywordHashKey hash);
+
+        void recycled(int count);
+    }
+
+    /**
+     * One pass: recycles the storage the previous pass removed, then reclaims what it
+     * can of up to {@code limit} queued dead slots under one log record. Writers are
+     * held at the persistence gate for that long at most. A slot an open snapshot
+     * still sees as active goes back on the queue until the snapshot is closed.
+     */
+    int compactPass(int limit, ReclaimListener listener) {
+        compacting.lock();
+        return compactPassLocked(limit, listener);
+    }
+
+    /** As {@link #compactPass}, but skips the pass while a checkpoint is writing; for the background schedules. */
+    int tryCompactPass(int limit, ReclaimListener listener) {
+        return compacting.tryLock() ? compactPassLocked(limit, listener) : 0;
+    }
+
+    /** Runs a pass with {@link #compacting} held and releases it. */
+    private int compactPassLocked(int limit, ReclaimListener listener) {
+        long start = System.nanoTime();
+        int reclaimed = 0;
+        try {
+            int recycled = keywordSlots.recycle();
+            if (recycled > 0) {
+                reservedSlotCount.addAndGet(-recycled);
+                slotsRecycled += recycled;
+                if (listener != null) listener.recycled(recycled);
+            }
+            long[] slotIds = new long[limit];
+            int n = 0;
+            int deferred = 0;
+            long pinned = epochs.oldestPinned();
+            long newest = 0L;
+            Long slotId;
+            for (int polled = 0; polled < limit && (slotId = deadSlots.poll()) != null; polled++) {
+                deadSlotCount.decrementAndGet();
+                KeywordSlotView slot = keywordSlots.get(slotId);
+                if (slot == null || slot.isActive()) continue;
+                long deactivated = keywordSlots.deactivatedEpoch(slotId);
+                if (deactivated > pinned) {
+                    // Deferred ids fill the array from the back; at most limit are polled in all.
+                    slotIds[limit - ++deferred] = slotId;
+                    continue;
+                }
+                newest = Math.max(newest, deactivated);
+                slotIds[n++] = slotId;
+            }
+            for (int i = 0; i < deferred; i++) enqueueDead(slotIds[limit - 1 - i]);
+            if (n == 0) return 0;
+            Persistence p = persistence;
+            if (p != null) p.enter();
+            long epoch = epochs.catchUp(epochs.enter(), newest);
+            try {
+                if (p != null) p.wal.logSlotReclaim(slotIds, n);
+                for (int i = 0; i < n; i++) {
+                    KeywordHashKey hash = reclaim(slotIds[i], epoch);
+                    if (hash == null) continue;
+                    reclaimed++;
+                    if (listener != null) listener.reclaimed(slotIds[i], hash);
+                }
+            } finally {
+                epochs.exit(epoch);
+                if (p != null) p.exit();
+            }
+            slotsReclaimed += reclaimed;
+            return reclaimed;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            compactionPasses++;
+            compactionNanos += nanos;
+            if (nanos > maxCompactionNanos) maxCompactionNanos = nanos;
+            compacting.unlock();
+        }
+    }
+
+    /** Unregisters a dead slot everywhere and drops its storage; returns its hash, or null if it was already gone. */
+    private KeywordHashKey reclaim(long slotId, long epoch) {
+        KeywordSlotView slot = keywordSlots.get(slotId);
+        if (slot == null || slot.isActive() || !keywordSlots.remove(slotId)) return null;
+        KeywordHashKey hash = slot.getKeywordHashKey();
+        slotIdByHash.remove(hash, -slotId);
+        slotsByCampaign.remove(slot.getCampaignId(), slotId);
+        CampaignRecord camp = campaigns.get(slot.getCampaignId());
+        if (camp != null) {
+            camp.releaseKeywords(1);
+            camp.addKeywords(epochs, epoch, -1);
+        }
+        return hash;
+    }
+
+    private void enqueueDead(long slotId) {
+        deadSlots.add(slotId);
+        deadSlotCount.incrementAndGet();
+    }
+
+    /** Runs a pass on the timer wheel; comes back after a millisecond rather than the interval while a backlog lasts. */
+    private void scheduleCompaction(long atMillis) {
+        timers.schedule(atMillis, () -> {
+            if (closed) return;
+            int n = tryCompactPass(COMPACTION_BATCH, null);
+            scheduleCompaction(now() + (n == COMPACTION_BATCH ? 1 : compactionIntervalMillis));
+        });
+    }
+
+    public static final class CompactionStats {
+        private final int pendingSlots;
+        private final long reclaimedSlots;
+        private final long recycledSlots;
+        private final long passes;
+        private final long totalPassNanos;
+        private final long maxPassNanos;
+        private final int storageSlots;
+
+        public CompactionStats(int pendingSlots, long reclaimedSlots, long recycledSlots, long passes,
+                               long totalPassNanos, long maxPassNanos, int storageSlots) {
+            this.pendingSlots = pendingSlots;
+            this.reclaimedSlots = reclaimedSlots;
+            this.recycledSlots = recycledSlots;
+            this.passes = passes;
+            this.totalPassNanos = totalPassNanos;
+            this.maxPassNanos = maxPassNanos;
+            this.storageSlots = storageSlots;
+        }
+
+        /** Deactivated slots waiting to be reclaimed. */
+        public int getPendingSlots() { return pendingSlots; }
+        public long getReclaimedSlots() { return reclaimedSlots; }
+        /** Reclaimed slots whose storage (and global cap) has been handed back. */
+        public long getRecycledSlots() { return recycledSlots; }
+        public long getPasses() { return passes; }
+        public long getTotalPassNanos() { return totalPassNanos; }
+        /** Longest pass so far; the longest writers can have waited on compaction. */
+        public long getMaxPassNanos() { return maxPassNanos; }
+        /** Slots' worth of storage the slot store holds, live or free. */
+        public int getStorageSlots() { return storageSlots; }
+    }
+
+    // -------------------------------------------------------------------------
+    // Keyword match and bid ranking (serving path)
+    // -------------------------------------------------------------------------
+
+    /**
+     * The active slot registered for exactly this keyword, or null. Reads one index
+     * entry and one slot; never blocks, and a slot deactivated concurrently is either
+     * returned as it was or not at all.
+     */
+    public KeywordSlotView match(String queryKeyword) {
+        if (queryKeyword == null || queryKeyword.isBlank()) return null;
+        if (!METRICS_ENABLED) return matchSlot(lookupKeywordHash(queryKeyword));
+        long start = System.nanoTime();
+        KeywordSlotView slot = matchSlot(timedProbeKeywordHash(queryKeyword));
+        metrics.record(LatencyOp.MATCH, System.nanoTime() - start);
+        metrics.count(MetricOp.MATCH, 1);
+        return slot;
+    }
+
+    private KeywordSlotView matchSlot(KeywordHashKey probe) {
+        Long slotId = slotIdByHash.get(probe);
+        if (slotId == null || slotId <= 0) return null;
+        KeywordSlotView slot = keywordSlots.get(slotId);
+        return slot != null && slot.isActive() ? slot : null;
+    }
+
+    public List<KeywordSlotView> topK(Collection<String> queryKeywords, int k) {
+        return topK(queryKeywords, k, EnumSet.allOf(BidTierKind.class));
+    }
+
+    /**
+     * Ranks the active slots matching any of {@code queryKeywords} and returns the best
+     * {@code k}, highest first. A slot's rank is its cpc clipped to its tier's cap;
+     * ties go to the older slot. Slots outside {@code tiers} are skipped.
+     */
+    public List<KeywordSlotView> topK(Collection<String> queryKeywords, int k, Set<BidTierKind> tiers) {
+        if (queryKeywords == null || tiers == null) {
+            throw new IllegalArgumentException("addy: query keywords and tiers required");
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("addy: k must be positive");
+        }
+        KeywordSlotView[] best = new KeywordSlotView[Math.min(k, queryKeywords.size())];
+        long[] bids = new long[best.length];
+        int size = 0;
+        for (String keyword : queryKeywords) {
+            KeywordSlotView slot = match(keyword);
+            if (slot == null || !tiers.contains(slot.getTier())) continue;
+            long bid = Math.min(slot.getCpcNanos(), tierCaps.getOrDefault(slot.getTier(), Long.MAX_VALUE));
+            long slotId = slot.getSlotId();
+            int at = size;
+            boolean seen = false;
+            for (int i = 0; i < size; i++) {
+                if (best[i].getSlotId() == slotId) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (seen) continue;
+            while (at > 0 && outranks(bid, slotId, bids[at - 1], best[at - 1].getSlotId())) at--;
+            if (at >= best.length) continue;
+            int last = Math.min(size, best.length - 1);
+            System.arraycopy(best, at, best, at + 1, last - at);
+            System.arraycopy(bids, at, bids, at + 1, last - at);
+            best[at] = slot;
+            bids[at] = bid;
+            if (size < best.length) size++;
+        }
+        List<KeywordSlotView> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) out.add(best[i]);
+        return out;
+    }
+
+    private static boolean outranks(long bid, long slotId, long otherBid, long otherSlotId) {
+        return bid > otherBid || (bid == otherBid && slotId < otherSlotId);
+    }
+
+    // -------------------------------------------------------------------------
+    // Slot storage
+    // -------------------------------------------------------------------------
+
+    /**
+     * Backing store for keyword slots, keyed by the ids {@code nextKeywordId} hands
+     * out. Concurrent writers may put and deactivate; removal and recycling belong to
+     * one thread at a time (the compactor, or recovery before it starts).
+     */
+    interface SlotStore {
+        /** {@code epoch} is the one the allocation ran in; see {@link #getAt}. */
+        void put(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                 long createdAtMillis, long epoch);
+
+        /** Returns the slot, or null when absent. */
+        KeywordSlotView get(long slotId);
+
+        /** Marks the slot inactive as of {@code epoch}; true only for the call that flipped it. */
+        boolean deactivate(long slotId, long epoch);
+
+        /** The slot as a snapshot at {@code epoch} sees it: a copy if it was active then, else null. */
+        KeywordSlotView getAt(long slotId, long epoch);
+
+        /** Epoch the slot was put in; 0 when absent. */
+        long createdEpoch(long slotId);
+
+        /** Epoch the slot was deactivated in; {@link Long#MAX_VALUE} while active or when absent. */
+        long deactivatedEpoch(long slotId);
+
+        /**
+         * Drops an inactive slot. Its storage is not handed out again before the next
+         * {@link #recycle()}, so a reader that looked the slot up just before still
+         * reads a row no other slot has taken.
+         */
+        boolean remove(long slotId);
+
+        /** Makes the storage of every slot removed since the last call reusable; returns how many that was. */
+        int recycle();
+
+        /** Slots' worth of storage held, live or free. */
+        int footprint();
+
+        int size();
+
+        void forEach(SlotVisitor visitor);
+
+        /** Every slot put at or before {@code epoch}, with {@code active} as of that epoch. */
+        void forEachAt(long epoch, SlotVisitor visitor);
+
+        /** The whole store as one {@link SlotSplit}, for scans that divide it between threads. */
+        SlotSplit split();
+    }
+
+    /** Part of a slot store that can hand half of itself to another thread, like a {@link Spliterator}. */
+    interface SlotSplit {
+        /** A new split taking part of this one's slots, or null if this one will not divide further. */
+        SlotSplit trySplit();
+
+        long estimateSize();
+
+        /** As {@link SlotStore#forEachAt(long, SlotVisitor)}, over this split's slots. */
+        void forEachAt(long epoch, SlotVisitor visitor);
+    }
+
+    interface SlotVisitor {
+        void visit(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                   long createdAtMillis, boolean active);
+    }
+
+    /** One {@link KeywordSlotRecord} per slot in a concurrent map. */
+    static final class RecordSlotStore implements SlotStore {
+        private final Map<Long, KeywordSlotRecord> slots = new ConcurrentHashMap<>();
+        private final AtomicInteger removedSinceRecycle = new AtomicInteger();
+
+        @Override
+        public void put(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                        long createdAtMillis, long epoch) {
+            slots.put(slotId, new KeywordSlotRecord(slotId, hash, campaignId, tier, cpcNanos,
+                    Instant.ofEpochMilli(createdAtMillis), true, epoch));
+        }
+
+        @Override
+        public KeywordSlotView get(long slotId) {
+            return slots.get(slotId);
+        }
+
+        @Override
+        public boolean deactivate(long slotId, long epoch) {
+            KeywordSlotRecord slot = slots.get(slotId);
+            return slot != null && slot.deactivate(epoch);
+        }
+
+        @Override
+        public KeywordSlotView getAt(long slotId, long epoch) {
+            KeywordSlotRecord r = slots.get(slotId);
+            if (r == null || r.createdEpoch() > epoch || r.deactivatedEpoch() <= epoch) return null;
+            return new SlotVersion(slotId, r.getKeywordHashKey(), r.getCampaignId(), r.getTier(), r.getCpcNanos(),
+                    r.getCreatedAt().toEpochMilli());
+        }
+
+        @Override
+        public long createdEpoch(long slotId) {
+            KeywordSlotRecord r = slots.get(slotId);
+            return r == null ? 0L : r.createdEpoch();
+        }
+
+        @Override
+        public long deactivatedEpoch(long slotId) {
+            KeywordSlotRecord r = slots.get(slotId);
+            return r == null ? Long.MAX_VALUE : r.deactivatedEpoch();
+        }
+
+        @Override
+        public boolean remove(long slotId) {
+            if (slots.remove(slotId) == null) return false;
+            removedSinceRecycle.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public int recycle() {
+            return removedSinceRecycle.getAndSet(0);
+        }
+
+        @Override
+        public int footprint() {
+            return slots.size();
+        }
+
+        @Override
+        public int size() {
+            return slots.size();
+        }
+
+        @Override
+        public void forEach(SlotVisitor visitor) {
+            for (KeywordSlotRecord r : slots.values()) {
+                visitor.visit(r.getSlotId(), r.getKeywordHashKey(), r.getCampaignId(), r.getTier(),
+                        r.getCpcNanos(), r.getCreatedAt().toEpochMilli(), r.isActive());
+            }
+        }
+
+        @Override
+        public void forEachAt(long epoch, SlotVisitor visitor) {
+            split().forEachAt(epoch, visitor);
+        }
+
+        /** Splits the map's own values, so a scan costs the live slots and boxes nothing. */
+        @Override
+        public SlotSplit split() {
+            return new RecordSplit(slots.values().spliterator());
+        }
+
+        private static final class RecordSplit implements SlotSplit {
+            private final Spliterator<KeywordSlotRecord> records;
+
+            RecordSplit(Spliterator<KeywordSlotRecord> records) {
+                this.records = records;
+            }
+
+            @Override
+            public SlotSplit trySplit() {
+                Spliterator<KeywordSlotRecord> half = records.trySplit();
+                return half == null ? null : new RecordSplit(half);
+            }
+
+            @Override
+            public long estimateSize() {
+                return records.estimateSize();
+            }
+
+            @Override
+            public void forEachAt(long epoch, SlotVisitor visitor) {
+                records.forEachRemaining(r -> {
+                    if (r.createdEpoch() > epoch) return;
+                    visitor.visit(r.getSlotId(), r.getKeywordHashKey(), r.getCampaignId(), r.getTier(),
+                            r.getCpcNanos(), r.getCreatedAt().toEpochMilli(), r.deactivatedEpoch() > epoch);
+                });
+            }
+        }
+    }
+
+    /**
+     * Struct-of-arrays slot store. Rows live in fixed-size pages of primitive columns
+     * (slot id, campaign id, cpc, creation millis, the epochs the slot was put and
+     * deactivated in, a flags byte holding the present bit, active bit and tier
+     * ordinal) plus a reference to the slot's registered hash key, about 54 bytes per
+     * slot with no per-slot object. Pages are installed lazily
+     * with a CAS; the flags byte is written last with release semantics, so a reader
+     * that sees the present bit sees the whole row.
+     *
+     * <p>Rows are recycled. {@link #remove} clears a row and the next {@link #recycle()}
+     * puts it on the free list that {@link #put} draws from before touching a fresh
+     * row, so storage follows the live slot count rather than every id ever issued.
+     * Ids therefore no longer address rows directly: a directory maps each run of
+     * {@code PAGE_ROWS} consecutive ids to their rows and drops the run once it holds
+     * no live slot and puts have moved on to a later run. That counts live slots, not
+     * ids, so ids never put (reclaimed before a checkpoint, burned by a failed
+     * allocation) do not pin a run. A reader copies a row out and then re-checks its slot id,
+     * so a row reused under it reads as absent rather than as another slot.
+     */
+    static final class ColumnarSlotStore implements SlotStore {
+        private static final int PAGE_SHIFT = 14;
+        private static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+        private static final int PAGE_MASK = PAGE_ROWS - 1;
+        private static final byte PRESENT = 0x01;
+        private static final byte ACTIVE = 0x02;
+        private static final int TIER_SHIFT = 2;
+        private static final VarHandle FLAGS = MethodHandles.arrayElementVarHandle(byte[].class);
+        private static final VarHandle SLOT_IDS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final VarHandle ROWS = MethodHandles.arrayElementVarHandle(int[].class);
+        private static final VarHandle EPOCHS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final BidTierKind[] TIERS = BidTierKind.values();
+
+        private final AtomicReferenceArray<Page> pages;
+        private final int maxRows;
+        private final long firstId;
+        private final LongAdder size = new LongAdder();
+        private final AtomicInteger nextRow = new AtomicInteger();
+        /** Rows ready for reuse; guarded by itself, like {@link #limbo}. */
+        private final IntStack freeRows = new IntStack();
+        /** Rows removed since the last recycle, not yet safe to hand out again. */
+        private final IntStack limbo = new IntStack();
+        private volatile AtomicReferenceArray<IdRun> directory = new AtomicReferenceArray<>(16);
+        /** Highest run number put into so far; runs below it take no new ids but stragglers. */
+        private final AtomicLong frontier = new AtomicLong(-1L);
+
+        ColumnarSlotStore(int maxSlots, long idBase) {
+            this.pages = new AtomicReferenceArray<>(((maxSlots - 1) >>> PAGE_SHIFT) + 1);
+            this.maxRows = maxSlots;
+            this.firstId = idBase + 1;
+        }
+
+        @Override
+        public void put(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                        long createdAtMillis, long epoch) {
+            long index = slotId - firstId;
+            if (index < 0) {
+                throw new IllegalStateException("addy: slot id below columnar id base " + slotId);
+            }
+            // Take the row first: a full store throws, and must not leave the run counted live.
+            int row = takeRow();
+            IdRun run = enter(index >>> PAGE_SHIFT);
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            if (page == null) {
+                Page fresh = new Page();
+                page = pages.compareAndExchange(row >>> PAGE_SHIFT, null, fresh);
+                if (page == null) page = fresh;
+            }
+            int r = row & PAGE_MASK;
+            page.campaignIds[r] = campaignId;
+            page.cpcNanos[r] = cpcNanos;
+            page.createdAt[r] = createdAtMillis;
+            page.createdEpochs[r] = epoch;
+            page.deactivatedEpochs[r] = Long.MAX_VALUE;
+            page.hashes[r] = hash;
+            SLOT_IDS.setRelease(page.slotIds, r, slotId);
+            FLAGS.setRelease(page.flags, r, (byte) (PRESENT | ACTIVE | (tier.ordinal() << TIER_SHIFT)));
+            ROWS.setRelease(run.rows, (int) index & PAGE_MASK, row + 1);
+            size.increment();
+        }
+
+        @Override
+        public KeywordSlotView get(long slotId) {
+            int row = rowOf(slotId);
+            if (row < 0) return null;
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            int r = row & PAGE_MASK;
+            byte f = flags(page, r);
+            if ((f & PRESENT) == 0 || (long) SLOT_IDS.getAcquire(page.slotIds, r) != slotId) return null;
+            View view = new View(slotId, page, r, page.hashes[r], page.campaignIds[r],
+                    TIERS[(f & 0xff) >>> TIER_SHIFT], page.cpcNanos[r], page.createdAt[r]);
+            VarHandle.acquireFence();
+            return page.slotIds[r] == slotId && view.hash != null ? view : null;
+        }
+
+        @Override
+        public boolean deactivate(long slotId, long epoch) {
+            int row = rowOf(slotId);
+            if (row < 0) return false;
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            int r = row & PAGE_MASK;
+            for (;;) {
+                byte f = flags(page, r);
+                if ((f & PRESENT) == 0 || (f & ACTIVE) == 0) return false;
+                if ((long) SLOT_IDS.getAcquire(page.slotIds, r) != slotId) return false;
+                if (FLAGS.compareAndSet(page.flags, r, f, (byte) (f & ~ACTIVE))) {
+                    EPOCHS.setRelease(page.deactivatedEpochs, r, epoch);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Snapshot reads go by the epoch columns alone, not the active bit: a snapshot
+         * only opens once every writer of its epoch has left, so any deactivation it
+         * should see has already stamped its epoch.
+         */
+        @Override
+        public KeywordSlotView getAt(long slotId, long epoch) {
+            int row = rowOf(slotId);
+            if (row < 0) return null;
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            int r = row & PAGE_MASK;
+            if ((long) SLOT_IDS.getAcquire(page.slotIds, r) != slotId) return null;
+            byte f = flags(page, r);
+            if ((f & PRESENT) == 0) return null;
+            long created = page.createdEpochs[r];
+            long deactivated = (long) EPOCHS.getAcquire(page.deactivatedEpochs, r);
+            KeywordHashKey hash = page.hashes[r];
+            SlotVersion version = new SlotVersion(slotId, hash, page.campaignIds[r],
+                    TIERS[(f & 0xff) >>> TIER_SHIFT], page.cpcNanos[r], page.createdAt[r]);
+            VarHandle.acquireFence();
+            if (page.slotIds[r] != slotId || hash == null) return null;
+            return created <= epoch && epoch < deactivated ? version : null;
+        }
+
+        @Override
+        public long createdEpoch(long slotId) {
+            int row = rowOf(slotId);
+            if (row < 0) return 0L;
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            int r = row & PAGE_MASK;
+            long created = page.createdEpochs[r];
+            VarHandle.acquireFence();
+            return page.slotIds[r] == slotId ? created : 0L;
+        }
+
+        @Override
+        public long deactivatedEpoch(long slotId) {
+            int row = rowOf(slotId);
+            if (row < 0) return Long.MAX_VALUE;
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            int r = row & PAGE_MASK;
+            long deactivated = (long) EPOCHS.getAcquire(page.deactivatedEpochs, r);
+            VarHandle.acquireFence();
+            return page.slotIds[r] == slotId ? deactivated : Long.MAX_VALUE;
+        }
+
+        /** Only ever called by one thread at a time (the compactor or recovery). */
+        @Override
+        public boolean remove(long slotId) {
+            long index = slotId - firstId;
+            int row = rowOf(slotId);
+            if (row < 0) return false;
+            Page page = pages.get(row >>> PAGE_SHIFT);
+            int r = row & PAGE_MASK;
+            if ((long) SLOT_IDS.getAcquire(page.slotIds, r) != slotId) return false;
+            SLOT_IDS.setVolatile(page.slotIds, r, 0L);
+            FLAGS.setVolatile(page.flags, r, (byte) 0);
+            page.hashes[r] = null;
+            AtomicReferenceArray<IdRun> dir = directory;
+            IdRun run = dir.get(slot(dir, index >>> PAGE_SHIFT));
+            ROWS.setRelease(run.rows, (int) index & PAGE_MASK, 0);
+            if (run.live.decrementAndGet() == 0 && run.number < frontier.get()) dropRun(run);
+            synchronized (limbo) {
+                limbo.push(row);
+            }
+            size.decrement();
+            return true;
+        }
+
+        @Override
+        public int recycle() {
+            int n;
+            synchronized (limbo) {
+                n = limbo.size();
+                synchronized (freeRows) {
+                    while (!limbo.isEmpty()) freeRows.push(limbo.pop());
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int size() {
+            return size.intValue();
+        }
+
+        @Override
+        public void forEach(SlotVisitor visitor) {
+            int rows = Math.min(nextRow.get(), maxRows);
+            for (int row = 0; row < rows; row++) {
+                Page page = pages.get(row >>> PAGE_SHIFT);
+                if (page == null) continue;
+                int r = row & PAGE_MASK;
+                byte f = flags(page, r);
+                if ((f & PRESENT) == 0) continue;
+                visitor.visit(page.slotIds[r], page.hashes[r], page.campaignIds[r],
+                        TIERS[(f & 0xff) >>> TIER_SHIFT], page.cpcNanos[r], page.createdAt[r],
+                        (f & ACTIVE) != 0);
+            }
+        }
+
+        @Override
+        public void forEachAt(long epoch, SlotVisitor visitor) {
+            forEachAt(epoch, 0, footprint(), visitor);
+        }
+
+        /** Splits by row range, halving down to single rows. */
+        @Override
+        public SlotSplit split() {
+            return new RowSplit(0, footprint());
+        }
+
+        /** Copies each row out and re-checks its slot id, as {@link #get} does, so rows reused mid-walk are skipped. */
+        private void forEachAt(long epoch, int from, int to, SlotVisitor visitor) {
+            for (int row = from; row < to; row++) {
+                Page page = pages.get(row >>> PAGE_SHIFT);
+                if (page == null) continue;
+                int r = row & PAGE_MASK;
+                long slotId = (long) SLOT_IDS.getAcquire(page.slotIds, r);
+                byte f = flags(page, r);
+                if ((f & PRESENT) == 0) continue;
+                long created = page.createdEpochs[r];
+                if (created > epoch) continue;
+                long deactivated = (long) EPOCHS.getAcquire(page.deactivatedEpochs, r);
+                KeywordHashKey hash = page.hashes[r];
+                long campaignId = page.campaignIds[r];
+                long cpcNanos = page.cpcNanos[r];
+                long createdAt = page.createdAt[r];
+                VarHandle.acquireFence();
+                if (page.slotIds[r] != slotId || hash == null) continue;
+                visitor.visit(slotId, hash, campaignId, TIERS[(f & 0xff) >>> TIER_SHIFT], cpcNanos, createdAt,
+                        deactivated > epoch);
+            }
+        }
+
+        /** Rows handed out so far, free or not; what the store's memory is sized by. */
+        @Override
+        public int footprint() {
+            return Math.min(nextRow.get(), maxRows);
+        }
+
+        private final class RowSplit implements SlotSplit {
+            private final int from;
+            private int to;
+
+            RowSplit(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            public SlotSplit trySplit() {
+                if (to - from < 2) return null;
+                int mid = (from + to) >>> 1;
+                RowSplit upper = new RowSplit(mid, to);
+                to = mid;
+                return upper;
+            }
+
+            @Override
+            public long estimateSize() {
+                return to - from;
+            }
+
+            @Override
+            public void forEachAt(long epoch, SlotVisitor visitor) {
+                ColumnarSlotStore.this.forEachAt(epoch, from, to, visitor);
+            }
+        }
+
+        private int takeRow() {
+            synchronized (freeRows) {
+                if (!freeRows.isEmpty()) return freeRows.pop();
+            }
+            int row = nextRow.getAndIncrement();
+            if (row >= maxRows) {
+                throw new IllegalStateException("addy: columnar store full");
+            }
+            return row;
+        }
+
+        private int rowOf(long slotId) {
+            long index = slotId - firstId;
+            if (index < 0) return -1;
+            AtomicReferenceArray<IdRun> dir = directory;
+            IdRun run = dir.get(slot(dir, index >>> PAGE_SHIFT));
+            if (run == null || run.number != index >>> PAGE_SHIFT) return -1;
+            return (int) ROWS.getAcquire(run.rows, (int) index & PAGE_MASK) - 1;
+        }
+
+        /**
+         * The run for {@code number} with one more live slot counted. A put that loses
+         * the race with {@link #dropRun} finds the run dead and installs a fresh one.
+         * Moving the frontier past a run that is already empty drops it.
+         */
+        private IdRun enter(long number) {
+            for (;;) {
+                IdRun run = runFor(number);
+                int live = run.live.get();
+                if (live >= 0 && run.live.compareAndSet(live, live + 1)) {
+                    long front = frontier.get();
+                    while (number > front && !frontier.compareAndSet(front, number)) front = frontier.get();
+                    if (number > front && front >= 0) {
+                        AtomicReferenceArray<IdRun> dir = directory;
+                        IdRun behind = dir.get(slot(dir, front));
+                        if (behind != null && behind.number == front) dropRun(behind);
+                    }
+                    return run;
+                }
+            }
+        }
+
+        private IdRun runFor(long number) {
+            AtomicReferenceArray<IdRun> dir = directory;
+            IdRun run = dir.get(slot(dir, number));
+            if (run != null && run.number == number && run.live.get() >= 0) return run;
+            synchronized (this) {
+                dir = directory;
+                run = dir.get(slot(dir, number));
+                if (run != null && run.number == number && run.live.get() >= 0) return run;
+                if (run != null && run.number == number) run = null;
+                while (run != null) {
+                    dir = grow(dir);
+                    run = dir.get(slot(dir, number));
+                }
+                run = new IdRun(number);
+                dir.set(slot(dir, number), run);
+                directory = dir;
+                return run;
+            }
+        }
+
+        /** Doubles the directory until every live run has a slot of its own. */
+        private static AtomicReferenceArray<IdRun> grow(AtomicReferenceArray<IdRun> dir) {
+            for (int length = dir.length() * 2; ; length *= 2) {
+                AtomicReferenceArray<IdRun> next = new AtomicReferenceArray<>(length);
+                boolean clash = false;
+                for (int i = 0; i < dir.length() && !clash; i++) {
+                    IdRun run = dir.get(i);
+                    if (run == null) continue;
+                    int s = slot(next, run.number);
+                    clash = next.get(s) != null;
+                    next.set(s, run);
+                }
+                if (!clash) return next;
+            }
+        }
+
+        /** Drops {@code run} if it is still empty; marking it dead first turns away any put already holding it. */
+        private synchronized void dropRun(IdRun run) {
+            if (!run.live.compareAndSet(0, -1)) return;
+            AtomicReferenceArray<IdRun> dir = directory;
+            dir.compareAndSet(slot(dir, run.number), run, null);
+        }
+
+        private static int slot(AtomicReferenceArray<IdRun> dir, long number) {
+            return (int) number & (dir.length() - 1);
+        }
+
+        private static byte flags(Page page, int r) {
+            return (byte) FLAGS.getAcquire(page.flags, r);
+        }
+
+        private static final class Page {
+            final long[] slotIds = new long[PAGE_ROWS];
+            final long[] campaignIds = new long[PAGE_ROWS];
+            final long[] cpcNanos = new long[PAGE_ROWS];
+            final long[] createdAt = new long[PAGE_ROWS];
+            final long[] createdEpochs = new long[PAGE_ROWS];
+            final long[] deactivatedEpochs = new long[PAGE_ROWS];
+            final byte[] flags = new byte[PAGE_ROWS];
+            final KeywordHashKey[] hashes = new KeywordHashKey[PAGE_ROWS];
+        }
+
+        /** Rows (plus one; zero is unmapped) of the ids {@code number << PAGE_SHIFT} onwards. */
+        private static final class IdRun {
+            final long number;
+            final int[] rows = new int[PAGE_ROWS];
+            /** Slots put and not yet removed; -1 once the run is dropped. */
+            final AtomicInteger live = new AtomicInteger();
+
+            IdRun(long number) {
+                this.number = number;
+            }
+        }
+
+        /** Row contents copied at lookup; only the active bit is read live, and only while the row is still this slot's. */
+        private static final class View implements KeywordSlotView {
+            private final long slotId;
+            private final Page page;
+            private final int row;
+            private final KeywordHashKey hash;
+            private final long campaignId;
+            private final BidTierKind tier;
+            private final long cpcNanos;
+            private final long createdAtMillis;
+
+            View(long slotId, Page page, int row, KeywordHashKey hash, long campaignId, BidTierKind tier,
+                 long cpcNanos, long createdAtMillis) {
+                this.slotId = slotId;
+                this.page = page;
+                this.row = row;
+                this.hash = hash;
+                this.campaignId = campaignId;
+                this.tier = tier;
+                this.cpcNanos = cpcNanos;
+                this.createdAtMillis = createdAtMillis;
+            }
+
+            @Override public long getSlotId() { return slotId; }
+            @Override public String getKeywordHash() { return hash.toHex(); }
+            @Override public KeywordHashKey getKeywordHashKey() { return hash; }
+            @Override public long getCampaignId() { return campaignId; }
+            @Override public BidTierKind getTier() { return tier; }
+            @Override public long getCpcNanos() { return cpcNanos; }
+            @Override public Instant getCreatedAt() { return Instant.ofEpochMilli(createdAtMillis); }
+
+            @Override
+            public boolean isActive() {
+                return (flags(page, row) & ACTIVE) != 0 && (long) SLOT_IDS.getAcquire(page.slotIds, row) == slotId;
+            }
+        }
+    }
+
+    /** Growable stack of ints; callers synchronize on it. */
+    static final class IntStack {
+        private int[] items = new int[16];
+        private int size;
+
+        void push(int value) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = value;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Spend recording (simulated; real EVM would move funds)
+    // -------------------------------------------------------------------------
+
+    public void recordSpend(long campaignId, long amountNanos) {
+        if (!METRICS_ENABLED) {
+            doRecordSpend(campaignId, amountNanos);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            doRecordSpend(campaignId, amountNanos);
+        } finally {
+            metrics.record(LatencyOp.RECORD_SPEND, System.nanoTime() - start);
+        }
+    }
+
+    private void doRecordSpend(long campaignId, long amountNanos) {
+        if (amountNanos <= 0) {
+            throw new IllegalArgumentException("addy: spend amount must be positive");
+        }
+        CampaignRecord camp = campaigns.get(campaignId);
+        if (camp == null) {
+            throw new IllegalArgumentException("addy: campaign not found " + campaignId);
+        }
+        Persistence p = persistence;
+        long lsn = 0L;
+        if (p != null) p.enter();
+        long epoch = epochs.catchUp(epochs.enter(), camp.createdEpoch());
+        try {
+            if (p != null) lsn = p.wal.logSpend(campaignId, amountNanos);
+            camp.addSpend(epochs, epoch, amountNanos);
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        appendAudit(AuditAction.SPEND, campaignId, amountNanos, 0L, null);
+        if (METRICS_ENABLED) metrics.count(MetricOp.SPEND, 1);
+        if (p != null) p.awaitDurable(lsn);
+    }
+
+    /**
+     * Ingests a batch of spend events; {@code campaignIds[i]} spent {@code amounts[i]}.
+     * The whole batch is validated before any of it is applied. Runs of events for the
+     * same campaign are folded into one accumulator add, and the batch writes one log
+     * record and one audit record.
+     */
+    public void recordSpendBatch(long[] campaignIds, long[] amounts) {
+        if (campaignIds == null || amounts == null || campaignIds.length != amounts.length) {
+            throw new IllegalArgumentException("addy: spend batch arrays must have equal length");
+        }
+        int n = campaignIds.length;
+        if (n == 0) return;
+        CampaignRecord[] targets = new CampaignRecord[n];
+        CampaignRecord last = null;
+        long total = 0L;
+        long newest = 0L;
+        for (int i = 0; i < n; i++) {
+            if (amounts[i] <= 0) {
+                throw new IllegalArgumentException("addy: spend amount must be positive");
+            }
+            if (last == null || last.getCampaignId() != campaignIds[i]) {
+                last = campaigns.get(campaignIds[i]);
+                if (last == null) {
+                    throw new IllegalArgumentException("addy: campaign not found " + campaignIds[i]);
+                }
+                newest = Math.max(newest, last.createdEpoch());
+            }
+            targets[i] = last;
+            total += amounts[i];
+        }
+        Persistence p = persistence;
+        long lsn = 0L;
+        if (p != null) p.enter();
+        long epoch = epochs.catchUp(epochs.enter(), newest);
+        try {
+            if (p != null) lsn = p.wal.logSpendBatch(campaignIds, amounts);
+            int i = 0;
+            while (i < n) {
+                CampaignRecord camp = targets[i];
+                long run = 0L;
+                do {
+                    run += amounts[i++];
+                } while (i < n && targets[i] == camp);
+                camp.addSpend(epochs, epoch, run);
+            }
+        } finally {
+            epochs.exit(epoch);
+            if (p != null) p.exit();
+        }
+        appendAudit(AuditAction.SPEND_BATCH, 0L, total, n, null);
+        if (METRICS_ENABLED) metrics.count(MetricOp.SPEND_BATCH, n);
+        if (p != null) p.awaitDurable(lsn);
+    }
+
+    // -------------------------------------------------------------------------
+    // Audit log (bounded)
+    // -------------------------------------------------------------------------
+
+    private void appendAudit(AuditAction action, long subjectId, long argA, long argB, Object ref) {
+        auditLog.append(now(), action, subjectId, argA, argB, ref);
+    }
+
+    public List<AuditEntry> getAuditTail(int maxEntries) {
+        return auditLog.tail(Math.min(maxEntries, AUDIT_LOG_ENTRIES));
+    }
+
+    /**
+     * Starts draining every audit record, untruncated, to an append-only memory-mapped
+     * file. Once enabled, a writer that would lap the drain waits for it instead of
+     * overwriting, so the file holds the complete history.
+     */
+    public synchronized void enableAuditSpill(Path file) {
+        if (auditSpill != null) {
+            throw new IllegalStateException("addy: audit spill already enabled");
+        }
+        try {
+            auditSpill = new AuditSpill(auditLog, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("addy: cannot open audit spill " + file, e);
+        }
+    }
+
+    /**
+     * Why the audit spill stopped, or null while it runs. A spill that fails (a full
+     * disk, say) releases writers and stops draining; the file then ends at the last
+     * record written before the failure.
+     */
+    public Throwable getAuditSpillFailure() {
+        AuditSpill spill = auditSpill;
+        return spill == null ? null : spill.failure;
+    }
+
+    /** Reads back a spill file written by {@link #enableAuditSpill(Path)}. */
+    public static List<AuditEntry> readAuditSpill(Path file) {
+        try {
+            return AuditSpill.read(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("addy: cannot read audit spill " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        Ticker.unregister(timers);
+        if (timerThread != null) awaitShutdown(timerThread);
+        closeChangeFeed();
+        if (persistence != null) {
+            persistence.close();
+        }
+        AuditSpill spill = auditSpill;
+        if (spill != null) {
+            auditSpill = null;
+            spill.close();
+        }
+    }
+
+    /** Lets a task already running finish (it sees {@link #closed} and stops early) before persistence closes. */
+    private static void awaitShutdown(ExecutorService executor) {
+        executor.shutdown();
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                if (executor.awaitTermination(1L, TimeUnit.SECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /** Spin, then yield, then park: waits stay cheap when short and polite when not. */
+    static void backoff(int spins) {
+        if (spins < 64) {
+            Thread.onSpinWait();
+        } else if (spins < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000L);
+        }
+    }
+
+    /**
+     * Audit actions. Details are stored as two numeric arguments plus an optional
+     * reference and only rendered to text when read, so appends build no strings.
+     */
+    enum AuditAction {
+        CAMPAIGN_CREATE,
+        CAMPAIGN_PHASE,
+        SLOT_ALLOC,
+        SLOT_DEACT,
+        SPEND,
+        SLOT_BATCH,
+        SPEND_BATCH;
+
+        private static final AuditAction[] VALUES = values();
+
+        String detail(long argA, long argB, Object ref) {
+            return switch (this) {
+                case CAMPAIGN_CREATE -> "owner=" + ref + ",zone=" + ThrottleZone.values()[(int) argA];
+                case CAMPAIGN_PHASE -> CampaignPhase.values()[(int) argA] + "->" + CampaignPhase.values()[(int) argB];
+                case SLOT_ALLOC -> "camp=" + argA + ",tier=" + BidTierKind.values()[(int) argB];
+                case SLOT_DEACT -> "";
+                case SLOT_BATCH -> "first=" + argA + ",count=" + argB;
+                case SPEND_BATCH -> "events=" + argB + ",total=" + argA;
+                case SPEND -> "amount=" + argA;
+            };
+        }
+    }
+
+    /**
+     * Preallocated multi-producer ring of fixed-width audit records kept in parallel
+     * columns. A producer claims a sequence with one getAndIncrement, marks the cell
+     * busy, fills the columns and publishes the sequence with a release store. Readers
+     * validate the cell sequence before and after copying (a seqlock), so they never
+     * block writers and never return a half-written record.
+     */
+    static final class AuditRing {
+        private static final long BUSY = Long.MIN_VALUE;
+
+        private final int mask;
+        private final AtomicLong cursor = new AtomicLong();
+        private final AtomicLongArray sequences;
+        private final long[] timestamps;
+        private final byte[] actions;
+        private final long[] subjects;
+        private final long[] argsA;
+        private final long[] argsB;
+        private final Object[] refs;
+        /** Lowest sequence a spill drain still needs; writers may not lap it. */
+        private final AtomicLong drainFloor = new AtomicLong(Long.MAX_VALUE);
+
+        AuditRing(int capacity) {
+            if (Integer.bitCount(capacity) != 1) {
+                throw new IllegalArgumentException("addy: audit ring capacity must be a power of two");
+            }
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i - (long) capacity);
+            }
+            this.timestamps = new long[capacity];
+            this.actions = new byte[capacity];
+            this.subjects = new long[capacity];
+            this.argsA = new long[capacity];
+            this.argsB = new long[capacity];
+            this.refs = new Object[capacity];
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        long head() {
+            return cursor.get();
+        }
+
+        void append(long timestamp, AuditAction action, long subjectId, long argA, long argB, Object ref) {
+            long seq = cursor.getAndIncrement();
+            int i = (int) seq & mask;
+            long previous = seq - capacity();
+            for (int spins = 0; sequences.get(i) != previous || previous >= drainFloor.get(); spins++) {
+                backoff(spins);
+            }
+            sequences.set(i, BUSY);
+            VarHandle.storeStoreFence();
+            timestamps[i] = timestamp;
+            actions[i] = (byte) action.ordinal();
+            subjects[i] = subjectId;
+            argsA[i] = argA;
+            argsB[i] = argB;
+            refs[i] = ref;
+            sequences.setRelease(i, seq);
+        }
+
+        /**
+         * Copies record {@code seq} into {@code out}, or returns false if it is not yet
+         * published or has already been overwritten.
+         */
+        boolean read(long seq, Slot out) {
+            int i = (int) seq & mask;
+            if (sequences.getAcquire(i) != seq) return false;
+            out.timestamp = timestamps[i];
+            out.action = AuditAction.VALUES[actions[i]];
+            out.subjectId = subjects[i];
+            out.argA = argsA[i];
+            out.argB = argsB[i];
+            out.ref = refs[i];
+            VarHandle.loadLoadFence();
+            return sequences.get(i) == seq;
+        }
+
+        /** True once record {@code seq} has been replaced by a later lap. */
+        boolean overwritten(long seq) {
+            return sequences.get((int) seq & mask) > seq;
+        }
+
+        /**
+         * Newest published records, oldest first. Records whose writers are still in
+         * flight are not visible yet and are skipped; the walk stops at the first record
+         * that has already been overwritten.
+         */
+        List<AuditEntry> tail(int maxEntries) {
+            long head = cursor.get();
+            if (maxEntries <= 0 || head == 0) return List.of();
+            int limit = Math.min(maxEntries, capacity());
+            List<AuditEntry> out = new ArrayList<>(limit);
+            Slot slot = new Slot();
+            for (long seq = head - 1; seq >= 0 && out.size() < limit; seq--) {
+                if (read(seq, slot)) {
+                    out.add(slot.toEntry());
+                } else if (overwritten(seq)) {
+                    break;
+                }
+            }
+            Collections.reverse(out);
+            return out;
+        }
+
+        static final class Slot {
+            long timestamp;
+            AuditAction action;
+            long subjectId;
+            long argA;
+            long argB;
+            Object ref;
+
+            AuditEntry toEntry() {
+                return new AuditEntry(timestamp, action.name(), subjectId, action.detail(argA, argB, ref));
+            }
+        }
+    }
+
+    /**
+     * Asynchronous drain from the audit ring into an append-only file, mapped in
+     * fixed-size regions. Record layout: timestamp, subject, argA, argB (longs),
+     * action+1 (short, so zero marks the end of data), reference length (short) and
+     * the reference text in UTF-8. If a write fails the drain records the error and
+     * lifts its floor rather than dying with it, since writers would otherwise wait
+     * on that floor forever.
+     */
+    static final class AuditSpill implements Runnable {
+        private static final long REGION_BYTES = 64L << 20;
+        private static final int FIXED_BYTES = 4 * Long.BYTES + 2 * Short.BYTES;
+        private static final int MAX_REF_BYTES = Short.MAX_VALUE;
+
+        private final AuditRing ring;
+        private final FileChannel channel;
+        private final Thread drainer;
+        private MappedByteBuffer region;
+        private long regionStart;
+        private volatile boolean running = true;
+        volatile Throwable failure;
+
+        AuditSpill(AuditRing ring, Path file) throws IOException {
+            this.ring = ring;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long end = 0L;
+            if (channel.size() > 0) {
+                end = scanEnd(channel);
+            }
+            mapAt(end);
+            ring.drainFloor.set(ring.head());
+            this.drainer = new Thread(this, "addy-audit-spill");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                drain();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                ring.drainFloor.set(Long.MAX_VALUE);
+            }
+        }
+
+        private void drain() {
+            AuditRing.Slot slot = new AuditRing.Slot();
+            int idle = 0;
+            while (true) {
+                long seq = ring.drainFloor.get();
+                if (seq < ring.head()) {
+                    if (ring.read(seq, slot)) {
+                        write(slot);
+                        ring.drainFloor.set(seq + 1);
+                        idle = 0;
+                    } else {
+                        backoff(idle++);
+                    }
+                } else if (!running) {
+                    break;
+                } else {
+                    backoff(idle++);
+                }
+            }
+        }
+
+        void close() {
+            running = false;
+            try {
+                drainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ring.drainFloor.set(Long.MAX_VALUE);
+            try {
+                if (failure == null) region.force();
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("addy: cannot close audit spill", e);
+            }
+        }
+
+        private void write(AuditRing.Slot slot) {
+            byte[] ref = slot.ref == null ? null : String.valueOf(slot.ref).getBytes(StandardCharsets.UTF_8);
+            int refLen = ref == null ? 0 : Math.min(ref.length, MAX_REF_BYTES);
+            int need = FIXED_BYTES + refLen;
+            if (region.remaining() < need) {
+                mapAt(regionStart + region.position());
+            }
+            region.putLong(slot.timestamp);
+            region.putLong(slot.subjectId);
+            region.putLong(slot.argA);
+            region.putLong(slot.argB);
+            region.putShort((short) (slot.action.ordinal() + 1));
+            region.putShort((short) refLen);
+            if (refLen > 0) region.put(ref, 0, refLen);
+        }
+
+        private void mapAt(long position) {
+            try {
+                if (region != null) region.force();
+                region = channel.map(FileChannel.MapMode.READ_WRITE, position, REGION_BYTES);
+                regionStart = position;
+            } catch (IOException e) {
+                throw new UncheckedIOException("addy: cannot map audit spill", e);
+            }
+        }
+
+        private static long scanEnd(FileChannel channel) throws IOException {
+            return walk(channel, null);
+        }
+
+        static List<AuditEntry> read(Path file) throws IOException {
+            List<AuditEntry> out = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                walk(channel, out);
+            }
+            return out;
+        }
+
+        /**
+         * Walks the records from the start of the file in windows of at most
+         * {@link #REGION_BYTES}, as the writer maps it, adding them to {@code out} if
+         * given; returns the offset just past the last complete record. A record cut
+         * by a window's end is read again from the start of the next window.
+         */
+        private static long walk(FileChannel channel, List<AuditEntry> out) throws IOException {
+            long size = channel.size();
+            long pos = 0L;
+            while (size - pos >= FIXED_BYTES) {
+                long len = Math.min(REGION_BYTES, size - pos);
+                boolean last = pos + len == size;
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                while (in.remaining() >= FIXED_BYTES) {
+                    int start = in.position();
+                    long timestamp = in.getLong();
+                    long subjectId = in.getLong();
+                    long argA = in.getLong();
+                    long argB = in.getLong();
+                    short action = in.getShort();
+                    int refLen = in.getShort();
+                    if (action <= 0 || action > AuditAction.VALUES.length || refLen < 0) return pos + start;
+                    if (in.remaining() < refLen) {
+                        if (last) return pos + start;
+                        in.position(start);
+                        break;
+                    }
+                    String ref = null;
+                    if (out == null) {
+                        in.position(in.position() + refLen);
+                    } else {
+                        if (refLen > 0) {
+                            byte[] b = new byte[refLen];
+                            in.get(b);
+                            ref = new String(b, StandardCharsets.UTF_8);
+                        }
+                        AuditAction a = AuditAction.VALUES[action - 1];
+                        out.add(new AuditEntry(timestamp, a.name(), subjectId, a.detail(argA, argB, ref)));
+                    }
+                }
+                pos += in.position();
+            }
+            return pos;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Change feed (push-based, one cursor per subscriber over the audit ring)
+    // -------------------------------------------------------------------------
+
+    /**
+     * One mutation, as seen on the change feed. {@link #getSequence()} is the position
+     * in the engine's feed; it increases by one per event, so a gap means events were
+     * lost. Accessors that do not apply to the event's kind return zero or null.
+     */
+    public static final class ChangeEvent {
+        private final long sequence;
+        private final long timestamp;
+        private final AuditAction action;
+        private final ChangeKind kind;
+        private final long subjectId;
+        private final long argA;
+        private final long argB;
+        private final Object ref;
+
+        ChangeEvent(long sequence, AuditRing.Slot slot) {
+            this.sequence = sequence;
+            this.timestamp = slot.timestamp;
+            this.action = slot.action;
+            this.kind = kindOf(slot.action);
+            this.subjectId = slot.subjectId;
+            this.argA = slot.argA;
+            this.argB = slot.argB;
+            this.ref = slot.ref;
+        }
+
+        /** Spelled out rather than by ordinal, so reordering either enum cannot mislabel events. */
+        private static ChangeKind kindOf(AuditAction action) {
+            return switch (action) {
+                case CAMPAIGN_CREATE -> ChangeKind.CAMPAIGN_CREATE;
+                case CAMPAIGN_PHASE -> ChangeKind.PHASE_CHANGE;
+                case SLOT_ALLOC -> ChangeKind.SLOT_ALLOC;
+                case SLOT_DEACT -> ChangeKind.SLOT_DEACT;
+                case SPEND -> ChangeKind.SPEND;
+                case SLOT_BATCH -> ChangeKind.SLOT_BATCH;
+                case SPEND_BATCH -> ChangeKind.SPEND_BATCH;
+            };
+        }
+
+        public long getSequence() { return sequence; }
+        public long getTimestamp() { return timestamp; }
+        public ChangeKind getKind() { return kind; }
+
+        public long getCampaignId() {
+            return switch (kind) {
+                case CAMPAIGN_CREATE, PHASE_CHANGE, SPEND, SLOT_BATCH -> subjectId;
+                case SLOT_ALLOC -> argA;
+                default -> 0L;
+            };
+        }
+
+        /** The slot, or the first slot of a {@link ChangeKind#SLOT_BATCH}. */
+        public long getSlotId() {
+            return switch (kind) {
+                case SLOT_ALLOC, SLOT_DEACT -> subjectId;
+                case SLOT_BATCH -> argA;
+                default -> 0L;
+            };
+        }
+
+        /** Slots in a batch or spend events folded into a spend batch; one otherwise. */
+        public int getCount() {
+            return kind == ChangeKind.SLOT_BATCH || kind == ChangeKind.SPEND_BATCH ? (int) argB : 1;
+        }
+
+        public long getAmountNanos() {
+            return kind == ChangeKind.SPEND || kind == ChangeKind.SPEND_BATCH ? argA : 0L;
+        }
+
+        public ThrottleZone getZone() {
+            return kind == ChangeKind.CAMPAIGN_CREATE ? ThrottleZone.values()[(int) argA] : null;
+        }
+
+        public String getOwnerRef() {
+            return kind == ChangeKind.CAMPAIGN_CREATE ? String.valueOf(ref) : null;
+        }
+
+        public CampaignPhase getFromPhase() {
+            return kind == ChangeKind.PHASE_CHANGE ? CampaignPhase.values()[(int) argA] : null;
+        }
+
+        public CampaignPhase getToPhase() {
+            return kind == ChangeKind.PHASE_CHANGE ? CampaignPhase.values()[(int) argB] : null;
+        }
+
+        public BidTierKind getTier() {
+            return kind == ChangeKind.SLOT_ALLOC ? BidTierKind.values()[(int) argB] : null;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + " " + kind + " " + subjectId + " " + action.detail(argA, argB, ref);
+        }
+    }
+
+    /** Sequence the next change will get; pass it to {@link #changeFeed(long, int)} to resume there. */
+    public long getChangeSequence() {
+        return auditLog.head();
+    }
+
+    /** Every change from now on, in batches of up to {@link #CHANGE_FEED_BATCH} events. */
+    public Flow.Publisher<List<ChangeEvent>> changeFeed() {
+        return subscriber -> subscribeChanges(subscriber, auditLog.head(), CHANGE_FEED_BATCH);
+    }
+
+    /**
+     * Changes from {@code fromSequence} on, at most {@code maxBatch} per
+     * {@code onNext}. Each subscriber reads the audit ring through its own cursor on
+     * its own task and is paced only by its own demand: mutations never wait for a
+     * subscriber. One that falls a whole audit ring behind (see
+     * {@link Options#withAuditRingCapacity(int)}) has lost events, and gets {@code onError} naming the first missing sequence
+     * instead of a silent gap.
+     */
+    public Flow.Publisher<List<ChangeEvent>> changeFeed(long fromSequence, int maxBatch) {
+        if (fromSequence < 0) {
+            throw new IllegalArgumentException("addy: change sequence must not be negative");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("addy: change batch must be positive");
+        }
+        return subscriber -> subscribeChanges(subscriber, fromSequence, maxBatch);
+    }
+
+    private void subscribeChanges(Flow.Subscriber<? super List<ChangeEvent>> subscriber, long from, int maxBatch) {
+        if (subscriber == null) {
+            throw new NullPointerException("addy: subscriber required");
+        }
+        FeedSubscription subscription = new FeedSubscription(auditLog, subscriber, from, maxBatch);
+        ExecutorService executor;
+        synchronized (this) {
+            if (feedClosed) {
+                executor = null;
+            } else {
+                if (feedExecutor == null) feedExecutor = newTaskExecutor("addy-feed");
+                executor = feedExecutor;
+                feedSubscriptions.add(subscription);
+            }
+        }
+        subscriber.onSubscribe(subscription);
+        if (executor == null) {
+            subscriber.onComplete();
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                subscription.run();
+            } finally {
+                feedSubscriptions.remove(subscription);
+            }
+        });
+    }
+
+    private void closeChangeFeed() {
+        ExecutorService executor;
+        synchronized (this) {
+            feedClosed = true;
+            executor = feedExecutor;
+        }
+        for (FeedSubscription subscription : feedSubscriptions) subscription.finish();
+        if (executor != null) executor.shutdown();
+    }
+
+    /**
+     * One subscriber's cursor. Everything the subscriber sees is signalled from the
+     * task running {@link #run()}, so signals are serial. With no demand it parks
+     * until {@code request}; with demand but nothing new it polls the ring head,
+     * spinning briefly and then sleeping up to {@link #MAX_IDLE_NANOS}, since
+     * producers never signal it.
+     */
+    static final class FeedSubscription implements Flow.Subscription, Runnable {
+        private static final long MAX_IDLE_NANOS = 1_000_000L;
+
+        private final AuditRing ring;
+        private final Flow.Subscriber<? super List<ChangeEvent>> subscriber;
+        private final int maxBatch;
+        private final AtomicLong demand = new AtomicLong();
+        private long cursor;
+        private volatile Thread drainer;
+        private volatile boolean cancelled;
+        private volatile boolean badRequest;
+        private volatile boolean finishing;
+
+        FeedSubscription(AuditRing ring, Flow.Subscriber<? super List<ChangeEvent>> subscriber, long from,
+                         int maxBatch) {
+            this.ring = ring;
+            this.subscriber = subscriber;
+            this.cursor = from;
+            this.maxBatch = maxBatch;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = true;
+            } else {
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            }
+            wake();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            wake();
+        }
+
+        /** Delivers what is already published, then completes. */
+        void finish() {
+            finishing = true;
+            wake();
+        }
+
+        private void wake() {
+            Thread t = drainer;
+            if (t != null) LockSupport.unpark(t);
+        }
+
+        @Override
+        public void run() {
+            drainer = Thread.currentThread();
+            AuditRing.Slot slot = new AuditRing.Slot();
+            long idleNanos = 0L;
+            while (!cancelled) {
+                if (badRequest) {
+                    cancelled = true;
+                    subscriber.onError(new IllegalArgumentException("addy: requested demand must be positive"));
+                    return;
+                }
+                long head = ring.head();
+                if (cursor < head - ring.capacity()) {
+                    overrun();
+                    return;
+                }
+                boolean drained = cursor >= head;
+                if (drained && finishing) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                if (demand.get() == 0) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                List<ChangeEvent> batch = drained ? List.of() : nextBatch(head, slot);
+                if (batch == null) {
+                    overrun();
+                    return;
+                }
+                if (batch.isEmpty()) {
+                    idleNanos = Math.min(MAX_IDLE_NANOS, Math.max(idleNanos * 2, 1_000L));
+                    LockSupport.parkNanos(this, idleNanos);
+                    continue;
+                }
+                idleNanos = 0L;
+                if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                try {
+                    subscriber.onNext(batch);
+                } catch (RuntimeException e) {
+                    cancelled = true;
+                    return;
+                }
+            }
+        }
+
+        /** Published events from the cursor on, stopping at one still being written; null once lapped. */
+        private List<ChangeEvent> nextBatch(long head, AuditRing.Slot slot) {
+            int n = (int) Math.min(maxBatch, head - cursor);
+            List<ChangeEvent> batch = new ArrayList<>(n);
+            while (batch.size() < n) {
+                if (ring.read(cursor, slot)) {
+                    batch.add(new ChangeEvent(cursor, slot));
+                    cursor++;
+                } else if (ring.overwritten(cursor)) {
+                    return null;
+                } else {
+                    break;
+                }
+            }
+            return batch;
+        }
+
+        private void overrun() {
+            cancelled = true;
+            subscriber.onError(new IllegalStateException(
+                    "addy: change feed subscriber fell behind; events lost from sequence " + cursor));
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Metrics (operation counters, rejection reasons, latency histograms)
+    // -------------------------------------------------------------------------
+
+    /** Pairs a rejection with its reason counter; call sites read {@code throw reject(...)}. */
+    private RuntimeException reject(RejectReason reason, RuntimeException e) {
+        if (METRICS_ENABLED) metrics.reject(reason);
+        return e;
+    }
+
+    /**
+     * Point-in-time copy of the counters and latency percentiles. Empty when metrics
+     * are disabled. Counters are read without a global pause, so a snapshot taken under
+     * load can be a few operations apart between fields.
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        if (!METRICS_ENABLED) return MetricsSnapshot.EMPTY;
+        return metrics.snapshot();
+    }
+
+    public static final class MetricsSnapshot {
+        static final MetricsSnapshot EMPTY = new MetricsSnapshot(new long[MetricOp.values().length],
+                new long[RejectReason.values().length], emptyLatencies());
+
+        private final long[] ops;
+        private final long[] rejects;
+        private final LatencySummary[] latencies;
+
+        MetricsSnapshot(long[] ops, long[] rejects, LatencySummary[] latencies) {
+            this.ops = ops;
+            this.rejects = rejects;
+            this.latencies = latencies;
+        }
+
+        public long getOpCount(MetricOp op) { return ops[op.ordinal()]; }
+        public long getRejectCount(RejectReason reason) { return rejects[reason.ordinal()]; }
+
+        public long getTotalRejects() {
+            long total = 0L;
+            for (long r : rejects) total += r;
+            return total;
+        }
+
+        public LatencySummary getLatency(LatencyOp op) { return latencies[op.ordinal()]; }
+
+        private static LatencySummary[] emptyLatencies() {
+            LatencySummary[] out = new LatencySummary[LatencyOp.values().length];
+            Arrays.fill(out, new LatencySummary(0L, 0L, 0L, 0L, 0L, 0L));
+            return out;
+        }
+    }
+
+    /** Percentiles are bucket upper bounds, accurate to within 1/8 of the value. */
+    public static final class LatencySummary {
+        private final long count;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+
+        LatencySummary(long count, long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+            this.count = count;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getP50Nanos() { return p50Nanos; }
+        public long getP90Nanos() { return p90Nanos; }
+        public long getP99Nanos() { return p99Nanos; }
+        public long getP999Nanos() { return p999Nanos; }
+        public long getMaxNanos() { return maxNanos; }
+    }
+
+    static final class Metrics {
+        private final LongAdder[] ops = adders(MetricOp.values().length);
+        private final LongAdder[] rejects = adders(RejectReason.values().length);
+        private final LatencyHistogram[] latencies = new LatencyHistogram[LatencyOp.values().length];
+
+        Metrics() {
+            for (int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
+        }
+
+        private static LongAdder[] adders(int n) {
+            LongAdder[] out = new LongAdder[n];
+            for (int i = 0; i < n; i++) out[i] = new LongAdder();
+            return out;
+        }
+
+        void count(MetricOp op, long n) {
+            ops[op.ordinal()].add(n);
+        }
+
+        void reject(RejectReason reason) {
+            rejects[reason.ordinal()].increment();
+        }
+
+        void record(LatencyOp op, long nanos) {
+            latencies[op.ordinal()].record(nanos);
+        }
+
+        MetricsSnapshot snapshot() {
+            long[] opCounts = new long[ops.length];
+            for (int i = 0; i < ops.length; i++) opCounts[i] = ops[i].sum();
+            long[] rejectCounts = new long[rejects.length];
+            for (int i = 0; i < rejects.length; i++) rejectCounts[i] = rejects[i].sum();
+            LatencySummary[] summaries = new LatencySummary[latencies.length];
+            for (int i = 0; i < latencies.length; i++) summaries[i] = latencies[i].summarize();
+            return new MetricsSnapshot(opCounts, rejectCounts, summaries);
+        }
+    }
+
+    /**
+     * Log-linear histogram: each power of two is split into {@code SUB_BUCKETS} linear
+     * buckets, so any recorded value lands in a bucket no wider than 1/8 of it. Counts
+     * live in a few stripes picked by thread id, so recording is one uncontended
+     * {@code getAndIncrement} and never allocates.
+     */
+    static final class LatencyHistogram {
+        static final int SUB_BITS = 3;
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+        static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+        static final int STRIPES = 4;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * STRIPES);
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            counts.getAndIncrement(stripe * BUCKETS + bucketOf(nanos));
+            long m = max.get();
+            while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exp = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            int sub = (int) (value >>> exp) & (SUB_BUCKETS - 1);
+            return (exp + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exp = bucket / SUB_BUCKETS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << exp) - 1;
+        }
+
+        LatencySummary summarize() {
+            long[] merged = new long[BUCKETS];
+            long total = 0L;
+            for (int s = 0; s < STRIPES; s++) {
+                for (int b = 0; b < BUCKETS; b++) {
+                    long c = counts.get(s * BUCKETS + b);
+                    merged[b] += c;
+                    total += c;
+                }
+            }
+            long maxNanos = max.get();
+            return new LatencySummary(total, percentile(merged, total, 0.50, maxNanos),
+                    percentile(merged, total, 0.90, maxNanos), percentile(merged, total, 0.99, maxNanos),
+                    percentile(merged, total, 0.999, maxNanos), maxNanos);
+        }
+
+        private static long percentile(long[] merged, long total, double q, long maxNanos) {
+            if (total == 0) return 0L;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0L;
+            for (int b = 0; b < merged.length; b++) {
+                seen += merged[b];
+                if (seen >= rank) return Math.min(upperBound(b), maxNanos);
+            }
+            return maxNanos;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Persistence (write-ahead log, snapshots, recovery)
+    // -------------------------------------------------------------------------
+
+    public static final class RecoveryStats {
+        static final RecoveryStats NONE = new RecoveryStats(0L, 0, 0, 0L, 0L, 0L);
+
+        private final long snapshotLsn;
+        private final int campaignsLoaded;
+        private final int slotsLoaded;
+        private final long recordsReplayed;
+        private final long snapshotLoadNanos;
+        private final long replayNanos;
+
+        public RecoveryStats(long snapshotLsn, int campaignsLoaded, int slotsLoaded, long recordsReplayed,
+                             long snapshotLoadNanos, long replayNanos) {
+            this.snapshotLsn = snapshotLsn;
+            this.campaignsLoaded = campaignsLoaded;
+            this.slotsLoaded = slotsLoaded;
+            this.recordsReplayed = recordsReplayed;
+            this.snapshotLoadNanos = snapshotLoadNanos;
+            this.replayNanos = replayNanos;
+        }
+
+        public long getSnapshotLsn() { return snapshotLsn; }
+        public int getCampaignsLoaded() { return campaignsLoaded; }
+        public int getSlotsLoaded() { return slotsLoaded; }
+        public long getRecordsReplayed() { return recordsReplayed; }
+        public long getSnapshotLoadNanos() { return snapshotLoadNanos; }
+        public long getReplayNanos() { return replayNanos; }
+    }
+
+    /** What the last construction recovered from the persistence directory. */
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    /**
+     * Writes a snapshot and truncates the log behind it. Writers are held at the
+     * gate only while the log is rotated and a read snapshot is opened; the state is
+     * copied into the mapped file from that snapshot while they carry on.
+     */
+    public void checkpoint() {
+        Persistence p = persistence;
+        if (p == null) {
+            throw new IllegalStateException("addy: persistence not enabled");
+        }
+        try {
+            p.checkpoint(this);
+        } catch (IOException e) {
+            throw new UncheckedIOException("addy: checkpoint failed", e);
+        }
+    }
+
+    private Persistence openPersistence(Options options) {
+        try {
+            Path dir = options.getPersistenceDir();
+            Files.createDirectories(dir);
+            long lastLsn = recover(dir);
+            return new Persistence(this, dir, lastLsn, options.isSyncCommit(), options.getSnapshotIntervalMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("addy: cannot open persistence in " + options.getPersistenceDir(), e);
+        }
+    }
+
+    /** Loads the newest valid snapshot, replays the log tail and returns the last LSN seen. */
+    private long recover(Path dir) throws IOException {
+        long t0 = System.nanoTime();
+        Path snapshot = Persistence.latestSnapshot(dir);
+        long snapshotLsn = 0L;
+        int campaignsLoaded = 0;
+        int slotsLoaded = 0;
+        if (snapshot != null) {
+            try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                in.position(Persistence.SNAPSHOT_HEADER_BYTES);
+                snapshotLsn = in.getLong(Persistence.SNAP_LSN);
+                nextCampaignId.set(in.getLong(Persistence.SNAP_NEXT_CAMPAIGN));
+                nextKeywordId.set(in.getLong(Persistence.SNAP_NEXT_SLOT));
+                totalBidsPlaced.reset(in.getInt(Persistence.SNAP_BIDS));
+                totalCampaignsActivated.reset(in.getInt(Persistence.SNAP_ACTIVATED));
+                campaignsLoaded = in.getInt(Persistence.SNAP_CAMPAIGNS);
+                slotsLoaded = in.getInt(Persistence.SNAP_SLOTS);
+                for (int i = 0; i < campaignsLoaded; i++) {
+                    long id = in.getLong();
+                    ThrottleZone zone = ThrottleZone.values()[in.get()];
+                    CampaignPhase phase = CampaignPhase.values()[in.get()];
+                    long createdAt = in.getLong();
+                    int keywordCount = in.getInt();
+                    long spend = in.getLong();
+                    String owner = Persistence.getString(in);
+                    CampaignRecord rec = new CampaignRecord(id, owner, phase, zone, Instant.ofEpochMilli(createdAt),
+                            keywordCount, spend);
+                    campaigns.put(id, rec);
+                    campaignsByZonePhase.add(rec);
+                    campaignCount.add(epochs, 0L, 1);
+                }
+                for (int i = 0; i < slotsLoaded; i++) {
+                    long slotId = in.getLong();
+                    long campaignId = in.getLong();
+                    BidTierKind tier = BidTierKind.values()[in.get()];
+                    boolean active = in.get() != 0;
+                    long cpcNanos = in.getLong();
+                    long createdAt = in.getLong();
+                    KeywordHashKey hash = new KeywordHashKey(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+                    restoreSlot(slotId, hash, campaignId, tier, cpcNanos, createdAt, active);
+                }
+            }
+        }
+        long t1 = System.nanoTime();
+        long[] last = {snapshotLsn, 0L};
+        for (Path segment : Persistence.segments(dir)) {
+            Persistence.replay(segment, snapshotLsn, (lsn, in) -> {
+                replayRecord(in);
+                last[0] = Math.max(last[0], lsn);
+                last[1]++;
+            });
+        }
+        recoveryStats = new RecoveryStats(snapshotLsn, campaignsLoaded, slotsLoaded, last[1], t1 - t0,
+                System.nanoTime() - t1);
+        return last[0];
+    }
+
+    private void restoreSlot(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                             long createdAtMillis, boolean active) {
+        keywordSlots.put(slotId, hash, campaignId, tier, cpcNanos, createdAtMillis, 0L);
+        slotsByCampaign.add(campaignId, slotId);
+        if (active) {
+            activeSlotCount.add(epochs, 0L, 1);
+        } else {
+            keywordSlots.deactivate(slotId, 0L);
+            slotsByCampaign.deactivate(campaignId, slotId);
+        }
+        slotIdByHash.put(hash, active ? slotId : -slotId);
+        reservedSlotCount.incrementAndGet();
+        if (slotId >= nextKeywordId.get()) nextKeywordId.set(slotId + 1);
+    }
+
+    private void replayRecord(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case Persistence.REC_CAMPAIGN_CREATE: {
+                long id = in.getLong();
+                ThrottleZone zone = ThrottleZone.values()[in.get()];
+                long createdAt = in.getLong();
+                String owner = Persistence.getString(in);
+                CampaignRecord rec = new CampaignRecord(id, owner, CampaignPhase.DRAFT, zone,
+                        Instant.ofEpochMilli(createdAt), 0, 0L);
+                campaigns.put(id, rec);
+                campaignsByZonePhase.add(rec);
+                campaignCount.add(epochs, 0L, 1);
+                if (id >= nextCampaignId.get()) nextCampaignId.set(id + 1);
+                break;
+            }
+            case Persistence.REC_SLOT_ALLOC: {
+                long slotId = in.getLong();
+                long campaignId = in.getLong();
+                BidTierKind tier = BidTierKind.values()[in.get()];
+                long cpcNanos = in.getLong();
+                long createdAt = in.getLong();
+                KeywordHashKey hash = new KeywordHashKey(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+                replaySlot(slotId, hash, campaignId, tier, cpcNanos, createdAt);
+                break;
+            }
+            case Persistence.REC_SLOT_BATCH: {
+                long campaignId = in.getLong();
+                long firstSlotId = in.getLong();
+                long createdAt = in.getLong();
+                int n = in.getInt();
+                for (int i = 0; i < n; i++) {
+                    BidTierKind tier = BidTierKind.values()[in.get()];
+                    long cpcNanos = in.getLong();
+                    KeywordHashKey hash = new KeywordHashKey(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+                    replaySlot(firstSlotId + i, hash, campaignId, tier, cpcNanos, createdAt);
+                }
+                break;
+            }
+            case Persistence.REC_SLOT_DEACT: {
+                long slotId = in.getLong();
+                KeywordSlotView slot = keywordSlots.get(slotId);
+                if (slot != null && keywordSlots.deactivate(slotId, 0L)) {
+                    slotsByCampaign.deactivate(slot.getCampaignId(), slotId);
+                    slotIdByHash.replace(slot.getKeywordHashKey(), slotId, -slotId);
+                    activeSlotCount.add(epochs, 0L, -1);
+                }
+                break;
+            }
+            case Persistence.REC_SLOT_RECLAIM: {
+                int n = in.getInt();
+                for (int i = 0; i < n; i++) reclaim(in.getLong(), 0L);
+                reservedSlotCount.addAndGet(-keywordSlots.recycle());
+                break;
+            }
+            case Persistence.REC_SPEND: {
+                CampaignRecord camp = campaigns.get(in.getLong());
+                long amount = in.getLong();
+                if (camp != null) camp.addSpend(epochs, 0L, amount);
+                break;
+            }
+            case Persistence.REC_SPEND_BATCH: {
+                int n = in.getInt();
+                for (int i = 0; i < n; i++) {
+                    CampaignRecord camp = campaigns.get(in.getLong());
+                    long amount = in.getLong();
+                    if (camp != null) camp.addSpend(epochs, 0L, amount);
+                }
+                break;
+            }
+            case Persistence.REC_PHASE: {
+                CampaignRecord camp = campaigns.get(in.getLong());
+                CampaignPhase phase = CampaignPhase.values()[in.get()];
+                long version = in.getLong();
+                if (phase == CampaignPhase.LIVE) totalCampaignsActivated.add(epochs, 0L, 1);
+                if (camp != null) {
+                    CampaignRecord.PhaseCell current = camp.phases();
+                    if (CampaignRecord.versionOf(current.state) < version
+                            && camp.casState(current, CampaignRecord.packState(version, phase), epochs, 0L)) {
+                        campaignsByZonePhase.moved(camp, CampaignRecord.phaseOf(current.state));
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("addy: unknown log record type " + type);
+        }
+    }
+
+    private void replaySlot(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                            long createdAtMillis) {
+        restoreSlot(slotId, hash, campaignId, tier, cpcNanos, createdAtMillis, true);
+        CampaignRecord camp = campaigns.get(campaignId);
+        if (camp != null) camp.setKeywordCount(camp.getKeywordCount() + 1);
+        totalBidsPlaced.add(epochs, 0L, 1);
+    }
+
+    /**
+     * Writes the state {@code view} sees. Runs with writers free again: the view was
+     * opened while they were held at the gate, right after the log rotated at
+     * {@code lsn}, so it holds exactly the records up to it, and the caller holds
+     * {@link #compacting} so no slot the view sees is reclaimed under it.
+     */
+    private void writeSnapshot(Path file, long lsn, Snapshot view, long nextCampaign, long nextSlot)
+            throws IOException {
+        long epoch = view.getEpoch();
+        List<CampaignState> camps = view.getCampaigns();
+        List<byte[]> owners = new ArrayList<>(camps.size());
+        long bytes = Persistence.SNAPSHOT_HEADER_BYTES;
+        for (CampaignState c : camps) {
+            byte[] owner = c.getOwnerRef().getBytes(StandardCharsets.UTF_8);
+            owners.add(owner);
+            bytes += Persistence.CAMPAIGN_FIXED_BYTES + owner.length;
+        }
+        int[] slotCount = {0};
+        keywordSlots.forEachAt(epoch, (slotId, hash, campaignId, tier, cpcNanos, createdAt, active) -> slotCount[0]++);
+        bytes += (long) slotCount[0] * Persistence.SLOT_BYTES;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            out.position(Persistence.SNAPSHOT_HEADER_BYTES);
+            for (int i = 0; i < camps.size(); i++) {
+                CampaignState c = camps.get(i);
+                out.putLong(c.getCampaignId());
+                out.put((byte) c.getZone().ordinal());
+                out.put((byte) c.getPhase().ordinal());
+                out.putLong(c.getCreatedAt().toEpochMilli());
+                out.putInt(c.getKeywordCount());
+                out.putLong(c.getTotalSpendNanos());
+                out.putInt(owners.get(i).length);
+                out.put(owners.get(i));
+            }
+            int[] written = {0};
+            keywordSlots.forEachAt(epoch, (slotId, hash, campaignId, tier, cpcNanos, createdAt, active) -> {
+                out.putLong(slotId);
+                out.putLong(campaignId);
+                out.put((byte) tier.ordinal());
+                out.put((byte) (active ? 1 : 0));
+                out.putLong(cpcNanos);
+                out.putLong(createdAt);
+                for (int w = 0; w < 4; w++) out.putLong(hash.word(w));
+                written[0]++;
+            });
+            out.putInt(Persistence.SNAP_VERSION, Persistence.FORMAT_VERSION);
+            out.putLong(Persistence.SNAP_LSN, lsn);
+            out.putLong(Persistence.SNAP_NEXT_CAMPAIGN, nextCampaign);
+            out.putLong(Persistence.SNAP_NEXT_SLOT, nextSlot);
+            out.putInt(Persistence.SNAP_BIDS, view.getTotalBidsPlaced());
+            out.putInt(Persistence.SNAP_ACTIVATED, view.getTotalCampaignsActivated());
+            out.putInt(Persistence.SNAP_CAMPAIGNS, camps.size());
+            out.putInt(Persistence.SNAP_SLOTS, written[0]);
+            out.force();
+            out.putLong(Persistence.SNAP_MAGIC, Persistence.SNAPSHOT_MAGIC);
+            out.force();
+        }
+    }
+
+    /**
+     * Durable state for one instance: the writer gate, the group-committed log and
+     * the snapshot schedule. Log segments are named by the LSN of their first record
+     * and snapshots by the last LSN they cover, so recovery picks the newest snapshot
+     * and replays only records after it.
+     */
+    static final class Persistence {
+        static final byte REC_CAMPAIGN_CREATE = 1;
+        static final byte REC_SLOT_ALLOC = 2;
+        static final byte REC_SLOT_BATCH = 3;
+        static final byte REC_SLOT_DEACT = 4;
+        static final byte REC_SPEND = 5;
+        static final byte REC_PHASE = 6;
+        static final byte REC_SPEND_BATCH = 7;
+        static final byte REC_SLOT_RECLAIM = 8;
+
+        static final long SNAPSHOT_MAGIC = 0x41444459534e5031L;
+        static final int FORMAT_VERSION = 1;
+        static final int SNAP_MAGIC = 0;
+        static final int SNAP_VERSION = 8;
+        static final int SNAP_LSN = 12;
+        static final int SNAP_NEXT_CAMPAIGN = 20;
+        static final int SNAP_NEXT_SLOT = 28;
+        static final int SNAP_BIDS = 36;
+        static final int SNAP_ACTIVATED = 40;
+        static final int SNAP_CAMPAIGNS = 44;
+        static final int SNAP_SLOTS = 48;
+        static final int SNAPSHOT_HEADER_BYTES = 64;
+        static final int CAMPAIGN_FIXED_BYTES = 8 + 1 + 1 + 8 + 4 + 8 + 4;
+        static final int SLOT_BYTES = 8 + 8 + 1 + 1 + 8 + 8 + 32;
+
+        private static final String SNAPSHOT_PREFIX = "snapshot-";
+        private static final String SNAPSHOT_SUFFIX = ".snap";
+        private static final String SEGMENT_PREFIX = "wal-";
+        private static final String SEGMENT_SUFFIX = ".log";
+
+        final WriteAheadLog wal;
+        private final WriterGate gate = new WriterGate();
+        private final Path dir;
+        private final boolean syncCommit;
+        private final Thread snapshotter;
+        private final Object checkpointLock = new Object();
+        private volatile boolean closed;
+
+        Persistence(addy owner, Path dir, long lastLsn, boolean syncCommit, long snapshotIntervalMillis)
+                throws IOException {
+            this.dir = dir;
+            this.syncCommit = syncCommit;
+            this.wal = new WriteAheadLog(dir, lastLsn);
+            if (snapshotIntervalMillis > 0) {
+                snapshotter = new Thread(() -> {
+                    while (!closed) {
+                        LockSupport.parkNanos(snapshotIntervalMillis * 1_000_000L);
+                        if (closed) break;
+                        try {
+                            checkpoint(owner);
+                        } catch (IOException | RuntimeException e) {
+                            // The log still holds everything; the next interval retries.
+                        }
+                    }
+                }, "addy-snapshot");
+                snapshotter.setDaemon(true);
+                snapshotter.start();
+            } else {
+                snapshotter = null;
+            }
+        }
+
+        void enter() {
+            gate.enter();
+            if (wal.failure != null) {
+                gate.exit();
+                throw new IllegalStateException("addy: write-ahead log failed", wal.failure);
+            }
+        }
+
+        void exit() {
+            gate.exit();
+        }
+
+        void awaitDurable(long lsn) {
+            if (syncCommit) wal.awaitDurable(lsn);
+        }
+
+        void checkpoint(addy owner) throws IOException {
+            synchronized (checkpointLock) {
+                if (closed) return;
+                long lsn;
+                Path tmp = dir.resolve(SNAPSHOT_PREFIX + "pending" + SNAPSHOT_SUFFIX + ".tmp");
+                owner.compacting.lock();
+                try {
+                    Snapshot view;
+                    long nextCampaign;
+                    long nextSlot;
+                    gate.pause();
+                    try {
+                        lsn = wal.rotate();
+                        view = owner.snapshot();
+                        nextCampaign = owner.nextCampaignId.get();
+                        nextSlot = owner.nextKeywordId.get();
+                    } finally {
+                        gate.resume();
+                    }
+                    try (view) {
+                        owner.writeSnapshot(tmp, lsn, view, nextCampaign, nextSlot);
+                    }
+                } finally {
+                    owner.compacting.unlock();
+                }
+                Path target = dir.resolve(SNAPSHOT_PREFIX + pad(lsn) + SNAPSHOT_SUFFIX);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                for (Path old : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                    if (!old.equals(target)) Files.deleteIfExists(old);
+                }
+                for (Path segment : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                    if (lsnOf(segment, SEGMENT_PREFIX, SEGMENT_SUFFIX) <= lsn) Files.deleteIfExists(segment);
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            if (snapshotter != null) {
+                LockSupport.unpark(snapshotter);
+                try {
+                    snapshotter.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (checkpointLock) {
+                wal.close();
+            }
+        }
+
+        private List<Path> list(String prefix, String suffix) throws IOException {
+            return listIn(dir, prefix, suffix);
+        }
+
+        static Path latestSnapshot(Path dir) throws IOException {
+            List<Path> snaps = listIn(dir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            for (int i = snaps.size() - 1; i >= 0; i--) {
+                Path snap = snaps.get(i);
+                try (FileChannel ch = FileChannel.open(snap, StandardOpenOption.READ)) {
+                    if (ch.size() < SNAPSHOT_HEADER_BYTES) continue;
+                    ByteBuffer head = ByteBuffer.allocate(12);
+                    ch.read(head, 0);
+                    if (head.getLong(SNAP_MAGIC) == SNAPSHOT_MAGIC && head.getInt(SNAP_VERSION) == FORMAT_VERSION) {
+                        return snap;
+                    }
+                }
+            }
+            return null;
+        }
+
+        static List<Path> segments(Path dir) throws IOException {
+            return listIn(dir, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        }
+
+        /** Files with the given prefix/suffix, ordered by the LSN in their name. */
+        private static List<Path> listIn(Path dir, String prefix, String suffix) throws IOException {
+            List<Path> out = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                files.filter(f -> {
+                    String name = f.getFileName().toString();
+                    return name.startsWith(prefix) && name.endsWith(suffix) && lsnOf(f, prefix, suffix) >= 0;
+                }).forEach(out::add);
+            }
+            out.sort((a, b) -> Long.compare(lsnOf(a, prefix, suffix), lsnOf(b, prefix, suffix)));
+            return out;
+        }
+
+        private static long lsnOf(Path file, String prefix, String suffix) {
+            String name = file.getFileName().toString();
+            try {
+                return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                return -1L;
+            }
+        }
+
+        static String pad(long lsn) {
+            return String.format("%020d", lsn);
+        }
+
+        interface RecordHandler {
+            void apply(long lsn, ByteBuffer payload);
+        }
+
+        /**
+         * Feeds every intact record with LSN above {@code afterLsn} to the handler. A torn
+         * or corrupt frame ends the segment; anything behind it was never acknowledged.
+         */
+        static void replay(Path segment, long afterLsn, RecordHandler handler) throws IOException {
+            try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+                if (ch.size() == 0) return;
+                MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                CRC32C crc = new CRC32C();
+                while (in.remaining() >= WriteAheadLog.FRAME_HEADER_BYTES) {
+                    int start = in.position();
+                    int len = in.getInt();
+                    int sum = in.getInt();
+                    long lsn = in.getLong();
+                    if (len <= 0 || len > in.remaining()) return;
+                    ByteBuffer payload = in.slice(in.position(), len);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != sum) return;
+                    if (lsn > afterLsn) handler.apply(lsn, payload);
+                    in.position(start + WriteAheadLog.FRAME_HEADER_BYTES + len);
+                }
+            }
+        }
+
+        static String getString(ByteBuffer in) {
+            int len = in.getInt();
+            byte[] b = new byte[len];
+            in.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Admits mutating threads unless a checkpoint has paused them. Each thread
+         * always counts itself on the same padded stripe, so a paused checkpointer that
+         * reads every stripe as zero knows no writer is inside.
+         */
+        static final class WriterGate {
+            private static final int PAD = 8;
+
+            private final int mask;
+            private final AtomicLongArray stripes;
+            private volatile boolean paused;
+
+            WriterGate() {
+                int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+                this.mask = n - 1;
+                this.stripes = new AtomicLongArray(n * PAD);
+            }
+
+            void enter() {
+                int i = stripe();
+                for (;;) {
+                    stripes.getAndIncrement(i);
+                    if (!paused) return;
+                    stripes.getAndDecrement(i);
+                    for (int spins = 0; paused; spins++) backoff(spins);
+                }
+            }
+
+            void exit() {
+                stripes.getAndDecrement(stripe());
+            }
+
+            void pause() {
+                paused = true;
+                for (int spins = 0; inside() != 0; spins++) backoff(spins);
+            }
+
+            void resume() {
+                paused = false;
+            }
+
+            private long inside() {
+                long n = 0;
+                for (int i = 0; i <= mask; i++) n += stripes.get(i * PAD);
+                return n;
+            }
+
+            private int stripe() {
+                long id = Thread.currentThread().getId();
+                return (int) (((id * 0x9E3779B97F4A7C15L) >>> 40) & mask) * PAD;
+            }
+        }
+    }
+
+    /**
+     * Group-committed log. Producers encode records straight into the active buffer
+     * under a short lock; a single writer thread swaps buffers, writes the group and
+     * forces it, then publishes the durable LSN. Frame layout: payload length, CRC32C
+     * of the payload, LSN, payload.
+     */
+    static final class WriteAheadLog implements Runnable {
+        static final int FRAME_HEADER_BYTES = 4 + 4 + 8;
+        private static final int BUFFER_BYTES = 1 << 20;
+
+        private final Path dir;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition pending = lock.newCondition();
+        private final Condition flushed = lock.newCondition();
+        private final CRC32C crc = new CRC32C();
+        private final Thread writer;
+        private ByteBuffer active = ByteBuffer.allocate(BUFFER_BYTES);
+        private ByteBuffer spare = ByteBuffer.allocate(BUFFER_BYTES);
+        private FileChannel segment;
+        private long lastLsn;
+        private long durableLsn;
+        private int frameStart;
+        private boolean writing;
+        private boolean closing;
+        volatile IOException failure;
+
+        WriteAheadLog(Path dir, long lastLsn) throws IOException {
+            this.dir = dir;
+            this.lastLsn = lastLsn;
+            this.durableLsn = lastLsn;
+            this.segment = openSegment(lastLsn + 1);
+            this.writer = new Thread(this, "addy-wal");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        long logCampaignCreate(long id, ThrottleZone zone, long createdAt, String ownerRef) {
+            byte[] owner = ownerRef.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer b = begin(1 + 8 + 1 + 8 + 4 + owner.length);
+            b.put(Persistence.REC_CAMPAIGN_CREATE).putLong(id).put((byte) zone.ordinal()).putLong(createdAt);
+            b.putInt(owner.length).put(owner);
+            return end();
+        }
+
+        long logSlotAlloc(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                          long createdAt) {
+            ByteBuffer b = begin(1 + 8 + 8 + 1 + 8 + 8 + 32);
+            b.put(Persistence.REC_SLOT_ALLOC).putLong(slotId).putLong(campaignId).put((byte) tier.ordinal());
+            b.putLong(cpcNanos).putLong(createdAt);
+            putHash(b, hash);
+            return end();
+        }
+
+        long logSlotBatch(long campaignId, long firstSlotId, long createdAt, List<KeywordBid> bids,
+                          KeywordHashKey[] hashes) {
+            ByteBuffer b = begin(1 + 8 + 8 + 8 + 4 + hashes.length * (1 + 8 + 32));
+            b.put(Persistence.REC_SLOT_BATCH).putLong(campaignId).putLong(firstSlotId).putLong(createdAt);
+            b.putInt(hashes.length);
+            for (int i = 0; i < hashes.length; i++) {
+                KeywordBid bid = bids.get(i);
+                b.put((byte) bid.getTier().ordinal()).putLong(bid.getCpcNanos());
+                putHash(b, hashes[i]);
+            }
+            return end();
+        }
+
+        long logSlotDeact(long slotId) {
+            begin(1 + 8).put(Persistence.REC_SLOT_DEACT).putLong(slotId);
+            return end();
+        }
+
+        long logSlotReclaim(long[] slotIds, int n) {
+            ByteBuffer b = begin(1 + 4 + n * 8);
+            b.put(Persistence.REC_SLOT_RECLAIM).putInt(n);
+            for (int i = 0; i < n; i++) b.putLong(slotIds[i]);
+            return end();
+        }
+
+        long logSpend(long campaignId, long amountNanos) {
+            begin(1 + 8 + 8).put(Persistence.REC_SPEND).putLong(campaignId).putLong(amountNanos);
+            return end();
+        }
+
+        long logSpendBatch(long[] campaignIds, long[] amounts) {
+            ByteBuffer b = begin(1 + 4 + campaignIds.length * 16);
+            b.put(Persistence.REC_SPEND_BATCH).putInt(campaignIds.length);
+            for (int i = 0; i < campaignIds.length; i++) {
+                b.putLong(campaignIds[i]).putLong(amounts[i]);
+            }
+            return end();
+        }
+
+        /**
+         * Records carry the transition's sequence number: transitions of one campaign
+         * may reach the log in a different order than their CAS, and replay keeps the
+         * highest rather than the last.
+         */
+        long logPhase(long campaignId, CampaignPhase phase, long version) {
+            begin(1 + 8 + 1 + 8).put(Persistence.REC_PHASE).putLong(campaignId).put((byte) phase.ordinal())
+                    .putLong(version);
+            return end();
+        }
+
+        private static void putHash(ByteBuffer b, KeywordHashKey hash) {
+            for (int w = 0; w < 4; w++) b.putLong(hash.word(w));
+        }
+
+        /** Locks the log and positions the active buffer after a reserved frame header. */
+        private ByteBuffer begin(int payloadBytes) {
+            lock.lock();
+            int need = FRAME_HEADER_BYTES + payloadBytes;
+            try {
+                while (active.remaining() < need && active.position() > 0) {
+                    pending.signal();
+                    flushed.awaitUninterruptibly();
+                }
+                if (active.capacity() < need) {
+                    active = ByteBuffer.allocate(need);
+                }
+            } catch (RuntimeException e) {
+                lock.unlock();
+                throw e;
+            }
+            frameStart = active.position();
+            active.position(frameStart + FRAME_HEADER_BYTES);
+            return active;
+        }
+
+        /** Seals the frame begun by {@link #begin(int)}, assigns its LSN and unlocks. */
+        private long end() {
+            try {
+                int payloadStart = frameStart + FRAME_HEADER_BYTES;
+                int len = active.position() - payloadStart;
+                crc.reset();
+                crc.update(active.slice(payloadStart, len));
+                long lsn = ++lastLsn;
+                active.putInt(frameStart, len).putInt(frameStart + 4, (int) crc.getValue())
+                        .putLong(frameStart + 8, lsn);
+                pending.signal();
+                return lsn;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void awaitDurable(long lsn) {
+            lock.lock();
+            try {
+                while (durableLsn < lsn && failure == null) {
+                    pending.signal();
+                    flushed.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (durableLsn < lsn) {
+                throw new IllegalStateException("addy: write-ahead log failed", failure);
+            }
+        }
+
+        /**
+         * Flushes everything logged so far, starts a new segment and returns the last
+         * LSN of the old ones. Callers hold the writer gate, so nothing new arrives.
+         */
+        long rotate() throws IOException {
+            lock.lock();
+            try {
+                while ((durableLsn < lastLsn || writing) && failure == null) {
+                    pending.signal();
+                    flushed.awaitUninterruptibly();
+                }
+                if (failure != null) throw failure;
+                FileChannel old = segment;
+                segment = openSegment(lastLsn + 1);
+                old.close();
+                return lastLsn;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ByteBuffer batch;
+                FileChannel ch;
+                long upTo;
+                lock.lock();
+                try {
+                    while (active.position() == 0 && !closing) {
+                        pending.awaitUninterruptibly();
+                    }
+                    if (active.position() == 0) {
+                        flushed.signalAll();
+                        return;
+                    }
+                    batch = active;
+                    active = spare.capacity() >= BUFFER_BYTES ? spare : ByteBuffer.allocate(BUFFER_BYTES);
+                    active.clear();
+                    spare = batch;
+                    ch = segment;
+                    upTo = lastLsn;
+                    writing = true;
+                } finally {
+                    lock.unlock();
+                }
+                IOException error = null;
+                try {
+                    batch.flip();
+                    while (batch.hasRemaining()) ch.write(batch);
+                    ch.force(false);
+                } catch (IOException e) {
+                    error = e;
+                }
+                batch.clear();
+                lock.lock();
+                try {
+                    writing = false;
+                    if (error != null) {
+                        failure = error;
+                    } else {
+                        durableLsn = upTo;
+                    }
+                    flushed.signalAll();
+                    if (error != null) return;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closing = true;
+                pending.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.join();
+                segment.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new UncheckedIOException("addy: cannot close write-ahead log", e);
+            }
+        }
+
+        private FileChannel openSegment(long firstLsn) throws IOException {
+            return FileChannel.open(dir.resolve("wal-" + Persistence.pad(firstLsn) + ".log"),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Network front-end (length-prefixed binary protocol over NIO sockets)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Wire format. Every frame is {@code int length} (of what follows), {@code int
+     * requestId}, {@code byte code}, then the body. In a request the code is the
+     * operation; in a response it is the status. Responses carry the request's id and
+     * may come back in any order, so a client can keep many requests outstanding on
+     * one connection. Numbers are big-endian; strings are {@code u16} length then UTF-8.
+     */
+    static final class Wire {
+        static final byte OP_CREATE_CAMPAIGN = 1;
+        static final byte OP_ALLOCATE_SLOT = 2;
+        static final byte OP_RECORD_SPEND = 3;
+        static final byte OP_IS_KEYWORD_REGISTERED = 4;
+        static final byte OP_GET_SLOTS_FOR_CAMPAIGN = 5;
+
+        static final byte STATUS_OK = 0;
+        static final byte STATUS_ILLEGAL_ARGUMENT = 1;
+        static final byte STATUS_ILLEGAL_STATE = 2;
+        static final byte STATUS_INTERNAL = 3;
+
+        static final int HEADER_BYTES = 9;
+        static final int MAX_FRAME = 1 << 24;
+        static final int MAX_STRING = 0xFFFF;
+        static final int SLOT_BYTES = 8 + 32 + 8 + 1 + 8 + 8 + 1;
+        static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+        private Wire() {
+        }
+
+        static int stringBytes(String s) {
+            return 2 + utf8(s).length;
+        }
+
+        static byte[] utf8(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            if (b.length > MAX_STRING) {
+                throw new IllegalArgumentException("addy: string too long for the wire");
+            }
+            return b;
+        }
+
+        static void putString(ByteBuffer out, byte[] utf8) {
+            out.putShort((short) utf8.length).put(utf8);
+        }
+
+        static String getString(ByteBuffer in) {
+            int len = Short.toUnsignedInt(in.getShort());
+            byte[] b = new byte[len];
+            in.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        /** The constant with ordinal {@code b}; a client can send any byte, so it is checked. */
+        static <E extends Enum<E>> E constant(E[] values, byte b, String what) {
+            if (b < 0 || b >= values.length) {
+                throw new IllegalArgumentException("addy: unknown " + what + " " + b);
+            }
+            return values[b];
+        }
+
+        static byte status(Throwable t) {
+            if (t instanceof IllegalArgumentException) return STATUS_ILLEGAL_ARGUMENT;
+            if (t instanceof IllegalStateException) return STATUS_ILLEGAL_STATE;
+            return STATUS_INTERNAL;
+        }
+
+        static RuntimeException error(byte status, String message) {
+            switch (status) {
+                case STATUS_ILLEGAL_ARGUMENT: return new IllegalArgumentException(message);
+                case STATUS_ILLEGAL_STATE: return new IllegalStateException(message);
+                default: return new IllegalStateException("addy: server error: " + message);
+            }
+        }
+    }
+
+    /**
+     * Write-combining frame sender shared by all threads answering on one connection.
+     * A sender appends its frame to the pending buffer; if nobody is flushing it becomes
+     * the flusher and writes pending buffers out until none is left, so frames queued
+     * meanwhile by other senders go out in the same write.
+     */
+    static final class FrameWriter {
+        private final SocketChannel channel;
+        private final ReentrantLock lock = new ReentrantLock();
+        private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+        private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+        private boolean flushing;
+
+        FrameWriter(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Queues a frame and writes it out unless another sender is already flushing. */
+        void send(int requestId, byte code, ByteBuffer body) throws IOException {
+            lock.lock();
+            try {
+                put(requestId, code, body);
+                if (flushing) return;
+                flushing = true;
+            } finally {
+                lock.unlock();
+            }
+            flush();
+        }
+
+        /** Queues a frame without writing it; the next send or {@link #flushPending} carries it. */
+        void append(int requestId, byte code, ByteBuffer body) {
+            lock.lock();
+            try {
+                put(requestId, code, body);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flushPending() throws IOException {
+            lock.lock();
+            try {
+                if (flushing || pending.position() == 0) return;
+                flushing = true;
+            } finally {
+                lock.unlock();
+            }
+            flush();
+        }
+
+        private void put(int requestId, byte code, ByteBuffer body) {
+            int frame = Wire.HEADER_BYTES + body.remaining();
+            if (pending.remaining() < frame) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + frame));
+                pending.flip();
+                pending = grown.put(pending);
+            }
+            pending.putInt(frame - 4).putInt(requestId).put(code).put(body);
+        }
+
+        private void flush() throws IOException {
+            for (;;) {
+                ByteBuffer out;
+                lock.lock();
+                try {
+                    if (pending.position() == 0) {
+                        flushing = false;
+                        return;
+                    }
+                    out = pending;
+                    pending = spare;
+                    spare = out;
+                } finally {
+                    lock.unlock();
+                }
+                out.flip();
+                try {
+                    while (out.hasRemaining()) channel.write(out);
+                } catch (IOException e) {
+                    lock.lock();
+                    try {
+                        flushing = false;
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+                out.clear();
+            }
+        }
+    }
+
+    /**
+     * Executor for connection and request tasks: one virtual thread per task where the
+     * runtime has them (Java 21+), otherwise a cached pool of small-stack daemon threads.
+     */
+    static ExecutorService newTaskExecutor(String name) {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return (ExecutorService) executor;
+        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+            AtomicInteger count = new AtomicInteger();
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(null, r, name + "-" + count.incrementAndGet(), 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Serves one engine over TCP. Each connection gets a reader task that decodes frames
+     * as they arrive. Requests that cannot block are answered on the reader itself, and
+     * their replies leave in one write per batch of frames read. A write that waits for
+     * its log group to reach disk gets a task of its own instead, so it never holds up
+     * the requests pipelined behind it, and concurrent waiters share one fsync. At most
+     * {@code maxInFlight} such tasks per connection are outstanding; past that the
+     * reader stops reading and TCP pushes back on the client.
+     *
+     * <p>This is thread-per-connection plus thread-per-blocking-request rather than a
+     * thread per request: a request that never blocks finishes in less time than a
+     * task handoff takes, so giving it its own thread would only add latency.
+     * Malformed requests (unknown operation or enum ordinal, short body) are answered
+     * with {@code STATUS_ILLEGAL_ARGUMENT}; a frame whose length is out of range
+     * closes the connection, since the stream can no longer be framed.
+     */
+    public static final class Server implements AutoCloseable {
+        public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+        private final addy engine;
+        private final ServerSocketChannel listener;
+        private final ExecutorService tasks;
+        private final int maxInFlight;
+        private final boolean writesWait;
+        private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+        private final Thread acceptor;
+        private volatile boolean closed;
+
+        private Server(addy engine, ServerSocketChannel listener, int maxInFlight) {
+            this.engine = engine;
+            this.listener = listener;
+            this.maxInFlight = maxInFlight;
+            this.writesWait = engine.persistence != null && engine.persistence.syncCommit;
+            this.tasks = newTaskExecutor("addy-server");
+            this.acceptor = new Thread(this::acceptLoop, "addy-accept");
+            acceptor.setDaemon(true);
+        }
+
+        public static Server start(addy engine, InetSocketAddress bind) throws IOException {
+            return start(engine, bind, DEFAULT_MAX_IN_FLIGHT);
+        }
+
+        public static Server start(addy engine, InetSocketAddress bind, int maxInFlight) throws IOException {
+            if (engine == null || bind == null) {
+                throw new IllegalArgumentException("addy: engine and bind address required");
+            }
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("addy: max in-flight must be positive");
+            }
+            ServerSocketChannel listener = ServerSocketChannel.open();
+            try {
+                listener.bind(bind, 4096);
+            } catch (IOException e) {
+                listener.close();
+                throw e;
+            }
+            Server server = new Server(engine, listener, maxInFlight);
+            server.acceptor.start();
+            return server;
+        }
+
+        public InetSocketAddress getLocalAddress() throws IOException {
+            return (InetSocketAddress) listener.getLocalAddress();
+        }
+
+        public int getConnectionCount() { return connections.size(); }
+        public boolean isVirtualThreads() { return virtualThreadsAvailable(); }
+
+        private void acceptLoop() {
+            while (!closed) {
+                SocketChannel channel;
+                try {
+                    channel = listener.accept();
+                } catch (IOException e) {
+                    if (closed) return;
+                    backoff(Integer.MAX_VALUE);
+                    continue;
+                }
+                connections.add(channel);
+                try {
+                    tasks.execute(() -> serve(channel));
+                } catch (RejectedExecutionException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void serve(SocketChannel channel) {
+            FrameWriter writer = new FrameWriter(channel);
+            Semaphore inFlight = new Semaphore(maxInFlight);
+            ByteBuffer in = ByteBuffer.allocate(1 << 16);
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                while (channel.read(in) >= 0) {
+                    in.flip();
+                    while (in.remaining() >= 4) {
+                        int length = in.getInt(in.position());
+                        if (length < Wire.HEADER_BYTES - 4 || length > Wire.MAX_FRAME) {
+                            throw new IOException("addy: bad frame length " + length);
+                        }
+                        if (in.remaining() < 4 + length) {
+                            if (in.capacity() < 4 + length) {
+                                in = ByteBuffer.allocate(Integer.highestOneBit(4 + length) << 1).put(in).flip();
+                            }
+                            break;
+                        }
+                        in.getInt();
+                        int requestId = in.getInt();
+                        byte op = in.get();
+                        byte[] body = new byte[length - (Wire.HEADER_BYTES - 4)];
+                        in.get(body);
+                        if (!writesWait || op == Wire.OP_IS_KEYWORD_REGISTERED || op == Wire.OP_GET_SLOTS_FOR_CAMPAIGN) {
+                            answer(writer, requestId, op, ByteBuffer.wrap(body), true);
+                            continue;
+                        }
+                        inFlight.acquire();
+                        tasks.execute(() -> {
+                            try {
+                                answer(writer, requestId, op, ByteBuffer.wrap(body), false);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }
+                    writer.flushPending();
+                    in.compact();
+                }
+            } catch (IOException | RejectedExecutionException e) {
+                // Peer went away, sent garbage, or the server is closing.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                connections.remove(channel);
+                closeQuietly(channel);
+            }
+        }
+
+        private void answer(FrameWriter writer, int requestId, byte op, ByteBuffer body, boolean deferFlush) {
+            byte status = Wire.STATUS_OK;
+            ByteBuffer reply;
+            try {
+                reply = execute(op, body);
+            } catch (RuntimeException e) {
+                if (e instanceof BufferUnderflowException) {
+                    e = new IllegalArgumentException("addy: request body too short");
+                }
+                status = Wire.status(e);
+                byte[] message = Wire.utf8(String.valueOf(e.getMessage()));
+                reply = ByteBuffer.allocate(2 + message.length);
+                Wire.putString(reply, message);
+                reply.flip();
+            }
+            if (deferFlush) {
+                writer.append(requestId, status, reply);
+                return;
+            }
+            try {
+                writer.send(requestId, status, reply);
+            } catch (IOException e) {
+                // The reader sees the broken connection and cleans up.
+            }
+        }
+
+        private ByteBuffer execute(byte op, ByteBuffer in) {
+            switch (op) {
+                case Wire.OP_CREATE_CAMPAIGN: {
+                    String owner = Wire.getString(in);
+                    ThrottleZone zone = Wire.constant(ThrottleZone.values(), in.get(), "zone");
+                    return ByteBuffer.allocate(8).putLong(0, engine.createCampaign(owner, zone));
+                }
+                case Wire.OP_ALLOCATE_SLOT: {
+                    String keyword = Wire.getString(in);
+                    long campaignId = in.getLong();
+                    BidTierKind tier = Wire.constant(BidTierKind.values(), in.get(), "tier");
+                    long cpcNanos = in.getLong();
+                    return ByteBuffer.allocate(8).putLong(0, engine.allocateKeywordSlot(keyword, campaignId, tier, cpcNanos));
+                }
+                case Wire.OP_RECORD_SPEND:
+                    engine.recordSpend(in.getLong(), in.getLong());
+                    return Wire.EMPTY.duplicate();
+                case Wire.OP_IS_KEYWORD_REGISTERED:
+                    return ByteBuffer.allocate(1).put(0, (byte) (engine.isKeywordRegistered(Wire.getString(in)) ? 1 : 0));
+                case Wire.OP_GET_SLOTS_FOR_CAMPAIGN: {
+                    List<KeywordSlotView> slots = engine.getSlotsForCampaign(in.getLong());
+                    ByteBuffer out = ByteBuffer.allocate(4 + slots.size() * Wire.SLOT_BYTES);
+                    out.putInt(slots.size());
+                    for (KeywordSlotView slot : slots) {
+                        KeywordHashKey hash = slot.getKeywordHashKey();
+                        out.putLong(slot.getSlotId());
+                        for (int w = 0; w < 4; w++) out.putLong(hash.word(w));
+                        out.putLong(slot.getCampaignId())
+                                .put((byte) slot.getTier().ordinal())
+                                .putLong(slot.getCpcNanos())
+                                .putLong(slot.getCreatedAt().toEpochMilli())
+                                .put((byte) (slot.isActive() ? 1 : 0));
+                    }
+                    return out.flip();
+                }
+                default:
+                    throw new IllegalArgumentException("addy: unknown operation " + op);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closeQuietly(listener);
+            for (SocketChannel channel : connections) closeQuietly(channel);
+            tasks.shutdown();
+        }
+    }
+
+    /**
+     * Loopback client for {@link Server}. The {@code ...Async} calls write the request
+     * and return at once, so any number can be outstanding on the connection; a reader
+     * thread completes them as responses arrive. The plain calls wait for their answer
+     * and rethrow the engine's exception type and message.
+     */
+    public static final class Client implements AutoCloseable {
+        private final SocketChannel channel;
+        private final FrameWriter writer;
+        private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>();
+        private final AtomicInteger nextRequestId = new AtomicInteger();
+        private final Thread reader;
+        private volatile IOException failure;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+            this.writer = new FrameWriter(channel);
+            this.reader = new Thread(this::readLoop, "addy-client");
+            reader.setDaemon(true);
+        }
+
+        public static Client connect(InetSocketAddress address) throws IOException {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel);
+            client.reader.start();
+            return client;
+        }
+
+        public CompletableFuture<Long> createCampaignAsync(String ownerRef, ThrottleZone zone) {
+            byte[] owner = Wire.utf8(ownerRef);
+            ByteBuffer body = ByteBuffer.allocate(2 + owner.length + 1);
+            Wire.putString(body, owner);
+            body.put((byte) zone.ordinal());
+            return call(Wire.OP_CREATE_CAMPAIGN, body).thenApply(ByteBuffer::getLong);
+        }
+
+        public CompletableFuture<Long> allocateKeywordSlotAsync(String keyword, long campaignId, BidTierKind tier,
+                                                              long cpcNanos) {
+            byte[] text = Wire.utf8(keyword);
+            ByteBuffer body = ByteBuffer.allocate(2 + text.length + 8 + 1 + 8);
+            Wire.putString(body, text);
+            body.putLong(campaignId).put((byte) tier.ordinal()).putLong(cpcNanos);
+            return call(Wire.OP_ALLOCATE_SLOT, body).thenApply(ByteBuffer::getLong);
+        }
+
+        public CompletableFuture<Void> recordSpendAsync(long campaignId, long amountNanos) {
+            ByteBuffer body = ByteBuffer.allocate(16).putLong(campaignId).putLong(amountNanos);
+            return call(Wire.OP_RECORD_SPEND, body).thenApply(reply -> null);
+        }
+
+        public CompletableFuture<Boolean> isKeywordRegisteredAsync(String keyword) {
+            byte[] text = Wire.utf8(keyword);
+            ByteBuffer body = ByteBuffer.allocate(2 + text.length);
+            Wire.putString(body, text);
+            return call(Wire.OP_IS_KEYWORD_REGISTERED, body).thenApply(reply -> reply.get() != 0);
+        }
+
+        public CompletableFuture<List<KeywordSlotView>> getSlotsForCampaignAsync(long campaignId) {
+            ByteBuffer body = ByteBuffer.allocate(8).putLong(campaignId);
+            return call(Wire.OP_GET_SLOTS_FOR_CAMPAIGN, body).thenApply(Client::decodeSlots);
+        }
+
+        public long createCampaign(String ownerRef, ThrottleZone zone) {
+            return await(createCampaignAsync(ownerRef, zone));
+        }
+
+        public long allocateKeywordSlot(String keyword, long campaignId, BidTierKind tier, long cpcNanos) {
+            return await(allocateKeywordSlotAsync(keyword, campaignId, tier, cpcNanos));
+        }
+
+        public void recordSpend(long campaignId, long amountNanos) {
+            await(recordSpendAsync(campaignId, amountNanos));
+        }
+
+        public boolean isKeywordRegistered(String keyword) {
+            return await(isKeywordRegisteredAsync(keyword));
+        }
+
+        public List<KeywordSlotView> getSlotsForCampaign(long campaignId) {
+            return await(getSlotsForCampaignAsync(campaignId));
+        }
+
+        public int getOutstandingCount() { return pending.size(); }
+
+        private static List<KeywordSlotView> decodeSlots(ByteBuffer in) {
+            int n = in.getInt();
+            List<KeywordSlotView> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                long slotId = in.getLong();
+                KeywordHashKey hash = new KeywordHashKey(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+                long campaignId = in.getLong();
+                BidTierKind tier = BidTierKind.values()[in.get()];
+                long cpcNanos = in.getLong();
+                Instant createdAt = Instant.ofEpochMilli(in.getLong());
+                boolean active = in.get() != 0;
+                out.add(new KeywordSlotRecord(slotId, hash, campaignId, tier, cpcNanos, createdAt, active));
+            }
+            return out;
+        }
+
+        private CompletableFuture<ByteBuffer> call(byte op, ByteBuffer body) {
+            CompletableFuture<ByteBuffer> reply = new CompletableFuture<>();
+            IOException failed = failure;
+            if (failed != null) {
+                reply.completeExceptionally(new UncheckedIOException("addy: connection lost", failed));
+                return reply;
+            }
+            int requestId = nextRequestId.getAndIncrement();
+            pending.put(requestId, reply);
+            if (failure != null && pending.remove(requestId) != null) {
+                reply.completeExceptionally(new UncheckedIOException("addy: connection lost", failure));
+                return reply;
+            }
+            body.flip();
+            try {
+                writer.send(requestId, op, body);
+            } catch (IOException e) {
+                fail(e);
+            }
+            return reply;
+        }
+
+        private void readLoop() {
+            ByteBuffer in = ByteBuffer.allocate(1 << 16);
+            try {
+                while (channel.read(in) >= 0) {
+                    in.flip();
+                    while (in.remaining() >= 4) {
+                        int length = in.getInt(in.position());
+                        if (length < Wire.HEADER_BYTES - 4 || length > Wire.MAX_FRAME) {
+                            throw new IOException("addy: bad frame length " + length);
+                        }
+                        if (in.remaining() < 4 + length) {
+                            if (in.capacity() < 4 + length) {
+                                in = ByteBuffer.allocate(Integer.highestOneBit(4 + length) << 1).put(in).flip();
+                            }
+                            break;
+                        }
+                        in.getInt();
+                        int requestId = in.getInt();
+                        byte status = in.get();
+                        byte[] body = new byte[length - (Wire.HEADER_BYTES - 4)];
+                        in.get(body);
+                        CompletableFuture<ByteBuffer> reply = pending.remove(requestId);
+                        if (reply == null) continue;
+                        ByteBuffer wrapped = ByteBuffer.wrap(body);
+                        if (status == Wire.STATUS_OK) {
+                            reply.complete(wrapped);
+                        } else {
+                            reply.completeExceptionally(Wire.error(status, Wire.getString(wrapped)));
+                        }
+                    }
+                    in.compact();
+                }
+                fail(new IOException("addy: server closed the connection"));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(IOException e) {
+            failure = e;
+            for (Integer requestId : pending.keySet()) {
+                CompletableFuture<ByteBuffer> reply = pending.remove(requestId);
+                if (reply != null) reply.completeExceptionally(new UncheckedIOException("addy: connection lost", e));
+            }
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(channel);
+        }
+    }
+
+    /** Waits for a reply, rethrowing the engine's own exception rather than its wrapper. */
+    static <T> T await(CompletableFuture<T> reply) {
+        try {
+            return reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // Nothing left to do with it.
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Sharded engine (single-writer shards, scatter-gather reads)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Partitions the engine over N shards, each a full engine mutated by exactly one
+     * writer thread that drains a lock-free queue, so no shard is ever written
+     * concurrently. Campaign-scoped operations route by campaign id: every campaign
+     * and slot id carries its shard index above {@link #SHARD_ID_SHIFT}, so ids are
+     * unique across shards and routing needs no lookup. New campaigns are dealt
+     * round-robin.
+     *
+     * <p>Invariants that span shards are kept here rather than in any shard: the zone
+     * throttle (shards take no permit of their own, so a creation costs exactly one),
+     * the global slot cap (one counter, reserved before a shard is asked)
+     * and duplicate-keyword rejection (a registry partitioned by keyword hash, claimed
+     * before the campaign's shard allocates and rolled back if it refuses). Counts and
+     * audit tails are gathered from every shard; keyword lookups ask the partition
+     * that owns the hash, then the shard that holds the slot.
+     *
+     * <p>With {@link Options#withSyncCommit(boolean) synchronous commit} each writer
+     * waits for its own log group, so shards persist in parallel but a shard's
+     * operations do not overlap their fsyncs.
+     */
+    public static final class ShardedEngine implements AutoCloseable {
+        public static final int MAX_SHARDS = 1 << 10;
+        static final int SHARD_ID_SHIFT = 40;
+
+        private final addy[] shards;
+        private final ShardWriter[] writers;
+        private final List<Map<KeywordHashKey, Long>> slotIdByHash;
+        private final ZoneThrottle throttle;
+        private final int keywordSlotCap;
+        private final AtomicInteger reservedSlotCount = new AtomicInteger();
+        private final AtomicInteger nextShard = new AtomicInteger();
+        private final long compactionIntervalMillis;
+        /** Mirrors each shard's reclamation in the registry and the global cap. */
+        private final ReclaimListener reclaimListener = new ReclaimListener() {
+            @Override
+            public void reclaimed(long slotId, KeywordHashKey hash) {
+                // Expired slots were deactivated inside the shard, so may still be registered as live.
+                if (!registry(hash).remove(hash, -slotId)) registry(hash).remove(hash, slotId);
+            }
+
+            @Override
+            public void recycled(int count) {
+                reservedSlotCount.addAndGet(-count);
+            }
+        };
+
+        public ShardedEngine(int shardCount, int maxKeywordsPerCampaign, long bidFloorNanos, Options options) {
+            this(ORACLE_HEX, CONTROLLER_HEX, TREASURY_HEX, shardCount, maxKeywordsPerCampaign, bidFloorNanos,
+                    options);
+        }
+
+        /**
+         * Builds {@code shardCount} shards from {@code options}. With persistence, shard
+         * {@code i} keeps its log and snapshots in {@code dir/shard-i} and is recovered
+         * from there; the shard count may grow between runs but not shrink.
+         */
+        public ShardedEngine(String oracleAddress, String controllerAddress, String treasuryAddress,
+                             int shardCount, int maxKeywordsPerCampaign, long bidFloorNanos, Options options) {
+            if (options == null) {
+                throw new IllegalArgumentException("addy: options required");
+            }
+            if (shardCount <= 0 || shardCount > MAX_SHARDS) {
+                throw new IllegalArgumentException("addy: shard count out of range");
+            }
+            Path dir = options.getPersistenceDir();
+            if (dir != null && Files.isDirectory(dir.resolve("shard-" + shardCount))) {
+                throw new IllegalArgumentException("addy: persistence dir holds more than " + shardCount + " shards");
+            }
+            this.keywordSlotCap = options.getKeywordSlotCap();
+            this.compactionIntervalMillis = options.getCompactionIntervalMillis();
+            this.shards = new addy[shardCount];
+            this.writers = new ShardWriter[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                writers[i] = new ShardWriter("addy-shard-" + i);
+            }
+            try {
+                for (int i = 0; i < shardCount; i++) {
+                    // Shards compact only when asked from here, and run their timers on their own writer.
+                    Options shardOptions = options.withIdBase((long) i << SHARD_ID_SHIFT).withCompactionIntervalMillis(0)
+                            .withTimerExecutor(writers[i]).withoutZoneThrottle();
+                    if (dir != null) shardOptions = shardOptions.withPersistence(dir.resolve("shard-" + i));
+                    shards[i] = new addy(oracleAddress, controllerAddress, treasuryAddress,
+                            maxKeywordsPerCampaign, bidFloorNanos, shardOptions);
+                }
+            } catch (RuntimeException e) {
+                for (ShardWriter writer : writers) writer.close();
+                for (addy shard : shards) {
+                    if (shard != null) shard.close();
+                }
+                throw e;
+            }
+            this.throttle = new ZoneThrottle(shards[0].getGenesisTimestamp(), THROTTLE_WINDOW_MS, COHORT_BATCH_SIZE);
+            this.slotIdByHash = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                slotIdByHash.add(new ConcurrentHashMap<>());
+            }
+            int slots = 0;
+            for (addy shard : shards) {
+                shard.keywordSlots.forEach((slotId, hash, campaignId, tier, cpcNanos, createdAtMillis, active) ->
+                        registry(hash).put(hash, active ? slotId : -slotId));
+                slots += shard.getKeywordSlotCount();
+            }
+            reservedSlotCount.set(slots);
+            if (compactionIntervalMillis > 0) scheduleCompaction(shards[0].now() + compactionIntervalMillis);
+        }
+
+        public int getShardCount() { return shards.length; }
+        public int getKeywordSlotCap() { return keywordSlotCap; }
+
+        // ---- mutations (routed to one shard's writer) ----
+
+        public long createCampaign(String ownerRef, ThrottleZone zone) {
+            if (ownerRef == null || ownerRef.isBlank()) {
+                throw new IllegalArgumentException("addy: owner ref blank");
+            }
+            if (zone == null) {
+                throw new IllegalArgumentException("addy: zone required");
+            }
+            if (!throttle.tryAcquire(zone, 1, shards[0].now())) {
+                throw new IllegalStateException("addy: throttle limit exceeded for zone " + zone);
+            }
+            int s = Math.floorMod(nextShard.getAndIncrement(), shards.length);
+            addy shard = shards[s];
+            return await(writers[s].submit(() -> shard.createCampaign(ownerRef, zone)));
+        }
+
+        public void transitionCampaignPhase(long campaignId, CampaignPhase toPhase) {
+            int s = campaignShard(campaignId);
+            addy shard = shards[s];
+            await(writers[s].submit(() -> {
+                shard.transitionCampaignPhase(campaignId, toPhase);
+                return null;
+            }));
+        }
+
+        public long allocateKeywordSlot(String keyword, long campaignId, BidTierKind tier, long cpcNanos) {
+            return await(allocateKeywordSlotAsync(keyword, campaignId, tier, cpcNanos));
+        }
+
+        /**
+         * Checks the bid, reserves one unit of the global cap and claims the keyword in
+         * its registry partition on the calling thread, then hands the allocation to the
+         * campaign's shard. The claim and the reservation are released if the shard
+         * refuses (campaign cap, bid cooldown).
+         */
+        public CompletableFuture<Long> allocateKeywordSlotAsync(String keyword, long campaignId, BidTierKind tier,
+                                                                long cpcNanos) {
+            try {
+                int s = campaignShard(campaignId);
+                checkBid(tier, cpcNanos);
+                KeywordHashKey[] hashes = {keywordHashKey(keyword)};
+                claim(hashes);
+                addy shard = shards[s];
+                return submitClaimed(s, hashes, () -> new long[] {
+                        shard.allocateKeywordSlot(keyword, campaignId, tier, cpcNanos)
+                }).thenApply(ids -> ids[0]);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /** All-or-nothing batch for one campaign, as {@link addy#allocateKeywordSlots}. */
+        public long[] allocateKeywordSlots(long campaignId, List<KeywordBid> bids) {
+            if (bids == null || bids.isEmpty()) {
+                throw new IllegalArgumentException("addy: keyword batch empty");
+            }
+            int s = campaignShard(campaignId);
+            int n = bids.size();
+            KeywordHashKey[] hashes = new KeywordHashKey[n];
+            Set<KeywordHashKey> distinct = new HashSet<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                KeywordBid bid = bids.get(i);
+                if (bid == null) {
+                    throw new IllegalArgumentException("addy: keyword blank");
+                }
+                checkBid(bid.getTier(), bid.getCpcNanos());
+                hashes[i] = keywordHashKey(bid.getKeyword());
+                if (!distinct.add(hashes[i])) {
+                    throw new IllegalArgumentException("addy: keyword repeated in batch");
+                }
+            }
+            claim(hashes);
+            addy shard = shards[s];
+            return await(submitClaimed(s, hashes, () -> shard.allocateKeywordSlots(campaignId, bids)));
+        }
+
+        public void deactivateKeywordSlot(long slotId) {
+            int s = shardOf(slotId);
+            if (s < 0) {
+                throw new IllegalArgumentException("addy: slot not found " + slotId);
+            }
+            addy shard = shards[s];
+            await(writers[s].submit(() -> {
+                KeywordSlotView slot = shard.getKeywordSlot(slotId);
+                shard.deactivateKeywordSlot(slotId);
+                KeywordHashKey hash = slot.getKeywordHashKey();
+                registry(hash).replace(hash, slotId, -slotId);
+                return null;
+            }));
+        }
+
+        public void recordSpend(long campaignId, long amountNanos) {
+            await(recordSpendAsync(campaignId, amountNanos));
+        }
+
+        public CompletableFuture<Void> recordSpendAsync(long campaignId, long amountNanos) {
+            try {
+                int s = campaignShard(campaignId);
+                addy shard = shards[s];
+                return writers[s].submit(() -> {
+                    shard.recordSpend(campaignId, amountNanos);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * Validates the whole batch, then splits it by shard (keeping each shard's
+         * events in order) and applies the parts in parallel, one batch per shard.
+         */
+        public void recordSpendBatch(long[] campaignIds, long[] amounts) {
+            if (campaignIds == null || amounts == null || campaignIds.length != amounts.length) {
+                throw new IllegalArgumentException("addy: spend batch arrays must have equal length");
+            }
+            int n = campaignIds.length;
+            if (n == 0) return;
+            int[] shardOfEvent = new int[n];
+            int[] counts = new int[shards.length];
+            for (int i = 0; i < n; i++) {
+                if (amounts[i] <= 0) {
+                    throw new IllegalArgumentException("addy: spend amount must be positive");
+                }
+                int s = campaignShard(campaignIds[i]);
+                shardOfEvent[i] = s;
+                counts[s]++;
+            }
+            List<CompletableFuture<Void>> parts = new ArrayList<>();
+            for (int s = 0; s < shards.length; s++) {
+                if (counts[s] == 0) continue;
+                long[] ids = campaignIds;
+                long[] amts = amounts;
+                if (counts[s] < n) {
+                    ids = new long[counts[s]];
+                    amts = new long[counts[s]];
+                    for (int i = 0, j = 0; i < n; i++) {
+                        if (shardOfEvent[i] != s) continue;
+                        ids[j] = campaignIds[i];
+                        amts[j++] = amounts[i];
+                    }
+                }
+                addy shard = shards[s];
+                long[] partIds = ids;
+                long[] partAmounts = amts;
+                parts.add(writers[s].submit(() -> {
+                    shard.recordSpendBatch(partIds, partAmounts);
+                    return null;
+                }));
+            }
+            awaitAll(parts);
+        }
+
+        /** Snapshots every shard. */
+        public void checkpoint() {
+            for (addy shard : shards) shard.checkpoint();
+        }
+
+        /** Reclaims every shard's dead slots, one pass per writer task so other work interleaves. */
+        public int compactSlots() {
+            int total = 0;
+            for (int s = 0; s < shards.length; s++) {
+                addy shard = shards[s];
+                int n;
+                do {
+                    n = await(writers[s].submit(() -> shard.compactPass(COMPACTION_BATCH, reclaimListener)));
+                    total += n;
+                } while (n > 0);
+            }
+            return total;
+        }
+
+        public CompactionStats getCompactionStats() {
+            int pending = 0;
+            int storage = 0;
+            long reclaimed = 0L;
+            long recycled = 0L;
+            long passes = 0L;
+            long nanos = 0L;
+            long maxNanos = 0L;
+            for (addy shard : shards) {
+                CompactionStats stats = shard.getCompactionStats();
+                pending += stats.getPendingSlots();
+                storage += stats.getStorageSlots();
+                reclaimed += stats.getReclaimedSlots();
+                recycled += stats.getRecycledSlots();
+                passes += stats.getPasses();
+                nanos += stats.getTotalPassNanos();
+                maxNanos = Math.max(maxNanos, stats.getMaxPassNanos());
+            }
+            return new CompactionStats(pending, reclaimed, recycled, passes, nanos, maxNanos, storage);
+        }
+
+        /**
+         * As {@link addy#advanceTimers()}, for every shard. Due tasks run on the shard
+         * writers; this returns once they have.
+         */
+        public void advanceTimers() {
+            for (addy shard : shards) shard.advanceTimers();
+            for (ShardWriter writer : writers) {
+                CompletableFuture<Void> drained = new CompletableFuture<>();
+                writer.execute(() -> drained.complete(null));
+                await(drained);
+            }
+        }
+
+        /**
+         * Queues one compaction pass on every writer from the first shard's timer wheel,
+         * without waiting for them; stops once the writers are closed.
+         */
+        private void scheduleCompaction(long atMillis) {
+            shards[0].timers.schedule(atMillis, () -> {
+                boolean backlog = false;
+                try {
+                    for (int s = 0; s < shards.length; s++) {
+                        addy shard = shards[s];
+                        backlog |= shard.deadSlotCount.get() > COMPACTION_BATCH;
+                        writers[s].execute(() -> shard.tryCompactPass(COMPACTION_BATCH, reclaimListener));
+                    }
+                } catch (RejectedExecutionException closed) {
+                    return;
+                }
+                scheduleCompaction(shards[0].now() + (backlog ? 1 : compactionIntervalMillis));
+            });
+        }
+
+        /** Drains every writer's queue, then closes the shards. */
+        @Override
+        public void close() {
+            for (ShardWriter writer : writers) writer.close();
+            for (addy shard : shards) shard.close();
+        }
+
+        // ---- queries (one shard, or gathered from all) ----
+
+        public CampaignRecord getCampaign(long campaignId) {
+            int s = shardOf(campaignId);
+            return s < 0 ? null : shards[s].getCampaign(campaignId);
+        }
+
+        public KeywordSlotView getKeywordSlot(long slotId) {
+            int s = shardOf(slotId);
+            return s < 0 ? null : shards[s].getKeywordSlot(slotId);
+        }
+
+        public List<KeywordSlotView> getSlotsForCampaign(long campaignId) {
+            int s = shardOf(campaignId);
+            return s < 0 ? List.of() : shards[s].getSlotsForCampaign(campaignId);
+        }
+
+        public int countActiveSlotsForCampaign(long campaignId) {
+            int s = shardOf(campaignId);
+            return s < 0 ? 0 : shards[s].countActiveSlotsForCampaign(campaignId);
+        }
+
+        /**
+         * Every shard's {@link addy#aggregate()}, summed. Each shard is read at a
+         * snapshot of its own, so totals are consistent within a shard but not as one
+         * cut across shards; the result's epoch is 0.
+         */
+        public Aggregate aggregate() {
+            long[] campaignCells = null;
+            long[] slotCells = null;
+            for (addy shard : shards) {
+                Aggregate part = shard.aggregate();
+                if (campaignCells == null) {
+                    campaignCells = part.campaignCells;
+                    slotCells = part.slotCells;
+                } else {
+                    Aggregate.mergeCampaigns(campaignCells, part.campaignCells);
+                    Aggregate.mergeSlots(slotCells, part.slotCells);
+                }
+            }
+            return new Aggregate(0L, campaignCells, slotCells);
+        }
+
+        public boolean isKeywordRegistered(String keyword) {
+            if (keyword == null) return false;
+            KeywordHashKey probe = probeKeywordHash(keyword);
+            return registry(probe).containsKey(probe);
+        }
+
+        /** The active slot registered for exactly this keyword, or null; see {@link addy#match}. */
+        public KeywordSlotView match(String queryKeyword) {
+            if (queryKeyword == null || queryKeyword.isBlank()) return null;
+            KeywordHashKey probe = probeKeywordHash(queryKeyword);
+            Long slotId = registry(probe).get(probe);
+            if (slotId == null || slotId <= 0) return null;
+            KeywordSlotView slot = getKeywordSlot(slotId);
+            return slot != null && slot.isActive() ? slot : null;
+        }
+
+        public int getKeywordSlotCount() {
+            int total = 0;
+            for (addy shard : shards) total += shard.getKeywordSlotCount();
+            return total;
+        }
+
+        public int getCampaignCount() {
+            int total = 0;
+            for (addy shard : shards) total += shard.getCampaignCount();
+            return total;
+        }
+
+        public int getTotalBidsPlaced() {
+            int total = 0;
+            for (addy shard : shards) total += shard.getTotalBidsPlaced();
+            return total;
+        }
+
+        public int getTotalCampaignsActivated() {
+            int total = 0;
+            for (addy shard : shards) total += shard.getTotalCampaignsActivated();
+            return total;
+        }
+
+        public List<CampaignRecord> getCampaignsInPhase(ThrottleZone zone, CampaignPhase phase) {
+            List<CampaignRecord> out = new ArrayList<>();
+            for (addy shard : shards) out.addAll(shard.getCampaignsInPhase(zone, phase));
+            return out;
+        }
+
+        public int countCampaignsInPhase(ThrottleZone zone, CampaignPhase phase) {
+            int total = 0;
+            for (addy shard : shards) total += shard.countCampaignsInPhase(zone, phase);
+            return total;
+        }
+
+        /** The newest entries across all shards, oldest first, merged by timestamp. */
+        public List<AuditEntry> getAuditTail(int maxEntries) {
+            int limit = Math.min(maxEntries, AUDIT_LOG_ENTRIES);
+            if (limit <= 0) return List.of();
+            List<AuditEntry> merged = new ArrayList<>();
+            for (addy shard : shards) merged.addAll(shard.getAuditTail(limit));
+            merged.sort(Comparator.comparingLong(AuditEntry::getTimestamp));
+            return merged.size() <= limit ? merged : new ArrayList<>(merged.subList(merged.size() - limit, merged.size()));
+        }
+
+        // ---- routing and global invariants ----
+
+        /** Shard index encoded in a campaign or slot id, or -1 when no shard issued it. */
+        private int shardOf(long id) {
+            long s = id >>> SHARD_ID_SHIFT;
+            return id > 0 && s < shards.length ? (int) s : -1;
+        }
+
+        private int campaignShard(long campaignId) {
+            int s = shardOf(campaignId);
+            if (s < 0 || shards[s].getCampaign(campaignId) == null) {
+                throw new IllegalArgumentException("addy: campaign not found " + campaignId);
+            }
+            return s;
+        }
+
+        private Map<KeywordHashKey, Long> registry(KeywordHashKey hash) {
+            return slotIdByHash.get((int) Long.remainderUnsigned(hash.h1, slotIdByHash.size()));
+        }
+
+        /** Floor and tier cap, checked before anything is claimed; every shard shares them. */
+        private void checkBid(BidTierKind tier, long cpcNanos) {
+            addy any = shards[0];
+            if (cpcNanos < any.bidFloorNanos) {
+                throw new IllegalArgumentException("addy: cpc below floor");
+            }
+            Long tierCap = any.tierCaps.get(tier);
+            if (tierCap != null && cpcNanos > tierCap) {
+                throw new IllegalArgumentException("addy: cpc above tier cap");
+            }
+        }
+
+        /** Reserves the global cap for {@code hashes} and claims each one, or takes nothing and throws. */
+        private void claim(KeywordHashKey[] hashes) {
+            int n = hashes.length;
+            for (;;) {
+                int current = reservedSlotCount.get();
+                if (current + n > keywordSlotCap) {
+                    throw new IllegalStateException("addy: global slot cap reached");
+                }
+                if (reservedSlotCount.compareAndSet(current, current + n)) break;
+            }
+            int claimed = 0;
+            while (claimed < n && registry(hashes[claimed]).putIfAbsent(hashes[claimed], CLAIMED) == null) claimed++;
+            if (claimed < n) {
+                release(hashes, claimed);
+                throw new IllegalStateException("addy: keyword already registered");
+            }
+        }
+
+        private void release(KeywordHashKey[] hashes, int claimed) {
+            for (int i = 0; i < claimed; i++) registry(hashes[i]).remove(hashes[i]);
+            reservedSlotCount.addAndGet(-hashes.length);
+        }
+
+        /** Runs {@code allocate} on shard {@code s}, then publishes its slot ids or releases the claims. */
+        private CompletableFuture<long[]> submitClaimed(int s, KeywordHashKey[] hashes, Supplier<long[]> allocate) {
+            try {
+                return writers[s].submit(() -> {
+                    long[] slotIds;
+                    try {
+                        slotIds = allocate.get();
+                    } catch (RuntimeException e) {
+                        release(hashes, hashes.length);
+                        throw e;
+                    }
+                    for (int i = 0; i < hashes.length; i++) registry(hashes[i]).put(hashes[i], slotIds[i]);
+                    return slotIds;
+                });
+            } catch (RuntimeException e) {
+                release(hashes, hashes.length);
+                throw e;
+            }
+        }
+
+        private static void awaitAll(List<CompletableFuture<Void>> parts) {
+            RuntimeException first = null;
+            for (CompletableFuture<Void> part : parts) {
+                try {
+                    await(part);
+                } catch (RuntimeException e) {
+                    if (first == null) first = e;
+                }
+            }
+            if (first != null) throw first;
+        }
+    }
+
+    /**
+     * The single writer of one shard. Producers claim a sequence with one atomic add
+     * and publish their task into that slot of a fixed ring; the writer runs tasks in
+     * sequence order, spins briefly when the ring is empty and then parks. Producers
+     * that get a full lap ahead wait for the writer. Closing swaps the sequence for a
+     * negative sentinel, so later producers are refused and every task claimed before
+     * it still runs.
+     *
+     * <p>Timer tasks come in through {@link #execute}, an unbounded queue that never
+     * makes the caller wait, since the clock thread hands them over; the writer takes
+     * one of those between ring tasks, so neither side starves the other.
+     */
+    static final class ShardWriter implements Runnable, Executor {
+        private static final int RING_SIZE = 1 << 12;
+        private static final int MASK = RING_SIZE - 1;
+        private static final int IDLE_SPINS = 128;
+
+        private final AtomicReferenceArray<Runnable> ring = new AtomicReferenceArray<>(RING_SIZE);
+        private final ConcurrentLinkedQueue<Runnable> timerTasks = new ConcurrentLinkedQueue<>();
+        private final AtomicLong claimed = new AtomicLong();
+        private final Thread thread;
+        private volatile long consumed;
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        ShardWriter(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<T> op) {
+            long seq = claimed.getAndIncrement();
+            if (seq < 0) {
+                throw new IllegalStateException("addy: sharded engine closed");
+            }
+            CompletableFuture<T> done = new CompletableFuture<>();
+            for (int spins = 0; seq - consumed >= RING_SIZE; spins++) backoff(spins);
+            ring.set((int) seq & MASK, () -> {
+                try {
+                    done.complete(op.get());
+                } catch (Throwable t) {
+                    done.completeExceptionally(t);
+                }
+            });
+            if (parked) LockSupport.unpark(thread);
+            return done;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (!running) {
+                throw new RejectedExecutionException("addy: sharded engine closed");
+            }
+            timerTasks.add(task);
+            if (parked) LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long seq = 0L;
+            long end = Long.MAX_VALUE;
+            int idle = 0;
+            while (seq < end) {
+                Runnable timerTask = timerTasks.poll();
+                if (timerTask != null) {
+                    try {
+                        timerTask.run();
+                    } catch (RuntimeException e) {
+                        // A failing timer task must not stop the writer.
+                    }
+                    idle = 0;
+                }
+                int index = (int) seq & MASK;
+                Runnable task = ring.get(index);
+                if (task != null) {
+                    ring.lazySet(index, null);
+                    consumed = ++seq;
+                    task.run();
+                    idle = 0;
+                } else if (!running && end == Long.MAX_VALUE) {
+                    end = claimed.getAndSet(Long.MIN_VALUE);
+                } else if (idle < IDLE_SPINS) {
+                    backoff(idle++);
+                } else {
+                    // Publish the flag before the last look; a producer that fills the slot
+                    // after that look is bound to see the flag and unpark us.
+                    parked = true;
+                    if (running && ring.get(index) == null && timerTasks.isEmpty()) LockSupport.park(this);
+                    parked = false;
+                }
+            }
+        }
+
+        void close() {
+            running = false;
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            for (;;) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
     }
 
     // -------------------------------------------------------------------------
-    // Audit log (bounded)
+    // Read snapshots (epoch-based multi-version reads)
     // -------------------------------------------------------------------------
 
-    private void appendAudit(String actionCode, long subjectId, String detail) {
-        synchronized (auditLog) {
-            auditLog.add(new AuditEntry(System.currentTimeMillis(), actionCode, subjectId, detail));
-            if (auditLog.size() > AUDIT_LOG_ENTRIES) {
-                auditLog.remove(0);
+    /**
+     * Opens a point-in-time view of campaigns, active slots and counters. Every
+     * mutation runs inside an epoch and stamps what it changes with it; opening a
+     * snapshot starts a new epoch and waits only for mutations already inside the old
+     * one to finish, so the view holds exactly the mutations of that epoch and before.
+     * Writers never wait for snapshots. The versions a snapshot needs are kept until
+     * it is closed, so close it when done.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this, epochs.pin());
+    }
+
+    public static final class Snapshot implements AutoCloseable {
+        private final addy engine;
+        private final long epoch;
+        private volatile boolean closed;
+
+        Snapshot(addy engine, long epoch) {
+            this.engine = engine;
+            this.epoch = epoch;
+        }
+
+        public long getEpoch() { return epoch; }
+
+        /** The campaign as it stood, or null if it did not exist yet. */
+        public CampaignState getCampaign(long campaignId) {
+            checkOpen();
+            CampaignRecord rec = engine.campaigns.get(campaignId);
+            return rec == null || rec.createdEpoch > epoch ? null : rec.stateAt(epoch);
+        }
+
+        public List<CampaignState> getCampaigns() {
+            checkOpen();
+            List<CampaignState> out = new ArrayList<>();
+            for (CampaignRecord rec : engine.campaigns.values()) {
+                if (rec.createdEpoch <= epoch) out.add(rec.stateAt(epoch));
+            }
+            return out;
+        }
+
+        /** The slot as it stood, or null unless it existed and was active. */
+        public KeywordSlotView getKeywordSlot(long slotId) {
+            checkOpen();
+            return engine.keywordSlots.getAt(slotId, epoch);
+        }
+
+        public List<KeywordSlotView> getSlotsForCampaign(long campaignId) {
+            checkOpen();
+            CampaignSlotIndex.Entry entry = engine.slotsByCampaign.get(campaignId);
+            if (entry == null) return List.of();
+            List<KeywordSlotView> out = new ArrayList<>();
+            for (Long slotId : entry.allSlotIds()) {
+                KeywordSlotView slot = engine.keywordSlots.getAt(slotId, epoch);
+                if (slot != null) out.add(slot);
+            }
+            return out;
+        }
+
+        public void forEachSlot(Consumer<KeywordSlotView> action) {
+            checkOpen();
+            engine.keywordSlots.forEachAt(epoch, (slotId, hash, campaignId, tier, cpcNanos, createdAtMillis, active) -> {
+                if (active) action.accept(new SlotVersion(slotId, hash, campaignId, tier, cpcNanos, createdAtMillis));
+            });
+        }
+
+        public int getCampaignCount() {
+            checkOpen();
+            return (int) engine.campaignCount.sumAt(epoch);
+        }
+
+        public int getActiveSlotCount() {
+            checkOpen();
+            return (int) engine.activeSlotCount.sumAt(epoch);
+        }
+
+        public int getTotalBidsPlaced() {
+            checkOpen();
+            return (int) engine.totalBidsPlaced.sumAt(epoch);
+        }
+
+        public int getTotalCampaignsActivated() {
+            checkOpen();
+            return (int) engine.totalCampaignsActivated.sumAt(epoch);
+        }
+
+        /**
+         * Campaign and slot totals grouped by zone, phase and tier, as of this
+         * snapshot, computed as fork-join tasks on {@code pool}.
+         */
+        public Aggregate aggregate(ForkJoinPool pool) {
+            checkOpen();
+            return engine.aggregate(epoch, pool);
+        }
+
+        /** Spend across every campaign, all read at the same epoch. */
+        public long getTotalSpendNanos() {
+            checkOpen();
+            long total = 0L;
+            for (CampaignRecord rec : engine.campaigns.values()) {
+                if (rec.createdEpoch <= epoch) total += rec.spend.sumAt(epoch);
+            }
+            return total;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            engine.epochs.unpin(epoch);
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("addy: snapshot closed");
             }
         }
     }
 
-    public List<AuditEntry> getAuditTail(int maxEntries) {
-        synchronized (auditLog) {
-            int size = auditLog.size();
-            if (maxEntries <= 0 || size == 0) return List.of();
-            int from = Math.max(0, size - maxEntries);
-            return new ArrayList<>(auditLog.subList(from, size));
+    /** A campaign as a snapshot saw it; never changes. */
+    public static final class CampaignState {
+        private final long campaignId;
+        private final String ownerRef;
+        private final CampaignPhase phase;
+        private final ThrottleZone zone;
+        private final Instant createdAt;
+        private final int keywordCount;
+        private final long totalSpendNanos;
+
+        public CampaignState(long campaignId, String ownerRef, CampaignPhase phase, ThrottleZone zone,
+                             Instant createdAt, int keywordCount, long totalSpendNanos) {
+            this.campaignId = campaignId;
+            this.ownerRef = ownerRef;
+            this.phase = phase;
+            this.zone = zone;
+            this.createdAt = createdAt;
+            this.keywordCount = keywordCount;
+            this.totalSpendNanos = totalSpendNanos;
+        }
+
+        public long getCampaignId() { return campaignId; }
+        public String getOwnerRef() { return ownerRef; }
+        public CampaignPhase getPhase() { return phase; }
+        public ThrottleZone getZone() { return zone; }
+        public Instant getCreatedAt() { return createdAt; }
+        public int getKeywordCount() { return keywordCount; }
+        public long getTotalSpendNanos() { return totalSpendNanos; }
+    }
+
+    /** An active slot as a snapshot saw it. */
+    static final class SlotVersion implements KeywordSlotView {
+        private final long slotId;
+        private final KeywordHashKey hash;
+        private final long campaignId;
+        private final BidTierKind tier;
+        private final long cpcNanos;
+        private final long createdAtMillis;
+
+        SlotVersion(long slotId, KeywordHashKey hash, long campaignId, BidTierKind tier, long cpcNanos,
+                    long createdAtMillis) {
+            this.slotId = slotId;
+            this.hash = hash;
+            this.campaignId = campaignId;
+            this.tier = tier;
+            this.cpcNanos = cpcNanos;
+            this.createdAtMillis = createdAtMillis;
+        }
+
+        @Override public long getSlotId() { return slotId; }
+        @Override public String getKeywordHash() { return hash.toHex(); }
+        @Override public KeywordHashKey getKeywordHashKey() { return hash; }
+        @Override public long getCampaignId() { return campaignId; }
+        @Override public BidTierKind getTier() { return tier; }
+        @Override public long getCpcNanos() { return cpcNanos; }
+        @Override public Instant getCreatedAt() { return Instant.ofEpochMilli(createdAtMillis); }
+        @Override public boolean isActive() { return true; }
+    }
+
+    /**
+     * Epoch bookkeeping. Mutating threads count themselves in on a padded stripe of
+     * the current epoch's parity, as {@link Persistence.WriterGate} does, and re-read
+     * the epoch afterwards, so a thread that raced an advance backs out and joins the
+     * new epoch instead. {@link #pin()} advances the epoch and waits for the old one's
+     * stripes to drain; only two epochs can have writers at once, hence two stripe
+     * sets. Recovered state is stamped epoch 0 and the first live epoch is 1.
+     */
+    static final class EpochGate {
+        private static final int PAD = 8;
+
+        private final int mask;
+        private final AtomicLongArray[] stripes = new AtomicLongArray[2];
+        private volatile long epoch = 1L;
+        /** Every writer of this epoch or an older one has left. */
+        private volatile long drained;
+        private volatile long oldestPinned = Long.MAX_VALUE;
+        /** Open snapshots by epoch; guarded by this. */
+        private final TreeMap<Long, Integer> pins = new TreeMap<>();
+
+        EpochGate() {
+            int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+            this.mask = n - 1;
+            stripes[0] = new AtomicLongArray(n * PAD);
+            stripes[1] = new AtomicLongArray(n * PAD);
+        }
+
+        long enter() {
+            int i = stripe();
+            for (;;) {
+                long e = epoch;
+                AtomicLongArray s = stripes[(int) e & 1];
+                s.getAndIncrement(i);
+                if (epoch == e) return e;
+                s.getAndDecrement(i);
+            }
+        }
+
+        void exit(long e) {
+            stripes[(int) e & 1].getAndDecrement(stripe());
+        }
+
+        /**
+         * Moves a writer in epoch {@code e} up to at least {@code seen}, the epoch of
+         * something it is about to build on, so no snapshot sees its change without
+         * the one it depends on. Only happens to a writer racing a snapshot.
+         */
+        long catchUp(long e, long seen) {
+            if (seen <= e) return e;
+            exit(e);
+            return enter();
+        }
+
+        /**
+         * Pins the current epoch, closes it to writers and waits for the ones inside.
+         * The pin is published before the epoch moves on, so no change made in a later
+         * epoch can be reclaimed by a compactor that has not yet seen it.
+         */
+        synchronized long pin() {
+            long e = epoch;
+            pins.merge(e, 1, Integer::sum);
+            oldestPinned = pins.firstKey();
+            epoch = e + 1;
+            AtomicLongArray s = stripes[(int) e & 1];
+            for (int spins = 0; inside(s) != 0; spins++) backoff(spins);
+            drained = e;
+            return e;
+        }
+
+        synchronized void unpin(long e) {
+            pins.computeIfPresent(e, (k, n) -> n == 1 ? null : n - 1);
+            oldestPinned = pins.isEmpty() ? Long.MAX_VALUE : pins.firstKey();
+        }
+
+        long oldestPinned() {
+            return oldestPinned;
+        }
+
+        /**
+         * Versions stamped at or below this epoch can be merged: nobody is still
+         * writing them and no open snapshot falls between them. {@link #drained} is
+         * read first; a pin is published before the advance that could raise it.
+         */
+        long floor() {
+            long d = drained;
+            return Math.min(d, oldestPinned);
+        }
+
+        private long inside(AtomicLongArray s) {
+            long n = 0;
+            for (int i = 0; i <= mask; i++) n += s.get(i * PAD);
+            return n;
+        }
+
+        private int stripe() {
+            long id = Thread.currentThread().getId();
+            return (int) (((id * 0x9E3779B97F4A7C15L) >>> 40) & mask) * PAD;
+        }
+    }
+
+    /**
+     * A sum that can be read as of any epoch a snapshot still pins. Each epoch adds
+     * into its own cell, a {@link LongAdder} in a short chain; the first add of a new
+     * epoch prepends a cell and, in passing, folds every cell at or below the gate's
+     * floor into one. Until a snapshot is taken the chain is a single cell, and an
+     * add costs one volatile read on top of the adder.
+     */
+    static final class EpochCounter {
+        private static final VarHandle HEAD;
+
+        static {
+            try {
+                HEAD = MethodHandles.lookup().findVarHandle(EpochCounter.class, "head", Cell.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private volatile Cell head;
+
+        EpochCounter(long initial) {
+            reset(initial);
+        }
+
+        void add(EpochGate epochs, long epoch, long delta) {
+            Cell h = head;
+            while (h.epoch != epoch) {
+                Cell fresh = new Cell(epoch, new LongAdder(), fold(h, epochs.floor()));
+                if (HEAD.compareAndSet(this, h, fresh)) {
+                    h = fresh;
+                    break;
+                }
+                h = head;
+            }
+            h.delta.add(delta);
+        }
+
+        long sum() {
+            long total = 0L;
+            for (Cell c = head; c != null; c = c.prev) total += c.delta.sum();
+            return total;
+        }
+
+        long sumAt(long epoch) {
+            long total = 0L;
+            for (Cell c = head; c != null; c = c.prev) {
+                if (c.epoch <= epoch) total += c.delta.sum();
+            }
+            return total;
+        }
+
+        /** Replaces the whole history with {@code value} at epoch 0; not atomic with respect to concurrent adds. */
+        void reset(long value) {
+            LongAdder delta = new LongAdder();
+            delta.add(value);
+            head = new Cell(0L, delta, null);
+        }
+
+        private static Cell fold(Cell chain, long floor) {
+            int old = 0;
+            long sum = 0L;
+            for (Cell c = chain; c != null; c = c.prev) {
+                if (c.epoch <= floor) {
+                    old++;
+                    sum += c.delta.sum();
+                }
+            }
+            if (old <= 1) return chain;
+            LongAdder merged = new LongAdder();
+            merged.add(sum);
+            return keepAbove(chain, floor, new Cell(floor, merged, null));
+        }
+
+        /** Copies the cells above {@code floor}, sharing their adders, onto {@code tail}. */
+        private static Cell keepAbove(Cell c, long floor, Cell tail) {
+            if (c == null) return tail;
+            Cell rest = keepAbove(c.prev, floor, tail);
+            return c.epoch > floor ? new Cell(c.epoch, c.delta, rest) : rest;
+        }
+
+        private static final class Cell {
+            final long epoch;
+            final LongAdder delta;
+            final Cell prev;
+
+            Cell(long epoch, LongAdder delta, Cell prev) {
+                this.epoch = epoch;
+                this.delta = delta;
+                this.prev = prev;
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Aggregation (fork-join grouped scans over a snapshot)
+    // -------------------------------------------------------------------------
+
+    /** Aggregates the current state on the common fork-join pool; see {@link Snapshot#aggregate}. */
+    public Aggregate aggregate() {
+        try (Snapshot snapshot = snapshot()) {
+            return snapshot.aggregate(ForkJoinPool.commonPool());
+        }
+    }
+
+    /**
+     * Two fork-join passes at {@code epoch}. The campaign pass files each campaign
+     * under its (zone, phase) group, in a byte per campaign id that the slot pass
+     * then reads to group slots without a map lookup; the slot pass splits the slot
+     * store as a {@link SlotSplit}, so it costs the slots actually held. Each leaf fills its own {@code long[]} and results
+     * merge pairwise on the way up, so nothing is shared, locked or boxed.
+     */
+    private Aggregate aggregate(long epoch, ForkJoinPool pool) {
+        long firstId = idBase + 1;
+        // Read before listing, so every campaign a slot at this epoch can name has a byte.
+        int idSpan = (int) (nextCampaignId.get() - firstId);
+        CampaignRecord[] camps = campaigns.values().toArray(new CampaignRecord[0]);
+        byte[] groupOf = new byte[idSpan];
+        long[] campaignCells = pool.invoke(new RangeScan(0, camps.length, AGGREGATE_CAMPAIGN_GRAIN,
+                (from, to) -> {
+                    long[] cells = new long[Aggregate.CAMPAIGN_GROUPS * Aggregate.CAMPAIGN_STRIDE];
+                    for (int i = (int) from; i < to; i++) {
+                        CampaignRecord rec = camps[i];
+                        if (rec.createdEpoch() > epoch) continue;
+                        int group = rec.getZone().ordinal() * Aggregate.PHASES
+                                + CampaignRecord.phaseOf(rec.stateWordAt(epoch)).ordinal();
+                        groupOf[(int) (rec.getCampaignId() - firstId)] = (byte) (group + 1);
+                        int at = group * Aggregate.CAMPAIGN_STRIDE;
+                        cells[at + Aggregate.CAMPAIGNS]++;
+                        cells[at + Aggregate.SPEND] += rec.spendAt(epoch);
+                    }
+                    return cells;
+                }, Aggregate::mergeCampaigns));
+        long[] slotCells = pool.invoke(new SplitScan(keywordSlots.split(), AGGREGATE_SLOT_GRAIN,
+                split -> {
+                    long[] cells = Aggregate.newSlotCells();
+                    split.forEachAt(epoch, (slotId, hash, campaignId, tier, cpcNanos, createdAt, active) -> {
+                        long c = campaignId - firstId;
+                        if (c < 0 || c >= groupOf.length || groupOf[(int) c] == 0) return;
+                        int at = ((groupOf[(int) c] - 1) * Aggregate.TIERS + tier.ordinal()) * Aggregate.SLOT_STRIDE;
+                        cells[at + Aggregate.SLOTS]++;
+                        if (!active) return;
+                        cells[at + Aggregate.ACTIVE]++;
+                        cells[at + Aggregate.CPC_SUM] += cpcNanos;
+                        if (cpcNanos < cells[at + Aggregate.CPC_MIN]) cells[at + Aggregate.CPC_MIN] = cpcNanos;
+                        if (cpcNanos > cells[at + Aggregate.CPC_MAX]) cells[at + Aggregate.CPC_MAX] = cpcNanos;
+                        cells[at + Aggregate.CPC_BUCKETS + Aggregate.cpcBucket(cpcNanos)]++;
+                    });
+                    return cells;
+                }, Aggregate::mergeSlots));
+        return new Aggregate(epoch, campaignCells, slotCells);
+    }
+
+    /** Splits {@code [from, to)} in halves down to {@code grain}, scans the leaves and merges their cells pairwise. */
+    static final class RangeScan extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        interface Leaf {
+            long[] scan(long from, long to);
+        }
+
+        interface Merge {
+            /** Folds {@code other} into {@code into}. */
+            void merge(long[] into, long[] other);
+        }
+
+        private final long from;
+        private final long to;
+        private final long grain;
+        private final Leaf leaf;
+        private final Merge merge;
+
+        RangeScan(long from, long to, long grain, Leaf leaf, Merge merge) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.leaf = leaf;
+            this.merge = merge;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= grain) return leaf.scan(from, to);
+            long mid = (from + to) >>> 1;
+            RangeScan left = new RangeScan(from, mid, grain, leaf, merge);
+            left.fork();
+            long[] right = new RangeScan(mid, to, grain, leaf, merge).compute();
+            long[] cells = left.join();
+            merge.merge(cells, right);
+            return cells;
+        }
+    }
+
+    /** As {@link RangeScan}, over a {@link SlotSplit}: splits while a part is bigger than {@code grain}. */
+    static final class SplitScan extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        interface Leaf {
+            long[] scan(SlotSplit split);
+        }
+
+        private final SlotSplit split;
+        private final long grain;
+        private final Leaf leaf;
+        private final RangeScan.Merge merge;
+
+        SplitScan(SlotSplit split, long grain, Leaf leaf, RangeScan.Merge merge) {
+            this.split = split;
+            this.grain = grain;
+            this.leaf = leaf;
+            this.merge = merge;
+        }
+
+        @Override
+        protected long[] compute() {
+            SlotSplit other = split.estimateSize() > grain ? split.trySplit() : null;
+            if (other == null) return leaf.scan(split);
+            SplitScan left = new SplitScan(other, grain, leaf, merge);
+            left.fork();
+            long[] right = new SplitScan(split, grain, leaf, merge).compute();
+            long[] cells = left.join();
+            merge.merge(cells, right);
+            return cells;
+        }
+    }
+
+    /**
+     * Campaign and slot totals as of one snapshot epoch, grouped by zone, phase (the
+     * campaign's, for slots) and tier. Every getter takes the dimensions it groups
+     * by; a null dimension matches every value, so {@code getSpendNanos(null, LIVE)}
+     * is live spend across all zones. Slot counts include deactivated slots not yet
+     * reclaimed; cpc figures cover active slots only.
+     */
+    public static final class Aggregate {
+        static final int ZONES = ThrottleZone.values().length;
+        static final int PHASES = CampaignPhase.values().length;
+        static final int TIERS = BidTierKind.values().length;
+        static final int CAMPAIGN_GROUPS = ZONES * PHASES;
+
+        static final int CAMPAIGNS = 0;
+        static final int SPEND = 1;
+        static final int CAMPAIGN_STRIDE = 2;
+
+        static final int SLOTS = 0;
+        static final int ACTIVE = 1;
+        static final int CPC_SUM = 2;
+        static final int CPC_MIN = 3;
+        static final int CPC_MAX = 4;
+        static final int CPC_BUCKETS = 5;
+        /** Histogram buckets spanning the legal cpc range; see {@link LatencyHistogram#bucketOf}. */
+        static final int FIRST_CPC_BUCKET = LatencyHistogram.bucketOf(MIN_CPC_NANOS);
+        static final int CPC_BUCKET_COUNT = LatencyHistogram.bucketOf(MAX_CPC_NANOS) - FIRST_CPC_BUCKET + 1;
+        static final int SLOT_STRIDE = CPC_BUCKETS + CPC_BUCKET_COUNT;
+
+        private final long epoch;
+        private final long[] campaignCells;
+        private final long[] slotCells;
+
+        Aggregate(long epoch, long[] campaignCells, long[] slotCells) {
+            this.epoch = epoch;
+            this.campaignCells = campaignCells;
+            this.slotCells = slotCells;
+        }
+
+        public long getEpoch() { return epoch; }
+
+        public long getCampaignCount(ThrottleZone zone, CampaignPhase phase) {
+            return sumCampaigns(zone, phase, CAMPAIGNS);
+        }
+
+        public long getSpendNanos(ThrottleZone zone, CampaignPhase phase) {
+            return sumCampaigns(zone, phase, SPEND);
+        }
+
+        public long getSlotCount(ThrottleZone zone, CampaignPhase phase, BidTierKind tier) {
+            return sumSlots(zone, phase, tier, SLOTS);
+        }
+
+        public long getActiveSlotCount(ThrottleZone zone, CampaignPhase phase, BidTierKind tier) {
+            return sumSlots(zone, phase, tier, ACTIVE);
+        }
+
+        /** Active share of the matching slots; 0 when there are none. */
+        public double getActiveRatio(ThrottleZone zone, CampaignPhase phase, BidTierKind tier) {
+            long slots = getSlotCount(zone, phase, tier);
+            return slots == 0 ? 0.0 : (double) getActiveSlotCount(zone, phase, tier) / slots;
+        }
+
+        public CpcDistribution getCpcDistribution(ThrottleZone zone, CampaignPhase phase, BidTierKind tier) {
+            long count = 0L;
+            long sum = 0L;
+            long min = Long.MAX_VALUE;
+            long max = 0L;
+            long[] buckets = new long[CPC_BUCKET_COUNT];
+            for (int z = 0; z < ZONES; z++) {
+                if (zone != null && zone.ordinal() != z) continue;
+                for (int p = 0; p < PHASES; p++) {
+                    if (phase != null && phase.ordinal() != p) continue;
+                    for (int t = 0; t < TIERS; t++) {
+                        if (tier != null && tier.ordinal() != t) continue;
+                        int at = ((z * PHASES + p) * TIERS + t) * SLOT_STRIDE;
+                        count += slotCells[at + ACTIVE];
+                        sum += slotCells[at + CPC_SUM];
+                        min = Math.min(min, slotCells[at + CPC_MIN]);
+                        max = Math.max(max, slotCells[at + CPC_MAX]);
+                        for (int b = 0; b < CPC_BUCKET_COUNT; b++) buckets[b] += slotCells[at + CPC_BUCKETS + b];
+                    }
+                }
+            }
+            return new CpcDistribution(count, sum, count == 0 ? 0L : min, max, buckets);
+        }
+
+        private long sumCampaigns(ThrottleZone zone, CampaignPhase phase, int field) {
+            long total = 0L;
+            for (int z = 0; z < ZONES; z++) {
+                if (zone != null && zone.ordinal() != z) continue;
+                for (int p = 0; p < PHASES; p++) {
+                    if (phase != null && phase.ordinal() != p) continue;
+                    total += campaignCells[(z * PHASES + p) * CAMPAIGN_STRIDE + field];
+                }
+            }
+            return total;
+        }
+
+        private long sumSlots(ThrottleZone zone, CampaignPhase phase, BidTierKind tier, int field) {
+            long total = 0L;
+            for (int z = 0; z < ZONES; z++) {
+                if (zone != null && zone.ordinal() != z) continue;
+                for (int p = 0; p < PHASES; p++) {
+                    if (phase != null && phase.ordinal() != p) continue;
+                    for (int t = 0; t < TIERS; t++) {
+                        if (tier != null && tier.ordinal() != t) continue;
+                        total += slotCells[((z * PHASES + p) * TIERS + t) * SLOT_STRIDE + field];
+                    }
+                }
+            }
+            return total;
+        }
+
+        static int cpcBucket(long cpcNanos) {
+            int b = LatencyHistogram.bucketOf(cpcNanos) - FIRST_CPC_BUCKET;
+            return b < 0 ? 0 : Math.min(b, CPC_BUCKET_COUNT - 1);
+        }
+
+        static long[] newSlotCells() {
+            long[] cells = new long[CAMPAIGN_GROUPS * TIERS * SLOT_STRIDE];
+            for (int at = 0; at < cells.length; at += SLOT_STRIDE) cells[at + CPC_MIN] = Long.MAX_VALUE;
+            return cells;
+        }
+
+        static void mergeCampaigns(long[] into, long[] other) {
+            for (int i = 0; i < into.length; i++) into[i] += other[i];
+        }
+
+        static void mergeSlots(long[] into, long[] other) {
+            for (int at = 0; at < into.length; at += SLOT_STRIDE) {
+                for (int i = 0; i < SLOT_STRIDE; i++) {
+                    if (i == CPC_MIN) {
+                        into[at + i] = Math.min(into[at + i], other[at + i]);
+                    } else if (i == CPC_MAX) {
+                        into[at + i] = Math.max(into[at + i], other[at + i]);
+                    } else {
+                        into[at + i] += other[at + i];
+                    }
+                }
+            }
+        }
+    }
+
+    /** Cpc of a set of active slots; percentiles are bucket upper bounds, within 1/8 of the value. */
+    public static final class CpcDistribution {
+        private final long count;
+        private final long sumNanos;
+        private final long minNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        CpcDistribution(long count, long sumNanos, long minNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.minNanos = minNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() { return count; }
+        public long getSumNanos() { return sumNanos; }
+        public long getMinNanos() { return minNanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0L : sumNanos / count;
+        }
+
+        public long getPercentileNanos(double q) {
+            if (q < 0.0 || q > 1.0) {
+                throw new IllegalArgumentException("addy: percentile out of range");
+            }
+            if (count == 0) return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(q * count));
+            long seen = 0L;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b];
+                if (seen >= rank) {
+                    long bound = LatencyHistogram.upperBound(b + Aggregate.FIRST_CPC_BUCKET);
+                    return Math.max(minNanos, Math.min(bound, maxNanos));
+                }
+            }
+            return maxNanos;
         }
     }
 
@@ -441,7 +6748,7 @@ public final class addy {
     // Queries
     // -------------------------------------------------------------------------
 
-    public KeywordSlotRecord getKeywordSlot(long slotId) {
+    public KeywordSlotView getKeywordSlot(long slotId) {
         return keywordSlots.get(slotId);
     }
 
@@ -458,11 +6765,11 @@ public final class addy {
     }
 
     public int getTotalBidsPlaced() {
-        return totalBidsPlaced;
+        return (int) totalBidsPlaced.sum();
     }
 
     public int getTotalCampaignsActivated() {
-        return totalCampaignsActivated;
+        return (int) totalCampaignsActivated.sum();
     }
 
     public long getTierCap(BidTierKind tier) {
@@ -470,7 +6777,10 @@ public final class addy {
     }
 
     public boolean isKeywordRegistered(String keyword) {
-        return keyword != null && registeredKeywordHashes.contains(keywordHash(keyword));
+        if (keyword == null) return false;
+        boolean registered = slotIdByHash.containsKey(timedProbeKeywordHash(keyword));
+        if (METRICS_ENABLED) metrics.count(MetricOp.KEYWORD_LOOKUP, 1);
+        return registered;
     }
 
     // -------------------------------------------------------------------------
@@ -493,13 +6803,22 @@ public final class addy {
     // Bid tier validation and conversion
     // -------------------------------------------------------------------------
 
+    private static final BidTierKind[] TIERS = BidTierKind.values();
+
+    /**
+     * Lowest cpc of each tier above ZERO, by tier ordinal minus one: a price's tier
+     * ordinal is the number of these at or below it. The per-bid and bulk paths both
+     * read this table and {@link #TIER_CAPS}, so they cannot drift apart.
+     */
+    private static final long[] TIER_FLOORS = {1L, 20_000_000L, 100_000_000L, 400_000_000L, 1_500_000_000L};
+
+    /** Highest cpc accepted for each tier, by tier ordinal. */
+    private static final long[] TIER_CAPS = {0L, 10_000_000L, 50_000_000L, 200_000_000L, 800_000_000L, 2_000_000_000L};
+
     public static BidTierKind tierFromCpc(long cpcNanos) {
-        if (cpcNanos <= 0) return BidTierKind.ZERO;
-        if (cpcNanos < 20_000_000L) return BidTierKind.LOW;
-        if (cpcNanos < 100_000_000L) return BidTierKind.MID;
-        if (cpcNanos < 400_000_000L) return BidTierKind.HIGH;
-        if (cpcNanos < 1_500_000_000L) return BidTierKind.PREMIUM;
-        return BidTierKind.ULTRA;
+        int t = TIER_FLOORS.length;
+        while (t > 0 && cpcNanos < TIER_FLOORS[t - 1]) t--;
+        return TIERS[t];
     }
 
     public boolean isCpcWithinTier(long cpcNanos, BidTierKind tier) {
@@ -508,6 +6827,53 @@ public final class addy {
         return cpcNanos >= bidFloorNanos && cpcNanos <= cap;
     }
 
+    /**
+     * Bulk {@link #tierFromCpc}: writes the tier ordinal of {@code cpcs[i]} to
+     * {@code outTiers[i]}. Each ordinal is the number of tier boundaries at or below
+     * the price, summed from flag-setting compares rather than a chain of branches,
+     * so random prices cost no mispredictions.
+     */
+    public static void classifyTiers(long[] cpcs, byte[] outTiers) {
+        if (cpcs == null || outTiers == null) {
+            throw new IllegalArgumentException("addy: bid arrays required");
+        }
+        if (outTiers.length < cpcs.length) {
+            throw new IllegalArgumentException("addy: output array too short");
+        }
+        long[] floors = TIER_FLOORS;
+        for (int i = 0; i < cpcs.length; i++) {
+            long c = cpcs[i];
+            int t = 0;
+            for (long floor : floors) t += c >= floor ? 1 : 0;
+            outTiers[i] = (byte) t;
+        }
+    }
+
+    /**
+     * Bulk {@link #isCpcWithinTier}: {@code out[i]} is whether {@code cpcs[i]} is
+     * acceptable for the tier with ordinal {@code tiers[i]}. Caps come from a primitive
+     * table and both bounds are combined without short-circuiting, so the loop does
+     * no boxing, no map lookups and no data-dependent branches.
+     */
+    public void validateBids(long[] cpcs, byte[] tiers, boolean[] out) {
+        if (cpcs == null || tiers == null || out == null) {
+            throw new IllegalArgumentException("addy: bid arrays required");
+        }
+        if (tiers.length < cpcs.length || out.length < cpcs.length) {
+            throw new IllegalArgumentException("addy: bid arrays must cover every cpc");
+        }
+        long[] caps = TIER_CAPS;
+        long floor = bidFloorNanos;
+        for (int i = 0; i < cpcs.length; i++) {
+            int t = tiers[i];
+            if (t < 0 || t >= caps.length) {
+                throw new IllegalArgumentException("addy: tier ordinal out of range " + t);
+            }
+            long c = cpcs[i];
+            out[i] = c >= floor & c <= caps[t];
+        }
+    }
+
     // -------------------------------------------------------------------------
     // Zone eligibility (which zones allow which phases)
     // -------------------------------------------------------------------------
@@ -521,23 +6887,48 @@ public final class addy {
     public static final Set<CampaignPhase> DELTA_ALLOWED_PHASES =
             EnumSet.of(CampaignPhase.DRAFT, CampaignPhase.LIVE, CampaignPhase.ARCHIVED);
 
+    /** Allowed phases per zone as bitmasks over phase ordinals, indexed by zone ordinal. */
+    private static final int[] ZONE_PHASE_MASKS = {
+            phaseMask(ALPHA_ALLOWED_PHASES),
+            phaseMask(BETA_ALLOWED_PHASES),
+            phaseMask(GAMMA_ALLOWED_PHASES),
+            phaseMask(DELTA_ALLOWED_PHASES)
+    };
+
+    /** Phases reachable from each phase: any other phase, and none out of ARCHIVED. */
+    private static final int[] PHASE_TRANSITIONS = phaseTransitions();
+
     public boolean isPhaseAllowedInZone(CampaignPhase phase, ThrottleZone zone) {
-        return switch (zone) {
-            case ALPHA -> ALPHA_ALLOWED_PHASES.contains(phase);
-            case BETA -> BETA_ALLOWED_PHASES.contains(phase);
-            case GAMMA -> GAMMA_ALLOWED_PHASES.contains(phase);
-            case DELTA -> DELTA_ALLOWED_PHASES.contains(phase);
-        };
+        return phase != null && (ZONE_PHASE_MASKS[zone.ordinal()] & 1 << phase.ordinal()) != 0;
+    }
+
+    private static int phaseMask(Set<CampaignPhase> phases) {
+        int mask = 0;
+        for (CampaignPhase phase : phases) mask |= 1 << phase.ordinal();
+        return mask;
+    }
+
+    private static int[] phaseTransitions() {
+        CampaignPhase[] phases = CampaignPhase.values();
+        int all = (1 << phases.length) - 1;
+        int[] out = new int[phases.length];
+        for (CampaignPhase from : phases) {
+            out[from.ordinal()] = from == CampaignPhase.ARCHIVED ? 0 : all & ~(1 << from.ordinal());
+        }
+        return out;
     }
 
     // -------------------------------------------------------------------------
     // Bulk slot lookup by campaign
     // -------------------------------------------------------------------------
 
-    public List<KeywordSlotRecord> getSlotsForCampaign(long campaignId) {
-        List<KeywordSlotRecord> out = new ArrayList<>();
-        for (KeywordSlotRecord slot : keywordSlots.values()) {
-            if (slot.getCampaignId() == campaignId && slot.isActive()) {
+    public List<KeywordSlotView> getSlotsForCampaign(long campaignId) {
+        CampaignSlotIndex.Entry entry = slotsByCampaign.get(campaignId);
+        if (entry == null) return List.of();
+        List<KeywordSlotView> out = new ArrayList<>(entry.activeCount());
+        for (Long slotId : entry.activeSlotIds()) {
+            KeywordSlotView slot = keywordSlots.get(slotId);
+            if (slot != null && slot.isActive()) {
                 out.add(slot);
             }
         }
@@ -545,8 +6936,52 @@ public final class addy {
     }
 
     public int countActiveSlotsForCampaign(long campaignId) {
-        int n = 0;
-        for (KeywordSlotRecord slot : keywordSlots.values()) {
-            if (slot.getCampaignId() == campaignId && slot.isActive()) n++;
+        CampaignSlotIndex.Entry entry = slotsByCampaign.get(campaignId);
+        return entry == null ? 0 : entry.activeCount();
+    }
+
+    /**
+     * Secondary index campaignId -> slot ids. Every slot a campaign holds, until it is
+     * reclaimed, stays in {@code allSlotIds}; {@code activeSlotIds} tracks the live ones. The active
+     * counter only moves when a set actually changes, so a repeated deactivation of
+     * the same slot cannot be double counted.
+     */
+    static final class CampaignSlotIndex {
+        private final Map<Long, Entry> byCampaign = new ConcurrentHashMap<>();
+
+        Entry get(long campaignId) {
+            return byCampaign.get(campaignId);
+        }
+
+        void add(long campaignId, long slotId) {
+            Entry entry = byCampaign.computeIfAbsent(campaignId, id -> new Entry());
+            entry.allSlotIds.add(slotId);
+            if (entry.activeSlotIds.add(slotId)) {
+                entry.activeCount.incrementAndGet();
+            }
+        }
+
+        boolean deactivate(long campaignId, long slotId) {
+            Entry entry = byCampaign.get(campaignId);
+            if (entry == null || !entry.activeSlotIds.remove(slotId)) return false;
+            entry.activeCount.decrementAndGet();
+            return true;
+        }
+
+        /** Forgets a reclaimed slot; it must already be inactive. */
+        void remove(long campaignId, long slotId) {
+            Entry entry = byCampaign.get(campaignId);
+            if (entry != null) entry.allSlotIds.remove(slotId);
         }
-        return n;
+
+        static final class Entry {
+            private final Set<Long> allSlotIds = ConcurrentHashMap.newKeySet();
+            private final Set<Long> activeSlotIds = ConcurrentHashMap.newKeySet();
+            private final AtomicInteger activeCount = new AtomicInteger();
+
+            Set<Long> allSlotIds() { return allSlotIds; }
+            Set<Long> activeSlotIds() { return activeSlotIds; }
+            int activeCount() { return activeCount.get(); }
+        }
+    }
+}